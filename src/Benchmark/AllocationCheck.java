@@ -0,0 +1,149 @@
+package Benchmark;
+
+import Utilities.AppTester;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Checks that printing allocates nothing in the steady state, apart from
+ * finding the call site. Counts the bytes the thread allocates, with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long) },
+ * around many warmed up calls to {@link AppTester#print(java.lang.String) }
+ * and {@link AppTester#uPrint(java.lang.String) }.
+ *
+ * What is left is the {@link StackWalker} walk that finds the call site: the
+ * stream and frame it creates on every call, and the method name the frame
+ * resolves when CallSite reads it to look up the cache. The location string is
+ * cached per call site, and the header, message and line endings are written
+ * into reusable per-thread buffers. So a print may allocate no more than the
+ * same walk on its own, and a print that is turned off may allocate nothing.
+ *
+ * Run with: java -cp [classes] Benchmark.AllocationCheck
+ *
+ * Exits with -1 if a check fails.
+ *
+ * @author johnmichaelreed2
+ */
+class AllocationCheck {
+
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int MEASURED_ITERATIONS = 100000;
+
+    /**
+     * Bytes per call allowed over the budget, for the odd allocation the JIT
+     * makes while it is still compiling.
+     */
+    private static final long SLACK_BYTES = 8;
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+    private static final com.sun.management.ThreadMXBean myThreads_
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The same kind of walk CallSite does, reading the same parts of the
+     * frame.
+     */
+    private static final StackWalker myStackWalker_ = StackWalker.getInstance();
+    private static final Function<Stream<StackWalker.StackFrame>, StackWalker.StackFrame> myWalker_
+            = new Function<Stream<StackWalker.StackFrame>, StackWalker.StackFrame>() {
+        @Override
+        public StackWalker.StackFrame apply(Stream<StackWalker.StackFrame> frames) {
+            return frames.skip(2).findFirst().orElse(null); // main, a caller as far up as the one a print finds.
+        }
+    };
+
+    /**
+     * Keeps the JIT from throwing away the walks.
+     */
+    private static int myBlackHole_ = 0;
+
+    private static abstract class Check {
+
+        private final String myName_;
+
+        Check(String name) {
+            myName_ = name;
+        }
+
+        abstract void perform();
+    }
+
+    public static void main(String args[]) {
+        final PrintStream out = System.out;
+        System.setOut(DISCARD);
+        System.setErr(DISCARD);
+        AppTester.setMyDefaultPrintStream(AppTester.ONLY_STANDARD_OUT);
+
+        final long walkBytes = bytesPerCall(new Check("StackWalker walk") {
+            @Override
+            void perform() {
+                final StackWalker.StackFrame frame = myStackWalker_.walk(myWalker_);
+                myBlackHole_ += frame.getClassName().length() + frame.getMethodName().length()
+                        + frame.getByteCodeIndex();
+            }
+        });
+        out.println("call site lookup budget: " + walkBytes + " bytes/call");
+
+        boolean passed = true;
+        AppTester.setPrintToTerminal(true);
+        AppTester.setPrintToLogFile(false);
+        passed &= check(out, new Check("uPrint, turned off") {
+            @Override
+            void perform() {
+                AppTester.uPrint("allocation check");
+            }
+        }, 0);
+        passed &= check(out, new Check("print to the terminal") {
+            @Override
+            void perform() {
+                AppTester.print("allocation check");
+            }
+        }, walkBytes);
+        AppTester.setPrintToTerminal(false);
+        AppTester.setPrintToLogFile(true);
+        passed &= check(out, new Check("print to the log file") {
+            @Override
+            void perform() {
+                AppTester.print("allocation check");
+            }
+        }, walkBytes);
+        passed &= check(out, new Check("uPrint to the log file") {
+            @Override
+            void perform() {
+                AppTester.uPrint("allocation check");
+            }
+        }, walkBytes);
+        out.println("(ignore) " + myBlackHole_);
+        AppTester.close();
+        if (!passed) {
+            System.exit(-1);
+        }
+    }
+
+    private static boolean check(PrintStream out, Check check, long budgetBytes) {
+        final long bytes = bytesPerCall(check);
+        final boolean passed = bytes <= budgetBytes + SLACK_BYTES;
+        out.println((passed ? "PASS " : "FAIL ") + check.myName_ + ": " + bytes + " bytes/call, budget "
+                + budgetBytes);
+        return passed;
+    }
+
+    /**
+     * @return the average number of bytes allocated per call, once warmed
+     * up.
+     */
+    private static long bytesPerCall(Check check) {
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            check.perform();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long start = myThreads_.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+            check.perform();
+        }
+        return (myThreads_.getThreadAllocatedBytes(threadId) - start) / MEASURED_ITERATIONS;
+    }
+}
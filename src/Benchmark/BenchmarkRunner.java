@@ -0,0 +1,298 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A small benchmark harness in the spirit of JMH: each benchmark is run on a
+ * number of threads for a few timed warmup iterations and then a few timed
+ * measurement iterations, and the throughput of every measurement iteration
+ * is kept. Results are written as JSON laid out like JMH's "-rf json" output,
+ * so the same tools can track them between releases.
+ *
+ * @author johnmichaelreed2
+ */
+class BenchmarkRunner {
+
+    /**
+     * Something to measure. {@link #perform(Benchmark.BenchmarkRunner.Blackhole) }
+     * is called over and over, from every benchmark thread at once.
+     */
+    static abstract class Case {
+
+        private final String myName_;
+        private final LinkedHashMap<String, String> myParams_ = new LinkedHashMap<>();
+
+        Case(String name) {
+            myName_ = name;
+        }
+
+        String getName() {
+            return myName_;
+        }
+
+        /**
+         * Adds a parameter that is recorded with the results.
+         *
+         * @return this case.
+         */
+        Case param(String name, Object value) {
+            myParams_.put(name, String.valueOf(value));
+            return this;
+        }
+
+        Map<String, String> getParams() {
+            return myParams_;
+        }
+
+        /**
+         * Called once before the warmup, on the main thread.
+         */
+        void setUp() throws Exception {
+        }
+
+        /**
+         * Called once after the last measurement, on the main thread.
+         */
+        void tearDown() throws Exception {
+        }
+
+        /**
+         * One operation.
+         *
+         * @param blackhole takes results so the JIT can not throw the work
+         * away.
+         */
+        abstract void perform(Blackhole blackhole) throws Exception;
+    }
+
+    /**
+     * Consumes results so that the work that produced them can not be
+     * optimized away. One per thread.
+     */
+    static final class Blackhole {
+
+        private int myHash_ = 0;
+
+        void consume(Object result) {
+            myHash_ += System.identityHashCode(result);
+        }
+
+        void consume(long result) {
+            myHash_ += (int) (result ^ (result >>> 32));
+        }
+
+        void consume(boolean result) {
+            myHash_ += result ? 1 : 0;
+        }
+
+        int getHash() {
+            return myHash_;
+        }
+    }
+
+    /**
+     * The measurements of one benchmark at one thread count.
+     */
+    static final class Result {
+
+        private final Case myCase_;
+        private final int myThreads_;
+        private final int myWarmupIterations_;
+        private final long myIterationMilliseconds_;
+
+        /**
+         * Operations per second, one per measurement iteration.
+         */
+        private final double[] myThroughputs_;
+
+        Result(Case benchmark, int threads, int warmupIterations, long iterationMilliseconds, double[] throughputs) {
+            myCase_ = benchmark;
+            myThreads_ = threads;
+            myWarmupIterations_ = warmupIterations;
+            myIterationMilliseconds_ = iterationMilliseconds;
+            myThroughputs_ = throughputs;
+        }
+
+        double getMeanThroughput() {
+            double sum = 0;
+            for (double throughput : myThroughputs_) {
+                sum += throughput;
+            }
+            return sum / myThroughputs_.length;
+        }
+
+        double getThroughputDeviation() {
+            final double mean = getMeanThroughput();
+            double sumOfSquares = 0;
+            for (double throughput : myThroughputs_) {
+                sumOfSquares += (throughput - mean) * (throughput - mean);
+            }
+            return myThroughputs_.length > 1 ? Math.sqrt(sumOfSquares / (myThroughputs_.length - 1)) : 0;
+        }
+
+        /**
+         * @return the average time one thread takes for one operation.
+         */
+        double getNanosecondsPerOperation() {
+            return myThreads_ * 1e9 / getMeanThroughput();
+        }
+
+        /**
+         * Appends this result as a JSON object.
+         */
+        void appendJson(StringBuilder json) {
+            json.append("  {\n");
+            json.append("    \"benchmark\": ").append(quote(myCase_.getName())).append(",\n");
+            json.append("    \"mode\": \"thrpt\",\n");
+            json.append("    \"threads\": ").append(myThreads_).append(",\n");
+            json.append("    \"warmupIterations\": ").append(myWarmupIterations_).append(",\n");
+            json.append("    \"measurementIterations\": ").append(myThroughputs_.length).append(",\n");
+            json.append("    \"measurementTime\": ").append(quote(myIterationMilliseconds_ + " ms")).append(",\n");
+            json.append("    \"params\": {");
+            boolean isFirst = true;
+            for (Map.Entry<String, String> param : myCase_.getParams().entrySet()) {
+                json.append(isFirst ? "" : ", ").append(quote(param.getKey())).append(": ").append(quote(param.getValue()));
+                isFirst = false;
+            }
+            json.append("},\n");
+            json.append("    \"primaryMetric\": {\n");
+            json.append("      \"score\": ").append(number(getMeanThroughput())).append(",\n");
+            json.append("      \"scoreError\": ").append(number(getThroughputDeviation())).append(",\n");
+            json.append("      \"scoreUnit\": \"ops/s\",\n");
+            json.append("      \"rawData\": [[");
+            for (int i = 0; i < myThroughputs_.length; ++i) {
+                json.append(i == 0 ? "" : ", ").append(number(myThroughputs_[i]));
+            }
+            json.append("]]\n");
+            json.append("    },\n");
+            json.append("    \"secondaryMetrics\": {\n");
+            json.append("      \"avgt\": {\"score\": ").append(number(getNanosecondsPerOperation()))
+                    .append(", \"scoreUnit\": \"ns/op\"}\n");
+            json.append("    }\n");
+            json.append("  }");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %-48s threads=%-3d %14.1f ops/s  %12.1f ns/op",
+                    myCase_.getName(), myCase_.getParams(), myThreads_, getMeanThroughput(), getNanosecondsPerOperation());
+        }
+    }
+
+    private final int myWarmupIterations_;
+    private final int myMeasurementIterations_;
+    private final long myIterationMilliseconds_;
+
+    BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMilliseconds) {
+        myWarmupIterations_ = warmupIterations;
+        myMeasurementIterations_ = measurementIterations;
+        myIterationMilliseconds_ = iterationMilliseconds;
+    }
+
+    /**
+     * Runs one benchmark on the given number of threads.
+     */
+    Result run(final Case benchmark, final int threads) throws Exception {
+        benchmark.setUp();
+        try {
+            final int iterations = myWarmupIterations_ + myMeasurementIterations_;
+            final long[][] operations = new long[threads][iterations];
+            final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+            final AtomicBoolean isRunning = new AtomicBoolean();
+            final Throwable[] failure = new Throwable[1];
+            final List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                final long[] myOperations = operations[t];
+                final Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        final Blackhole blackhole = new Blackhole();
+                        try {
+                            for (int i = 0; i < iterations; ++i) {
+                                barrier.await(); // start
+                                long count = 0;
+                                while (isRunning.get()) {
+                                    benchmark.perform(blackhole);
+                                    ++count;
+                                }
+                                myOperations[i] = count;
+                                barrier.await(); // stop
+                            }
+                        } catch (Throwable t) {
+                            failure[0] = t;
+                            barrier.reset();
+                        }
+                        if (blackhole.getHash() == 42) {
+                            System.err.print(""); // keeps the hash alive.
+                        }
+                    }
+                }, "Benchmark_" + t);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+            final double[] throughputs = new double[myMeasurementIterations_];
+            for (int i = 0; i < iterations; ++i) {
+                isRunning.set(true);
+                barrier.await();
+                final long start = System.nanoTime();
+                Thread.sleep(myIterationMilliseconds_);
+                isRunning.set(false);
+                barrier.await();
+                final long elapsed = System.nanoTime() - start;
+                if (i >= myWarmupIterations_) {
+                    long total = 0;
+                    for (int t = 0; t < threads; ++t) {
+                        total += operations[t][i];
+                    }
+                    throughputs[i - myWarmupIterations_] = total * 1e9 / elapsed;
+                }
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (failure[0] != null) {
+                throw new Exception("Benchmark " + benchmark.getName() + " failed", failure[0]);
+            }
+            return new Result(benchmark, threads, myWarmupIterations_, myIterationMilliseconds_, throughputs);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * @return the results as a JSON array.
+     */
+    static String toJson(List<Result> results) {
+        final StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); ++i) {
+            results.get(i).appendJson(json);
+            json.append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static String quote(String text) {
+        final StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String number(double value) {
+        return (Double.isNaN(value) || Double.isInfinite(value)) ? "null" : String.valueOf(value);
+    }
+}
@@ -0,0 +1,370 @@
+package Benchmark;
+
+import Utilities.AppTester;
+import Utilities.ByteArrays;
+import Utilities.FileFinder;
+import Utilities.Networking_Utilities;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks for the things in Utilities that get called a lot: printing with
+ * AppTester, printing stack traces, the ByteArrays helpers, FileFinder searches
+ * and network interface lookups. Printing is measured with the terminal and
+ * the log file each turned on and off, on 1, 2, 4 and so on up to the number
+ * of processors threads. Terminal output goes to a stream that throws it away,
+ * so only AppTester's own work is measured. Log file output goes to the
+ * Log_Files folder of the working directory, rolled over every 64 MB.
+ *
+ * Run with: java -cp [classes] Benchmark.BenchmarkSuite [options]
+ *
+ * Options:
+ * <pre>
+ * -f regex      only run benchmarks whose name matches
+ * -t threads    the most threads to print with
+ * -wi count     warmup iterations, 3 by default
+ * -i count      measurement iterations, 5 by default
+ * -r ms         length of an iteration, 500 by default
+ * -o file       where to write the JSON results, standard out by default
+ * </pre>
+ *
+ * A summary is printed to standard error as the benchmarks finish.
+ *
+ * @author johnmichaelreed2
+ */
+class BenchmarkSuite {
+
+    private static final int[] STACK_DEPTHS = {10, 100, 500};
+    private static final int[] PAYLOAD_SIZES = {16, 1024, 64 * 1024};
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+    private static final PrintStream REAL_OUT = System.out;
+    private static final PrintStream REAL_ERR = System.err;
+
+    public static void main(String args[]) throws Exception {
+        Pattern filter = Pattern.compile(".*");
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int warmupIterations = 3;
+        int measurementIterations = 5;
+        long iterationMilliseconds = 500;
+        String outputFileOrNull = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-f":
+                    filter = Pattern.compile(args[i + 1]);
+                    break;
+                case "-t":
+                    maxThreads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-i":
+                    measurementIterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-r":
+                    iterationMilliseconds = Long.parseLong(args[i + 1]);
+                    break;
+                case "-o":
+                    outputFileOrNull = args[i + 1];
+                    break;
+                default:
+                    REAL_ERR.println("Unknown option: " + args[i]);
+                    System.exit(-1);
+            }
+        }
+        AppTester.setMyMaxLogFileBytes(64L * 1024 * 1024);
+
+        final BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measurementIterations, iterationMilliseconds);
+        final List<BenchmarkRunner.Result> results = new ArrayList<>();
+        for (String method : new String[]{"print", "uPrint", "printerr"}) {
+            for (boolean toTerminal : new boolean[]{false, true}) {
+                for (boolean toLogFile : new boolean[]{false, true}) {
+                    final BenchmarkRunner.Case benchmark = printCase(method, toTerminal, toLogFile);
+                    if (filter.matcher(benchmark.getName()).find()) {
+                        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                            results.add(report(runner.run(benchmark, threads)));
+                        }
+                    }
+                }
+            }
+        }
+        final List<BenchmarkRunner.Case> singleThreaded = new ArrayList<>();
+        for (int depth : STACK_DEPTHS) {
+            singleThreaded.add(printExCase(depth, true));
+            singleThreaded.add(printExCase(depth, false));
+        }
+        for (int size : PAYLOAD_SIZES) {
+            singleThreaded.addAll(byteArrayCases(size));
+        }
+        singleThreaded.add(fileFinderCase(3, 3, true));
+        singleThreaded.add(fileFinderCase(3, 3, false));
+        singleThreaded.add(fileFinderCase(4, 5, true));
+        singleThreaded.add(fileFinderCase(4, 5, false));
+        singleThreaded.addAll(networkCases());
+        for (BenchmarkRunner.Case benchmark : singleThreaded) {
+            // ByteArrays reports through AppTester and FileFinder remembers its
+            // last match in a static, so these run on one thread.
+            if (filter.matcher(benchmark.getName()).find()) {
+                results.add(report(runner.run(benchmark, 1)));
+            }
+        }
+
+        final String json = BenchmarkRunner.toJson(results);
+        if (outputFileOrNull == null) {
+            REAL_OUT.print(json);
+            REAL_OUT.flush();
+        } else {
+            Files.write(Paths.get(outputFileOrNull), json.getBytes(StandardCharsets.UTF_8));
+        }
+        AppTester.close();
+    }
+
+    private static BenchmarkRunner.Result report(BenchmarkRunner.Result result) {
+        REAL_ERR.println(result);
+        return result;
+    }
+
+    /**
+     * Sets up where AppTester prints for one benchmark and puts everything
+     * back afterwards.
+     */
+    private static abstract class AppTesterCase extends BenchmarkRunner.Case {
+
+        private final boolean toTerminal_;
+        private final boolean toLogFile_;
+        private boolean wasPrintingToTerminal_;
+        private boolean wasPrintingToLogFile_;
+        private AppTester.Rank myOldDebugLevel_;
+
+        AppTesterCase(String name, boolean toTerminal, boolean toLogFile) {
+            super(name);
+            toTerminal_ = toTerminal;
+            toLogFile_ = toLogFile;
+            param("terminal", toTerminal ? "on" : "off");
+            param("logFile", toLogFile ? "on" : "off");
+        }
+
+        @Override
+        void setUp() {
+            wasPrintingToTerminal_ = AppTester.getPrintToTerminal();
+            wasPrintingToLogFile_ = AppTester.getGenerateLogFiles();
+            myOldDebugLevel_ = AppTester.getMyDebugLevel();
+            System.setOut(DISCARD);
+            System.setErr(DISCARD);
+            AppTester.setMyDebugLevel(AppTester.UNIMPORTANT);
+            AppTester.setPrintToTerminal(toTerminal_);
+            AppTester.setPrintToLogFile(toLogFile_);
+        }
+
+        @Override
+        void tearDown() {
+            AppTester.flushLogFile();
+            AppTester.setPrintToTerminal(wasPrintingToTerminal_);
+            AppTester.setPrintToLogFile(wasPrintingToLogFile_);
+            AppTester.setMyDebugLevel(myOldDebugLevel_);
+            System.setOut(REAL_OUT);
+            System.setErr(REAL_ERR);
+        }
+    }
+
+    private static BenchmarkRunner.Case printCase(final String method, boolean toTerminal, boolean toLogFile) {
+        return new AppTesterCase("AppTester." + method, toTerminal, toLogFile) {
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                switch (method) {
+                    case "print":
+                        AppTester.print("A message of about the usual length for a readout.");
+                        break;
+                    case "uPrint":
+                        AppTester.uPrint("A message of about the usual length for a readout.");
+                        break;
+                    default:
+                        AppTester.printerr("A message of about the usual length for a readout.");
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * @param isRepeat true to print the same stack trace over and over, which
+     * printEx prints in short after the first time, or false to print it in
+     * full every time.
+     */
+    private static BenchmarkRunner.Case printExCase(final int depth, final boolean isRepeat) {
+        final BenchmarkRunner.Case benchmark = new AppTesterCase("AppTester.printEx", true, false) {
+            private Exception myException_;
+            private int myOldCapacity_;
+
+            @Override
+            void setUp() {
+                super.setUp();
+                myException_ = throwableAtDepth(depth);
+                myOldCapacity_ = AppTester.getMyStackTraceCacheCapacity();
+                AppTester.setMyStackTraceCacheCapacity(isRepeat ? myOldCapacity_ : 0);
+            }
+
+            @Override
+            void tearDown() {
+                AppTester.setMyStackTraceCacheCapacity(myOldCapacity_);
+                super.tearDown();
+            }
+
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                AppTester.printEx("Benchmark", myException_);
+            }
+        };
+        return benchmark.param("depth", depth).param("trace", isRepeat ? "repeat" : "full");
+    }
+
+    private static Exception throwableAtDepth(int depth) {
+        return (depth <= 1) ? new Exception("At the bottom") : throwableAtDepth(depth - 1);
+    }
+
+    private static List<BenchmarkRunner.Case> byteArrayCases(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        final byte[] copy = bytes.clone();
+        final List<BenchmarkRunner.Case> cases = new ArrayList<>();
+        cases.add(new BenchmarkRunner.Case("ByteArrays.tryDeepCopy") {
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                blackhole.consume(ByteArrays.tryDeepCopy(bytes));
+            }
+        });
+        cases.add(new BenchmarkRunner.Case("ByteArrays.deepEquals") {
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                blackhole.consume(ByteArrays.deepEquals(bytes, copy));
+            }
+        });
+        cases.add(new BenchmarkRunner.Case("ByteArrays.bytesToHex") {
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                blackhole.consume(ByteArrays.bytesToHex(bytes));
+            }
+        });
+        cases.add(new BenchmarkRunner.Case("ByteArrays.byteArrayToMultipleLongs") {
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                blackhole.consume(ByteArrays.byteArrayToMultipleLongs(bytes, size / 8));
+            }
+        });
+        for (BenchmarkRunner.Case benchmark : cases) {
+            benchmark.param("bytes", size);
+        }
+        return cases;
+    }
+
+    /**
+     * Searches a made up directory tree in which every directory holds the
+     * given number of subdirectories and a file, down to the given depth.
+     *
+     * @param isFound true to search for the file in the last directory
+     * visited, or false to search for a file that does not exist.
+     */
+    private static BenchmarkRunner.Case fileFinderCase(final int breadth, final int depth, final boolean isFound) {
+        final BenchmarkRunner.Case benchmark = new BenchmarkRunner.Case("FileFinder.tryFindPathToFileWhoseNameIs") {
+            private Path myRoot_;
+            private String myTarget_;
+
+            @Override
+            void setUp() throws IOException {
+                myRoot_ = Files.createTempDirectory("FileFinderBenchmark");
+                final int directories = makeTree(myRoot_, breadth, depth, 0);
+                myTarget_ = isFound ? ("file_" + (directories - 1) + ".txt") : "missing.txt";
+            }
+
+            @Override
+            void tearDown() throws IOException {
+                deleteTree(myRoot_);
+            }
+
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) {
+                blackhole.consume(FileFinder.tryFindPathToFileWhoseNameIs(myTarget_, myRoot_.toString()));
+            }
+        };
+        return benchmark.param("breadth", breadth).param("depth", depth).param("target", isFound ? "found" : "missing");
+    }
+
+    /**
+     * @param number the number of the first directory made.
+     * @return the number of the last directory made plus one.
+     */
+    private static int makeTree(Path directory, int breadth, int depth, int number) throws IOException {
+        Files.createDirectories(directory);
+        Files.createFile(directory.resolve("file_" + number + ".txt"));
+        ++number;
+        if (depth > 0) {
+            for (int i = 0; i < breadth; ++i) {
+                number = makeTree(directory.resolve("dir_" + i), breadth, depth - 1, number);
+            }
+        }
+        return number;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Enumerating interfaces is always measured. Looking up a MAC address is
+     * only measured if some interface has one, since getMACAddress kills the
+     * application otherwise.
+     */
+    private static List<BenchmarkRunner.Case> networkCases() throws IOException {
+        final List<BenchmarkRunner.Case> cases = new ArrayList<>();
+        cases.add(new BenchmarkRunner.Case("NetworkInterface.getNetworkInterfaces") {
+            @Override
+            void perform(BenchmarkRunner.Blackhole blackhole) throws IOException {
+                blackhole.consume(Collections.list(NetworkInterface.getNetworkInterfaces()));
+            }
+        });
+        String interfaceNameOrNull = null;
+        for (NetworkInterface intf : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (intf.getHardwareAddress() != null) {
+                interfaceNameOrNull = intf.getName();
+                break;
+            }
+        }
+        if (interfaceNameOrNull != null) {
+            final String interfaceName = interfaceNameOrNull;
+            cases.add(new BenchmarkRunner.Case("Networking_Utilities.getMACAddress") {
+                @Override
+                void perform(BenchmarkRunner.Blackhole blackhole) {
+                    blackhole.consume(Networking_Utilities.getMACAddress(interfaceName));
+                }
+            }.param("interface", interfaceName));
+        }
+        return cases;
+    }
+}
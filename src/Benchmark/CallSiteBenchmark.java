@@ -0,0 +1,75 @@
+package Benchmark;
+
+import Utilities.AppTester;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Measures what it costs AppTester to find the location of a print statement
+ * at different stack depths. Compares an {@link AppTester#uPrint(java.lang.String) }
+ * to a terminal that throws its output away, which pays for the call site
+ * lookup and for formatting a short readout, against reading one frame out of
+ * a full {@link Thread#getStackTrace() }, which is how call sites used to be
+ * found. A print that is turned off returns before it looks up its call site,
+ * so it would measure nothing.
+ *
+ * Run with: java -cp [classes] Benchmark.CallSiteBenchmark
+ *
+ * @author johnmichaelreed2
+ */
+class CallSiteBenchmark {
+
+    private static final int[] STACK_DEPTHS = {20, 100, 500};
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 100000;
+
+    /**
+     * Keeps the JIT from throwing away getStackTrace results.
+     */
+    private static int myBlackHole_ = 0;
+
+    public static void main(String args[]) {
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        AppTester.setMyDefaultPrintStream(AppTester.ONLY_STANDARD_OUT);
+        AppTester.setMyDebugLevel(AppTester.UNIMPORTANT);
+        AppTester.setPrintToTerminal(true);
+        AppTester.setPrintToLogFile(false);
+        // Warms up the print path, so the first row is not timed while it compiles.
+        atDepth(STACK_DEPTHS[0], true);
+        out.println("depth, getStackTrace ns/op, AppTester.uPrint ns/op");
+        for (final int depth : STACK_DEPTHS) {
+            final long fullStackNanos = atDepth(depth, false);
+            final long callSiteNanos = atDepth(depth, true);
+            out.println(depth + ", " + fullStackNanos + ", " + callSiteNanos);
+        }
+        out.println("(ignore) " + myBlackHole_);
+        AppTester.close();
+    }
+
+    /**
+     * Recurses until the stack is depth frames deep and then times the lookups
+     * there.
+     *
+     * @return the average number of nanoseconds per lookup.
+     */
+    private static long atDepth(int depth, boolean useAppTester) {
+        if (Thread.currentThread().getStackTrace().length < depth) {
+            return atDepth(depth, useAppTester);
+        }
+        run(WARMUP_ITERATIONS, useAppTester);
+        final long start = System.nanoTime();
+        run(MEASURED_ITERATIONS, useAppTester);
+        return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    }
+
+    private static void run(int iterations, boolean useAppTester) {
+        for (int i = 0; i < iterations; ++i) {
+            if (useAppTester) {
+                AppTester.uPrint("benchmark");
+            } else {
+                myBlackHole_ += Thread.currentThread().getStackTrace()[1].getLineNumber();
+            }
+        }
+    }
+}
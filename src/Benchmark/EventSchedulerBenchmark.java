@@ -0,0 +1,125 @@
+package Benchmark;
+
+import Utilities.AppTester;
+import Utilities.BackgroundEvent_Interface;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the background event schedulers with 100,000 events polled for
+ * once a second, their first polls spread over the first second: how long it
+ * takes to schedule them all, how many polls happen in a few seconds, how
+ * much CPU time the "Event_Checker" thread uses per poll, how late polls
+ * are, and how long it takes to cancel them all. Each scheduler is measured
+ * in a JVM of its own, since AppTester only picks a scheduler once.
+ *
+ * Run with: java -cp [classes] Benchmark.EventSchedulerBenchmark [SCHEDULED_EXECUTOR|TIMING_WHEEL]
+ *
+ * @author johnmichaelreed2
+ */
+class EventSchedulerBenchmark {
+
+    private static final int EVENT_COUNT = 100000;
+    private static final long INTERVAL_MILLISECONDS = 1000;
+    private static final long MEASURED_MILLISECONDS = 5000;
+
+    private static final LongAdder myPolls_ = new LongAdder();
+    private static final LongAdder myLatenessNanos_ = new LongAdder();
+
+    /**
+     * A health check that is never unhealthy and notes how late it was
+     * polled for.
+     */
+    private static final class HealthCheck implements BackgroundEvent_Interface {
+
+        private long myLastPollNanos_ = 0;
+
+        @Override
+        public boolean checkForEventOccurance() {
+            final long now = System.nanoTime();
+            if (myLastPollNanos_ != 0) {
+                myLatenessNanos_.add(Math.max(0, now - myLastPollNanos_ - INTERVAL_MILLISECONDS * 1000000));
+            }
+            myLastPollNanos_ = now;
+            myPolls_.increment();
+            return false;
+        }
+
+        @Override
+        public void respondToEventOccurance() {
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        if (args.length == 0) {
+            System.out.println("scheduler, schedule ns/op, polls/s, Event_Checker CPU ns/poll, average lateness us, cancel ns/op");
+            for (AppTester.EventScheduler scheduler : AppTester.EventScheduler.values()) {
+                runInOwnJvm(scheduler);
+            }
+            return;
+        }
+        AppTester.setPrintToTerminal(false);
+        AppTester.setPrintToLogFile(false);
+        final AppTester.EventScheduler scheduler = AppTester.EventScheduler.valueOf(args[0]);
+        AppTester.setMyEventScheduler(scheduler);
+
+        final HealthCheck[] events = new HealthCheck[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; ++i) {
+            events[i] = new HealthCheck();
+        }
+        final long scheduleStart = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; ++i) {
+            AppTester.tryPollForBackgroundEventAfterEveryXmsStartingInYms(events[i], INTERVAL_MILLISECONDS,
+                    1 + i % INTERVAL_MILLISECONDS);
+        }
+        final long scheduleNanos = (System.nanoTime() - scheduleStart) / EVENT_COUNT;
+
+        Thread.sleep(2 * INTERVAL_MILLISECONDS); // warm up.
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long checkerId = findThreadId("Event_Checker");
+        final long cpuStart = threads.getThreadCpuTime(checkerId);
+        myPolls_.reset();
+        myLatenessNanos_.reset();
+        Thread.sleep(MEASURED_MILLISECONDS);
+        final long polls = myPolls_.sum();
+        final long cpuNanos = threads.getThreadCpuTime(checkerId) - cpuStart;
+        final long latenessNanos = myLatenessNanos_.sum();
+
+        final long cancelStart = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; ++i) {
+            AppTester.stopPollingForBackgroundEvent(events[i]);
+        }
+        final long cancelNanos = (System.nanoTime() - cancelStart) / EVENT_COUNT;
+
+        System.out.println(scheduler + ", " + scheduleNanos + ", " + (polls * 1000 / MEASURED_MILLISECONDS) + ", "
+                + (cpuNanos / Math.max(1, polls)) + ", " + (latenessNanos / Math.max(1, polls) / 1000) + ", "
+                + cancelNanos);
+        AppTester.close();
+    }
+
+    private static long findThreadId(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) {
+                return thread.getId();
+            }
+        }
+        return -1;
+    }
+
+    private static void runInOwnJvm(AppTester.EventScheduler scheduler) throws Exception {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                EventSchedulerBenchmark.class.getName(), scheduler.name()).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                System.out.println(line);
+            }
+        }
+        process.waitFor();
+    }
+}
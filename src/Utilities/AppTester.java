@@ -1,19 +1,30 @@
 package Utilities;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * Use this for various testing/debugging purposes including multi-threaded
@@ -70,6 +81,171 @@ public class AppTester {
         ERROR, NON_ERROR
     }
 
+    /**
+     * Used to specify what a printing thread does when the asynchronous
+     * readout buffer, or the queue of a {@link LogSink}, is full. See
+     * {@link #setAsynchronousReadout(boolean) } and
+     * {@link #addSink(Utilities.LogSink, Utilities.AppTester.Rank, int, Utilities.AppTester.FullBufferPolicy) }.
+     */
+    public static enum FullBufferPolicy {
+
+        /**
+         * The printing thread waits until the writer thread frees up space.
+         */
+        BLOCK,
+        /**
+         * {@link Rank#UNIMPORTANT} readouts are discarded and counted. More
+         * important readouts wait as in {@link #BLOCK}.
+         */
+        DROP_LOWEST_RANK,
+        /**
+         * Readouts that do not fit are discarded and counted, whatever their
+         * rank. Never waits.
+         */
+        DROP_NEWEST,
+        /**
+         * Readouts overflow into an unbounded queue which the writer thread
+         * empties after the buffer. Never waits, but may use lots of memory.
+         */
+        SPILL
+    }
+
+    /**
+     * Used to specify when text buffered for the log file is actually written
+     * to it. See {@link #setMyFlushPolicy(Utilities.AppTester.FlushPolicy) }.
+     */
+    public static enum FlushPolicy {
+
+        /**
+         * Every readout is written to the log file right away.
+         */
+        ALWAYS,
+        /**
+         * Text is written once a certain number of bytes have been buffered.
+         */
+        EVERY_N_BYTES,
+        /**
+         * Text is written by a background thread named "Log_Flusher" at regular
+         * intervals.
+         */
+        EVERY_T_MILLISECONDS,
+        /**
+         * Text is written whenever an {@link Rank#IMPORTANT} or
+         * {@link ReadoutCondition#ERROR} readout comes through, taking all
+         * earlier readouts with it.
+         */
+        ON_IMPORTANT_OR_ERROR
+    }
+
+    /**
+     * Used to specify how text gets into the log file. See
+     * {@link #setMyLogFileBackend(Utilities.AppTester.LogFileBackend) }.
+     */
+    public static enum LogFileBackend {
+
+        /**
+         * Text is buffered and written through a file channel according to the
+         * {@link FlushPolicy}.
+         */
+        BUFFERED_CHANNEL,
+        /**
+         * Text is copied into a memory mapped region of the log file. No system
+         * calls per readout, and the text survives the JVM dying. The
+         * {@link FlushPolicy} does not apply.
+         */
+        MEMORY_MAPPED,
+        /**
+         * Each thread writes to one of several shard files, so printing
+         * threads do not wait on each other to write to the log file. Records
+         * are numbered in the order they happen, and
+         * {@link ShardedLogMerger} merges the shards back into one log file.
+         */
+        SHARDED
+    }
+
+    /**
+     * Used to specify what runs background events. See
+     * {@link #setMyEventScheduler(Utilities.AppTester.EventScheduler) }.
+     */
+    public static enum EventScheduler {
+
+        /**
+         * Events are kept in the heap of a single threaded
+         * {@link ScheduledExecutorService}, which costs O(log n) for every
+         * poll.
+         */
+        SCHEDULED_EXECUTOR,
+        /**
+         * Events are kept in a hashed timing wheel with one millisecond ticks,
+         * which costs O(1) to schedule, poll and cancel, however many events
+         * there are. Meant for thousands of events.
+         */
+        TIMING_WHEEL
+    }
+
+    /**
+     * Used to specify where the polls and responses of background events
+     * run. See
+     * {@link #setMyEventExecution(Utilities.AppTester.EventExecution) }.
+     */
+    public static enum EventExecution {
+
+        /**
+         * Everything runs on the "Event_Checker" thread, one thing at a time,
+         * so a slow event holds up the rest.
+         */
+        ON_EVENT_CHECKER,
+        /**
+         * Each poll and response runs on a virtual thread of its own, or on a
+         * pooled thread before Java 21, and the "Event_Checker" thread only
+         * keeps time. See
+         * {@link #setMyEventConcurrencyLimit(int) } and
+         * {@link #setMyEventTimeoutMilliseconds(long) }.
+         */
+        PARALLEL
+    }
+
+    /**
+     * Used to specify what the log file looks like. See
+     * {@link #setMyLogFileFormat(Utilities.AppTester.LogFileFormat) }.
+     */
+    public static enum LogFileFormat {
+
+        /**
+         * Readouts are written as text, the same as in the terminal.
+         */
+        TEXT,
+        /**
+         * Readouts are written in a compact binary format, to a ".bin" file
+         * next to the text log file. Thread names and call sites are written
+         * once and referred to by number after that. Turn the file back into
+         * text with {@link BinaryLogDecoder}.
+         */
+        BINARY,
+        /**
+         * Each readout is written as one line of JSON, to a ".jsonl" file next
+         * to the text log file, with the time, thread, call site, rank,
+         * condition and message as fields, plus the keys and values passed to
+         * {@link #printKV(java.lang.String, java.lang.Object...) } and the
+         * like. Log shippers can read it without parsing the text layout.
+         */
+        JSON_LINES;
+
+        /**
+         * @return the extension of log files in this format, such as ".txt".
+         */
+        String getExtension() {
+            switch (this) {
+                case BINARY:
+                    return ".bin";
+                case JSON_LINES:
+                    return ".jsonl";
+                default:
+                    return ".txt";
+            }
+        }
+    }
+
     /**
      * Used for readouts that are important, such as error messages.
      */
@@ -129,6 +305,35 @@ public class AppTester {
         AppTester.check(aNumberOfRowsIDisplayInStackTraces_ >= 0, "You can't display a negative number of rows in a stack trace.");
         numberOfRowsIDisplayInStackTraces_ = aNumberOfRowsIDisplayInStackTraces_;
     }
+
+    /**
+     * The stack traces printed by printEx recently, so that repeats can be
+     * printed in short.
+     */
+    private static final StackTraceCache myStackTraceCache_ = new StackTraceCache(1024);
+
+    /**
+     * @return how many different stack traces printEx remembers.
+     */
+    public static int getMyStackTraceCacheCapacity() {
+        return myStackTraceCache_.getCapacity();
+    }
+
+    /**
+     * printEx prints a stack trace in full the first time it sees it, and as
+     * "same as trace #id (xN)" after that, for as long as it remembers it.
+     * Two stack traces are the same if their throwables are of the same class
+     * and were thrown from the same place, through the same calls, with the
+     * same causes. By default the last 1024 different stack traces are
+     * remembered.
+     *
+     * @param capacity how many different stack traces to remember, or 0 to
+     * always print stack traces in full.
+     */
+    public static void setMyStackTraceCacheCapacity(int capacity) {
+        AppTester.check(capacity >= 0, "The stack trace cache capacity must not be negative.");
+        myStackTraceCache_.setCapacity(capacity);
+    }
     
     /**
      * When this variable is true, the log file will be printed to. If it is false,
@@ -160,9 +365,59 @@ public class AppTester {
      * {@link Utilities.BackgroundEvent_Interface} interface. Its name is
      * "Event_Checker". Its initialization is deferred until its first use.
      */
-    private static ScheduledExecutorService myScheduler_
+    private static volatile ScheduledExecutorService myScheduler_
             = null; //Executors.newSingleThreadScheduledExecutor();
 
+    /**
+     * What runs background events. By default set to
+     * {@link EventScheduler#SCHEDULED_EXECUTOR}
+     */
+    private static EventScheduler myEventScheduler_ = EventScheduler.SCHEDULED_EXECUTOR;
+
+    /**
+     * Takes the place of {@link #myScheduler_} under
+     * {@link EventScheduler#TIMING_WHEEL}. Its thread is also named
+     * "Event_Checker".
+     */
+    private static volatile TimingWheel myTimingWheelOrNull_ = null;
+
+    /**
+     * Where the polls and responses of background events run. By default set
+     * to {@link EventExecution#ON_EVENT_CHECKER}
+     */
+    private static EventExecution myEventExecution_ = EventExecution.ON_EVENT_CHECKER;
+
+    /**
+     * Runs polls and responses under {@link EventExecution#PARALLEL}.
+     */
+    private static volatile EventWorkers myEventWorkersOrNull_ = null;
+
+    /**
+     * How many polls and responses of one background event may run at once
+     * under {@link EventExecution#PARALLEL}. By default 1.
+     */
+    private static int myEventConcurrencyLimit_ = 1;
+
+    /**
+     * How long a poll or response may run under
+     * {@link EventExecution#PARALLEL}, or 0 for no limit, which is the
+     * default.
+     */
+    private static long myEventTimeoutMilliseconds_ = 0;
+
+    /**
+     * How often the "Event_Checker" thread looks for polls and responses that
+     * have run too long.
+     */
+    private static final long EVENT_TIMEOUT_CHECK_MILLISECONDS = 100;
+
+    /**
+     * Stops each background event from being polled or listened for, by
+     * event.
+     */
+    private static final ConcurrentHashMap<Object, Runnable> myEventCancellers_
+            = new ConcurrentHashMap<>();
+
     /**
      * This represents the main thread. If this thread is dead,
      * {@link #myScheduler_} thread must die as well, otherwise, the application
@@ -192,6 +447,7 @@ public class AppTester {
      */
     public static void setPrintToLogFile(boolean useLogFileOrNot) {
         printToLogFile_ = useLogFileOrNot;
+        updateLowestEnabledImportance();
     }
     
     /**
@@ -208,6 +464,7 @@ public class AppTester {
      */
     public static void setPrintToTerminal(boolean toPrint) {
         printToTerminal_ = toPrint;
+        updateLowestEnabledImportance();
     }
 
     /**
@@ -224,269 +481,1577 @@ public class AppTester {
      */
     public static void setMyDebugLevel(Rank level) {
         myRank_ = level;
+        updateLowestEnabledImportance();
     }
 
     /**
-     * @return the currently in use
-     * {@link Utilities.AppTester.DefaultPrintStream}
+     * The debug levels of particular packages and classes.
      */
-    public static DefaultPrintStream getMyDefaultPrintStream() {
-        return myTargetPrintStream_;
-    }
+    private static final LevelTree myLevelTree_ = new LevelTree();
 
     /**
-     * All terminal error messages will go through this
-     * {@link Utilities.AppTester.DefaultPrintStream}
+     * Gives a package or a class a debug level of its own, which applies
+     * instead of the global one to the print statements in it and in the
+     * packages and classes inside it that have no level of their own. For
+     * example, to see unimportant readouts from one package only:
+     * <pre>
+     * AppTester.setMyDebugLevel("com.acme.net", AppTester.UNIMPORTANT);
+     * </pre>
+     * Only affects the terminal. Which readouts are logged is up to
+     * {@link #setMyLogFileLevel(Utilities.AppTester.Rank) }.
      *
-     * @param streamType
+     * @param packageOrClassName such as "com.acme.net" or
+     * "com.acme.net.Server".
+     * @param levelOrNull the debug level, or null to go back to the level of
+     * the enclosing package.
      */
-    public static void setMyDefaultPrintStream(DefaultPrintStream streamType) {
-        myTargetPrintStream_ = streamType;
+    public static synchronized void setMyDebugLevel(String packageOrClassName, Rank levelOrNull) {
+        AppTester.check(packageOrClassName != null, "No null inputs");
+        myLevelTree_.set(packageOrClassName, levelOrNull);
+        updateLowestEnabledImportance();
     }
-    // </editor-fold>
-    // <editor-fold defaultstate="collapsed" desc="Delayed Initialization Vars">
+
     /**
-     * The name of the folder that holds all the log files, or null if there are
-     * no log files.
+     * @return the debug level that applies to the print statements in a
+     * class, its own or the closest enclosing package's, or the global one.
      */
-    private static final String myLogFolderNameOrNull_;// = "Log_Files";
-
-    static {
-        // initialize the above variable in the static block.
-        final String intendedFolderName = "Log_Files";
-        final File logFilesFolder = new File(FileFinder.WORKING_DIRECTORY
-                + FileFinder.FILE_SEPARATOR + intendedFolderName);
-        if (!logFilesFolder.exists()) {
-            // No folder exists, so the folder needs to be created.
-            boolean madeFolder = false;
-            try {
-                madeFolder = logFilesFolder.mkdir();
-            } catch (SecurityException se) {
-                // madeFolder remains false.
-            }
+    public static Rank getMyDebugLevel(String className) {
+        AppTester.check(className != null, "No null inputs");
+        final Rank levelOrNull = myLevelTree_.resolveOrNull(className);
+        return (levelOrNull == null) ? myRank_ : levelOrNull;
+    }
 
-            if (madeFolder) {
-                //Tester.print("A log file folder was created.", NORMAL);
-                myLogFolderNameOrNull_ = intendedFolderName;
-            } else {
-                //Tester.print("The log file folder could not be created.", NORMAL);
-                myLogFolderNameOrNull_ = null;
-            }
-        } else {
-            // The folder already exists.
-            //Tester.print("The log file folder already exists.", NORMAL);
-            myLogFolderNameOrNull_ = intendedFolderName;
-        }
+    /**
+     * @return every package and class with a debug level of its own.
+     */
+    public static Map<String, Rank> getMyPackageDebugLevels() {
+        return myLevelTree_.getLevels();
     }
 
     /**
-     * The name of the log file if log file creation was successful, or null if
-     * no log file was created. Perform null checks before use.
+     * All messages that are at this level or higher are written to the log
+     * file. By default set to {@link #UNIMPORTANT}, so everything is logged.
      */
-    private static final String myLogFileNameOrNull_;
-    
+    private static Rank myLogFileRank_ = UNIMPORTANT;
+
     /**
-     * @return Either the name of the log file or empty string if the log file
-     * was not successfully created.
+     * The importance of the least important {@link Rank} that goes anywhere,
+     * kept up to date by the setters so that {@link #isEnabled(Utilities.AppTester.Rank) }
+     * is a single comparison. Read without a lock, and only recomputed under
+     * the AppTester class lock, so racing setters cannot leave a stale minimum.
      */
-    public static String getLogFileNameOrEmptyString() {
-        if(myLogFileNameOrNull_ != null) {
-            return myLogFileNameOrNull_;
-        } else {
-            return "";
-        }
-    }
+    private static volatile int myLowestEnabledImportance_ = UNIMPORTANT.getImportance();
+
     /**
-     * If initialization was successful, this variable will be non-null,
-     * otherwise it will remain null. Perform null checks before use.
+     * The importance of the least important {@link Rank} that is printed,
+     * logged or sent to a sink. Lower than
+     * {@link #myLowestEnabledImportance_} only while the flight recorder is
+     * on.
      */
-    private static FileOutputStream myLogFileOutputStreamOrNull_ = null;
+    private static volatile int myLowestWrittenImportance_ = UNIMPORTANT.getImportance();
+
     /**
-     * If initialization was successful, this variable will be non-null,
-     * otherwise it will remain null. Perform null checks before use.
+     * @return the least important {@link Rank} that is written to the log
+     * file.
      */
-    private static OutputStreamWriter myLogOutputStreamWriterOrNull_ = null;
+    public static Rank getMyLogFileLevel() {
+        return myLogFileRank_;
+    }
+
     /**
-     * If initialization was successful, this variable will be non-null,
-     * otherwise it will by null. Perform null checks before use.
+     * @param level all messages that are at this level or higher are written
+     * to the log file. Messages that are below (less important than) this level
+     * are not logged.
      */
-    private static final BufferedWriter myLogBufferedWriterOrNull_; // this does the actual writing
+    public static void setMyLogFileLevel(Rank level) {
+        AppTester.check(level != null, "No null inputs");
+        myLogFileRank_ = level;
+        updateLowestEnabledImportance();
+    }
 
-    static {
-        // initialize myLogFileNameOrNull_ and the writers.
-        if (!(myLogFolderNameOrNull_ == null)) {
-            final DateFormat dateFormat = new SimpleDateFormat("yyyy_MM_dd___HH:mm:ss");
-            final Calendar cal = Calendar.getInstance();
-            final String dateTimeForLogFile = dateFormat.format(cal.getTime()); /* 2014_08_06___16:00:22 */
+    /**
+     * @return true if a message of the given rank would be printed to the
+     * terminal, written to the log file or kept by the flight recorder. Use
+     * this to skip expensive work that only builds a message.
+     */
+    public static boolean isEnabled(Rank severity) {
+        return severity.getImportance() >= myLowestEnabledImportance_;
+    }
 
-            final String expectedFileName = dateTimeForLogFile + ".txt";
-            final String fullPath = FileFinder.WORKING_DIRECTORY
-                    + FileFinder.FILE_SEPARATOR + myLogFolderNameOrNull_
-                    + FileFinder.FILE_SEPARATOR + expectedFileName;
+    private static synchronized void updateLowestEnabledImportance() {
+        int lowest = Integer.MAX_VALUE;
+        if (printToTerminal_) {
+            lowest = Math.min(lowest, myRank_.getImportance());
+            lowest = Math.min(lowest, myLevelTree_.getLowestImportance());
+        }
+        if (printToLogFile_ && !hasLogFileFailed_) {
+            lowest = Math.min(lowest, myLogFileRank_.getImportance());
+        }
+        for (SinkWorker sinkWorker : mySinkWorkers_) {
+            lowest = Math.min(lowest, sinkWorker.getThreshold().getImportance());
+        }
+        myLowestWrittenImportance_ = lowest;
+        if (myFlightRecorderOrNull_ != null) {
+            lowest = Math.min(lowest, UNIMPORTANT.getImportance()); // it keeps every rank.
+        }
+        myLowestEnabledImportance_ = lowest;
+    }
 
-            final File logFile = new File(fullPath);
+    /**
+     * How often a call site that keeps going over its rate limit reports how
+     * many readouts it has suppressed.
+     */
+    private static final long RATE_LIMIT_SUMMARY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
 
-            boolean wasFileCreated = false;
-            try {
-                wasFileCreated = logFile.createNewFile();
-            } catch (IOException ioe) {
-                // wasFileCreated remains false.
-            } catch (SecurityException se) {
-                // wasFileCreated remains false.
-            }
+    /**
+     * The time it takes for a call site to earn back one readout, or 0 if
+     * call sites are not rate limited.
+     */
+    private static volatile long myRateLimitIntervalNanos_ = 0;
 
-            boolean success = false;
-            if (wasFileCreated == true) {
-                final String wasFileFound = FileFinder.tryFindPathToFileWhoseNameIs(expectedFileName);
-                AppTester.check(wasFileFound != null, "I made the file so I should be able to find it.");
-                //Tester.printEx("Managed to create log file.", AppTester.IMPORTANT);
-                try {
-                    myLogFileOutputStreamOrNull_ = new FileOutputStream(logFile, true); // File not found exception???
-                    myLogOutputStreamWriterOrNull_ = new OutputStreamWriter(myLogFileOutputStreamOrNull_, "utf-8"); // unsupported encoding exception
-                } catch (FileNotFoundException fnfe) {
-                    AppTester.killApplication("It's impossible for a newly created file to not be found.", fnfe);
-                } catch (UnsupportedEncodingException uee) {
-                    AppTester.killApplication("It's impossible for UTF-8 to be an unsupported text format.", uee);
-                } catch (Exception e) {
-                    //just ignore it, the things we are trying to initialize will be null.
-                    myLogFileOutputStreamOrNull_ = null;
-                    myLogOutputStreamWriterOrNull_ = null;
-                }
+    /**
+     * How far ahead of its steady rate a call site may run.
+     */
+    private static volatile long myRateLimitBurstNanos_ = 0;
 
-                if (myLogOutputStreamWriterOrNull_ != null) {
-                    myLogBufferedWriterOrNull_ = new BufferedWriter(myLogOutputStreamWriterOrNull_);
-                    try {
-                        myLogBufferedWriterOrNull_.write("Starting log file" + ls);
-                        success = true;
-                    } catch (IOException ioe) {
-                        // Just ignore it - don't kill the thread.
-                    }
-                } else {
-                    myLogBufferedWriterOrNull_ = null;
-                }
-            } else {
-                //Tester.printEx("Failed to create log file.", AppTester.IMPORTANT);
-                myLogFileOutputStreamOrNull_ = null;
-                myLogOutputStreamWriterOrNull_ = null;
-                myLogBufferedWriterOrNull_ = null;
-            }
+    private static volatile int myRateLimitBurst_ = 1;
 
-            if (success == true) {
-                myLogFileNameOrNull_ = expectedFileName;
-            } else {
-                myLogFileNameOrNull_ = null;
-            }
-        } else {
-            // No log folder, so definetely no log files.
-            AppTester.printerr("Could not create log file because log folder does not exist.");
-            myLogFileNameOrNull_ = null;
-            myLogBufferedWriterOrNull_ = null;
-        }
+    /**
+     * @return how many readouts per second each print statement may make, on
+     * average, or 0 if there is no limit.
+     */
+    public static double getMyCallSiteRateLimit() {
+        final long interval = myRateLimitIntervalNanos_;
+        return (interval == 0) ? 0 : TimeUnit.SECONDS.toNanos(1) / (double) interval;
     }
 
-    // </editor-fold>
-    // <editor-fold defaultstate="collapsed" desc="Functions">
     /**
-     * Closes the AppTester by killing any background threads it may be running
-     * and closing its log file writer. Must be called at or before termination.
+     * @return how many readouts in a row each print statement may make before
+     * the rate limit kicks in.
      */
-    public static void close() {
-        
-        try {
-            if (myScheduler_ != null) {
-                myScheduler_.shutdownNow();
-                printlnToReadout("\n" + "The scheduler has been shut down", ReadoutCondition.NON_ERROR, UNIMPORTANT);
-            }
-        } catch (Exception e) {
-            // ignore it.
-            //e.printStackTraceNoLeadingLineNumber();
-        }
-        try {
-            if (myLogBufferedWriterOrNull_ != null) {
-                printlnToReadout("\n" + "The log file is being shut down.", ReadoutCondition.NON_ERROR, NORMAL);
-                myLogBufferedWriterOrNull_.close();
-            } 
-        } catch (Exception ioe) {
-            // ioe.printStackTraceNoLeadingLineNumber();
-            // ignore the error. myLogBufferedWriterOrNull_ is already closed.
+    public static int getMyCallSiteRateLimitBurst() {
+        return myRateLimitBurst_;
+    }
+
+    /**
+     * Limits how often each print statement (each call to print, printerr and
+     * the like, told apart by where it is in the source code) can make a
+     * readout. A print statement may make a burst of readouts in a row, and
+     * after that is held to the average rate. Readouts over the limit are
+     * counted instead of printed, and the print statement reports
+     * "Suppressed N messages from ..." once a second while it is over the
+     * limit, once it is back under it, and on {@link #close() }.
+     *
+     * @param readoutsPerSecond the average rate allowed, or 0 for no limit.
+     * @param burst how many readouts in a row are allowed. At least 1.
+     */
+    public static void setMyCallSiteRateLimit(double readoutsPerSecond, int burst) {
+        AppTester.check(readoutsPerSecond >= 0, "The rate limit must not be negative.");
+        AppTester.check(burst >= 1, "The burst must be at least 1.");
+        if (readoutsPerSecond == 0) {
+            myRateLimitIntervalNanos_ = 0;
+            return;
         }
+        final long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / readoutsPerSecond));
+        myRateLimitBurst_ = burst;
+        myRateLimitBurstNanos_ = interval * (burst - 1);
+        myRateLimitIntervalNanos_ = interval;
     }
 
     /**
-     * Tries to write text to log file. Replaces all "\n" newline
-     * characters that may have been sent to the terminal with OS specific
-     * end of line characters before printing to the text file.
+     * Checks a readout from a print statement against the rate limit.
      *
-     * @param text the text to be written to the log file.
-     * @return false if no text is written or true if text is successfully
-     * written.
+     * @return false if the readout should be suppressed.
      */
-    private static boolean tryWritingSomethingToLogFileNoNewline(String text) {
-        if (myLogBufferedWriterOrNull_ == null) {
-            return false;
-        } else {
-            try {
-                String updatedText = text.replaceAll("\n", ls);
-                myLogBufferedWriterOrNull_.write(updatedText);
-                myLogBufferedWriterOrNull_.flush();
-                return true;
-            } catch (IOException ioe) {
-                // means the writer was closed
-                return false;
+    private static boolean isWithinRateLimit(CallSite callSite, ReadoutCondition condition, Rank severity) {
+        final long interval = myRateLimitIntervalNanos_;
+        if (interval == 0) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        if (callSite.tryAcquire(now, interval, myRateLimitBurstNanos_)) {
+            if (callSite.hasSuppressed()) {
+                reportSuppressed(callSite, condition, severity);
             }
+            return true;
         }
+        callSite.countSuppressed();
+        myMetrics_.recordSuppressed();
+        if (callSite.isSummaryDue(now, RATE_LIMIT_SUMMARY_INTERVAL_NANOS)) {
+            reportSuppressed(callSite, condition, severity);
+        }
+        return false;
     }
-    
-    public static void printlnToReadout(final String message, ReadoutCondition condition, Rank severity) {
-        printToReadout((message + "\n"), condition, severity);
+
+    private static void reportSuppressed(CallSite callSite, ReadoutCondition condition, Rank severity) {
+        final long suppressed = callSite.takeSuppressedCount();
+        if (suppressed > 0) {
+            printlnToReadout("\nSuppressed " + suppressed + " messages from " + callSite.getLocation(),
+                    condition, severity);
+        }
     }
 
     /**
-     * This print statement is meant for use by other print statements in
-     * this class, but it can also be used as a more verbose alternative to
-     * {@link #print(java.lang.String) } or {@link #printerr(java.lang.String) }
-     * if you desire not to include file names or line numbers.. It also appends 
- text to the log file, but unlike printEx and print, this
+     * @return the currently in use
+     * {@link Utilities.AppTester.DefaultPrintStream}
+     */
+    public static DefaultPrintStream getMyDefaultPrintStream() {
+        return myTargetPrintStream_;
+    }
+
+    /**
+     * All terminal error messages will go through this
+     * {@link Utilities.AppTester.DefaultPrintStream}
+     *
+     * @param streamType
+     */
+    public static void setMyDefaultPrintStream(DefaultPrintStream streamType) {
+        myTargetPrintStream_ = streamType;
+    }
+
+    /**
+     * When non-null, readouts are handed off to its writer thread instead of
+     * being written by the printing thread. Null by default.
+     */
+    private static volatile AsyncReadout myAsyncReadoutOrNull_ = null;
+
+    /**
+     * What printing threads do when the asynchronous readout buffer is full.
+     * By default set to {@link FullBufferPolicy#BLOCK}
+     */
+    private static FullBufferPolicy myFullBufferPolicy_ = FullBufferPolicy.BLOCK;
+
+    /**
+     * The number of readouts that fit in the asynchronous readout buffer.
+     */
+    private static int myAsyncBufferCapacity_ = 8192;
+
+    /**
+     * Guards the creation and shutdown of {@link #myAsyncReadoutOrNull_}.
+     */
+    private static final Object myAsyncReadoutLock_ = new Object();
+
+    /**
+     * Set once the JVM shutdown hook that drains the asynchronous readout
+     * buffer is installed. Guarded by {@link #myAsyncReadoutLock_}.
+     */
+    private static boolean isDrainOnShutdownInstalled_ = false;
+
+    /**
+     * @return true if readouts are written by a background writer thread.
+     */
+    public static boolean getAsynchronousReadout() {
+        return myAsyncReadoutOrNull_ != null;
+    }
+
+    /**
+     * Determines whether readouts are written to the log file and terminal by
+     * the printing thread or by a background thread named "Log_Writer". In
+     * asynchronous mode printing threads do not wait on each other. Anything
+     * still buffered is written out by {@link #close() }, by
+     * {@link #killApplication(java.lang.String) } and at JVM shutdown.
+     *
+     * @param useWriterThread true for asynchronous readouts, false for
+     * readouts written by the printing thread.
+     */
+    public static void setAsynchronousReadout(boolean useWriterThread) {
+        synchronized (myAsyncReadoutLock_) {
+            if (useWriterThread && myAsyncReadoutOrNull_ == null) {
+                myAsyncReadoutOrNull_ = new AsyncReadout(myAsyncBufferCapacity_, myFullBufferPolicy_);
+                if (!isDrainOnShutdownInstalled_) {
+                    isDrainOnShutdownInstalled_ = true;
+                    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            final AsyncReadout asyncReadoutOrNull = myAsyncReadoutOrNull_;
+                            if (asyncReadoutOrNull != null) {
+                                asyncReadoutOrNull.tryDrain(1000);
+                            }
+                        }
+                    }, "Log_Drainer"));
+                }
+            } else if (!useWriterThread && myAsyncReadoutOrNull_ != null) {
+                final AsyncReadout asyncReadout = myAsyncReadoutOrNull_;
+                myAsyncReadoutOrNull_ = null;
+                asyncReadout.stop();
+            }
+        }
+    }
+
+    /**
+     * @return what printing threads do when the asynchronous readout buffer is
+     * full.
+     */
+    public static FullBufferPolicy getMyFullBufferPolicy() {
+        return myFullBufferPolicy_;
+    }
+
+    /**
+     * @param policy what printing threads should do when the asynchronous
+     * readout buffer is full.
+     */
+    public static void setMyFullBufferPolicy(FullBufferPolicy policy) {
+        AppTester.check(policy != null, "No null inputs");
+        synchronized (myAsyncReadoutLock_) {
+            myFullBufferPolicy_ = policy;
+            if (myAsyncReadoutOrNull_ != null) {
+                myAsyncReadoutOrNull_.setPolicy(policy);
+            }
+        }
+    }
+
+    /**
+     * @return the number of readouts that fit in the asynchronous readout
+     * buffer.
+     */
+    public static int getMyAsyncBufferCapacity() {
+        return myAsyncBufferCapacity_;
+    }
+
+    /**
+     * Takes effect the next time asynchronous readouts are turned on.
+     *
+     * @param capacity the number of readouts that fit in the asynchronous
+     * readout buffer. Rounded up to a power of two.
+     */
+    public static void setMyAsyncBufferCapacity(int capacity) {
+        AppTester.check(capacity > 0, "The readout buffer must have room for at least one readout.");
+        synchronized (myAsyncReadoutLock_) {
+            myAsyncBufferCapacity_ = capacity;
+        }
+    }
+
+    /**
+     * When text buffered for the log file is written to it. By default set to
+     * {@link FlushPolicy#ALWAYS}
+     */
+    private static FlushPolicy myFlushPolicy_ = FlushPolicy.ALWAYS;
+
+    /**
+     * The number of buffered bytes that triggers a write under
+     * {@link FlushPolicy#EVERY_N_BYTES}.
+     */
+    private static int myFlushByteThreshold_ = 8 * 1024;
+
+    /**
+     * The number of milliseconds between writes under
+     * {@link FlushPolicy#EVERY_T_MILLISECONDS}.
+     */
+    private static long myFlushMillisecondInterval_ = 200;
+
+    /**
+     * Set once the JVM shutdown hook that flushes the log file is installed.
+     */
+    private static boolean isFlushOnShutdownInstalled_ = false;
+
+    /**
+     * @return when text buffered for the log file is written to it.
+     */
+    public static FlushPolicy getMyFlushPolicy() {
+        return myFlushPolicy_;
+    }
+
+    /**
+     * Determines when text buffered for the log file is written to it.
+     * Whatever the policy, buffered text is always written by {@link #close() },
+     * by failed assertions, by {@link #killApplication(java.lang.String) } and
+     * at JVM shutdown.
+     *
+     * @param policy the new flush policy.
+     */
+    public static synchronized void setMyFlushPolicy(FlushPolicy policy) {
+        AppTester.check(policy != null, "No null inputs");
+        myFlushPolicy_ = policy;
+        if (policy != FlushPolicy.ALWAYS && !isFlushOnShutdownInstalled_) {
+            isFlushOnShutdownInstalled_ = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    flushLogFile();
+                }
+            }, "Log_Final_Flusher"));
+        }
+        if (myLogFileHandleOrNull_ != null) {
+            myLogFileHandleOrNull_.setFlushPolicy(policy, myFlushByteThreshold_, myFlushMillisecondInterval_);
+        }
+    }
+
+    /**
+     * @param byteThreshold the number of buffered bytes that triggers a write
+     * to the log file under {@link FlushPolicy#EVERY_N_BYTES}. At most 64 KB.
+     */
+    public static synchronized void setMyFlushByteThreshold(int byteThreshold) {
+        AppTester.check(byteThreshold > 0, "The flush threshold must be positive.");
+        myFlushByteThreshold_ = byteThreshold;
+        setMyFlushPolicy(myFlushPolicy_);
+    }
+
+    /**
+     * @param millisecondInterval the number of milliseconds between writes to
+     * the log file under {@link FlushPolicy#EVERY_T_MILLISECONDS}.
+     */
+    public static synchronized void setMyFlushMillisecondInterval(long millisecondInterval) {
+        AppTester.check(millisecondInterval > 0, "The flush interval must be positive.");
+        myFlushMillisecondInterval_ = millisecondInterval;
+        setMyFlushPolicy(myFlushPolicy_);
+    }
+
+    /**
+     * Writes any text buffered for the log file to it, regardless of the
+     * {@link FlushPolicy}.
+     *
+     * @return false if there is no log file or the text could not be written.
+     */
+    public static boolean flushLogFile() {
+        drainAsynchronousReadout();
+        final LogFileHandle logFileHandle = myLogFileHandleOrNull_;
+        return logFileHandle != null && logFileHandle.tryFlush();
+    }
+
+    /**
+     * Writes any text buffered for the log file to it and waits until it is
+     * on the storage device, so that it survives the operating system
+     * crashing or the power going out. Done by
+     * {@link #killApplication(java.lang.String) } and by failed assertions.
+     *
+     * @return false if there is no log file or the text could not be forced.
+     */
+    public static boolean forceLogFile() {
+        drainAsynchronousReadout();
+        return tryForceLogFileHandle();
+    }
+
+    /**
+     * Forces the log file without writing out the asynchronous readout
+     * buffer first. Used by the group commit thread.
+     */
+    static boolean tryForceLogFileHandle() {
+        // Read first, so a log file retired after this is still retiring below.
+        final LogFileHandle logFileHandle = myLogFileHandleOrNull_;
+        myLogRotator_.tryForceRetiring();
+        return logFileHandle != null && logFileHandle.tryForce();
+    }
+
+    /**
+     * Forces the log file in batches under group commit, otherwise null.
+     */
+    private static volatile GroupCommitter myGroupCommitterOrNull_ = null;
+
+    /**
+     * The longest a readout waits to be forced under group commit.
+     */
+    private static long myGroupCommitMillisecondInterval_ = 5;
+
+    /**
+     * The number of unforced readouts that triggers a force right away under
+     * group commit.
+     */
+    private static int myGroupCommitRecordCount_ = 256;
+
+    /**
+     * @return true if {@link Rank#IMPORTANT} and {@link ReadoutCondition#ERROR}
+     * readouts wait until they are on the storage device.
+     */
+    public static boolean getGroupCommit() {
+        return myGroupCommitterOrNull_ != null;
+    }
+
+    /**
+     * Turns group commit on or off. With group commit, a background thread
+     * named "Log_Committer" forces the log file to the storage device every
+     * few milliseconds, or as soon as enough readouts are waiting, so that
+     * one force covers many readouts. A printing thread that writes an
+     * {@link Rank#IMPORTANT} or {@link ReadoutCondition#ERROR} readout to the
+     * log file waits for the force that covers it, and so knows the readout
+     * will survive a crash once the print statement returns. Other readouts
+     * do not wait. Log files are forced when they are closed or roll over.
+     *
+     * See {@link #setMyGroupCommitMillisecondInterval(long) } and
+     * {@link #setMyGroupCommitRecordCount(int) }.
+     *
+     * @param groupCommit true to turn group commit on.
+     */
+    public static synchronized void setGroupCommit(boolean groupCommit) {
+        final GroupCommitter oldCommitterOrNull = myGroupCommitterOrNull_;
+        if (groupCommit == (oldCommitterOrNull != null)) {
+            return;
+        }
+        if (groupCommit) {
+            myGroupCommitterOrNull_ = new GroupCommitter(myGroupCommitMillisecondInterval_, myGroupCommitRecordCount_);
+        } else {
+            myGroupCommitterOrNull_ = null;
+            oldCommitterOrNull.stop();
+            tryForceLogFileHandle(); // for whoever was still waiting.
+        }
+        if (myLogFileHandleOrNull_ != null) {
+            myLogFileHandleOrNull_.setForcedOnClose(groupCommit);
+        }
+    }
+
+    /**
+     * @param millisecondInterval the longest a readout waits to be forced to
+     * the storage device under group commit. By default 5 milliseconds.
+     */
+    public static synchronized void setMyGroupCommitMillisecondInterval(long millisecondInterval) {
+        AppTester.check(millisecondInterval > 0, "The group commit interval must be positive.");
+        myGroupCommitMillisecondInterval_ = millisecondInterval;
+        restartGroupCommit();
+    }
+
+    /**
+     * @param recordCount the number of readouts waiting to be forced that
+     * makes a force happen right away under group commit. By default 256.
+     */
+    public static synchronized void setMyGroupCommitRecordCount(int recordCount) {
+        AppTester.check(recordCount > 0, "The group commit record count must be positive.");
+        myGroupCommitRecordCount_ = recordCount;
+        restartGroupCommit();
+    }
+
+    private static void restartGroupCommit() {
+        if (myGroupCommitterOrNull_ != null) {
+            setGroupCommit(false);
+            setGroupCommit(true);
+        }
+    }
+
+    /**
+     * @return the number of readouts discarded because the asynchronous
+     * readout buffer was full under {@link FullBufferPolicy#DROP_LOWEST_RANK}.
+     */
+    public static long getDroppedReadoutCount() {
+        final AsyncReadout asyncReadout = myAsyncReadoutOrNull_;
+        return asyncReadout != null ? asyncReadout.getDroppedCount() : 0;
+    }
+
+    /**
+     * Counts readouts, bytes, flushes and how long they take.
+     */
+    private static final AppTesterMetrics myMetrics_ = new AppTesterMetrics();
+
+    /**
+     * The name the metrics are registered under in the platform MBean server,
+     * or null if they are not registered.
+     */
+    private static ObjectName myMetricsNameOrNull_ = null;
+
+    /**
+     * @return what AppTester has done since the application started: how many
+     * readouts of each rank, how many bytes, flushes, dropped and suppressed
+     * readouts, and how long readouts and flushes take.
+     */
+    public static AppTesterMetricsMXBean getMetrics() {
+        return myMetrics_;
+    }
+
+    static AppTesterMetrics getMetricsRecorder() {
+        return myMetrics_;
+    }
+
+    /**
+     * Makes {@link #getMetrics() } visible through JMX, to tools such as
+     * jconsole, under the name "Utilities:type=AppTester". Not done by
+     * default, because starting the platform MBean server slows down startup.
+     *
+     * @return false if the metrics could not be registered.
+     */
+    public static synchronized boolean tryRegisterMetricsMBean() {
+        if (myMetricsNameOrNull_ != null) {
+            return true;
+        }
+        try {
+            final ObjectName name = new ObjectName("Utilities:type=AppTester");
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(myMetrics_, name);
+            }
+            myMetricsNameOrNull_ = name;
+            return true;
+        } catch (JMException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static synchronized void unregisterMetricsMBean() {
+        if (myMetricsNameOrNull_ == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(myMetricsNameOrNull_);
+        } catch (JMException | SecurityException e) {
+            // Already gone.
+        }
+        myMetricsNameOrNull_ = null;
+    }
+
+    /**
+     * The sinks readouts go to besides the terminal and the log file. Replaced
+     * rather than changed, so printing threads can read it without a lock.
+     */
+    private static volatile SinkWorker[] mySinkWorkers_ = new SinkWorker[0];
+
+    /**
+     * Guards changes to {@link #mySinkWorkers_}. Not the AppTester class lock,
+     * since a sink being removed may still be printing.
+     */
+    private static final Object mySinkLock_ = new Object();
+
+    /**
+     * Sends readouts to a sink as well as to the terminal and log file. The
+     * sink gets its own bounded queue and its own worker thread, so a sink
+     * that falls behind only holds up printing threads if its policy says
+     * so. Sinks get readouts whether or not the terminal and log file are
+     * turned on.
+     *
+     * @param sink where readouts go, such as a {@link ConsoleSink},
+     * {@link FileSink}, {@link MemoryRingSink} or {@link SocketSink}.
+     * @param threshold the least important rank the sink gets.
+     * @param queueCapacity how many readouts can wait for the sink.
+     * @param policy what a printing thread does when the queue is full.
+     */
+    public static void addSink(LogSink sink, Rank threshold, int queueCapacity, FullBufferPolicy policy) {
+        AppTester.check(sink != null && threshold != null && policy != null, "No null inputs");
+        AppTester.check(queueCapacity > 0, "A sink's queue must hold at least one readout.");
+        synchronized (mySinkLock_) {
+            for (SinkWorker sinkWorker : mySinkWorkers_) {
+                AppTester.check(sinkWorker.getSink() != sink, "The sink was already added.");
+            }
+            final SinkWorker[] sinkWorkers = Arrays.copyOf(mySinkWorkers_, mySinkWorkers_.length + 1);
+            sinkWorkers[sinkWorkers.length - 1] = new SinkWorker(sink, threshold, queueCapacity, policy);
+            mySinkWorkers_ = sinkWorkers;
+            updateLowestEnabledImportance();
+        }
+    }
+
+    /**
+     * Same as {@link #addSink(Utilities.LogSink, Utilities.AppTester.Rank, int, Utilities.AppTester.FullBufferPolicy)
+     * } with room for 8192 readouts, which are dropped when there is no more
+     * room.
+     */
+    public static void addSink(LogSink sink, Rank threshold) {
+        addSink(sink, threshold, 8192, FullBufferPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Stops sending readouts to a sink, lets it write out what it has queued
+     * for at most five seconds, and closes it.
+     *
+     * @return false if the sink was not added.
+     */
+    public static boolean removeSink(LogSink sink) {
+        final SinkWorker removed;
+        synchronized (mySinkLock_) {
+            final ArrayList<SinkWorker> sinkWorkers = new ArrayList<>(Arrays.asList(mySinkWorkers_));
+            removed = findSinkWorker(sink);
+            if (removed == null) {
+                return false;
+            }
+            sinkWorkers.remove(removed);
+            mySinkWorkers_ = sinkWorkers.toArray(new SinkWorker[0]);
+            updateLowestEnabledImportance();
+        }
+        removed.stop(5000);
+        return true;
+    }
+
+    /**
+     * @return the number of readouts the sink missed because its queue was
+     * full, or 0 if it was not added.
+     */
+    public static long getSinkDroppedCount(LogSink sink) {
+        final SinkWorker sinkWorker = findSinkWorker(sink);
+        return (sinkWorker == null) ? 0 : sinkWorker.getDroppedCount();
+    }
+
+    /**
+     * @return the number of times the sink threw an exception, or 0 if it was
+     * not added.
+     */
+    public static long getSinkFailedCount(LogSink sink) {
+        final SinkWorker sinkWorker = findSinkWorker(sink);
+        return (sinkWorker == null) ? 0 : sinkWorker.getFailedCount();
+    }
+
+    private static SinkWorker findSinkWorker(LogSink sink) {
+        for (SinkWorker sinkWorker : mySinkWorkers_) {
+            if (sinkWorker.getSink() == sink) {
+                return sinkWorker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queues a readout for every sink that takes its rank.
+     */
+    private static void sendToSinks(SinkWorker[] sinkWorkers, String threadNameOrNull, String locationOrNull,
+            String message, Object[] keyValuesOrNull, boolean withNewline, ReadoutCondition condition, Rank severity) {
+        Readout readoutOrNull = null;
+        for (SinkWorker sinkWorker : sinkWorkers) {
+            if (sinkWorker.accepts(severity)) {
+                if (readoutOrNull == null) {
+                    readoutOrNull = new Readout(System.currentTimeMillis(), threadNameOrNull, locationOrNull,
+                            message, keyValuesOrNull, withNewline, condition, severity);
+                }
+                sinkWorker.offer(readoutOrNull);
+            }
+        }
+    }
+
+    /**
+     * Stops every sink, giving them all together at most the given time to
+     * write out what they have queued.
+     */
+    private static void stopSinks(long milliseconds) {
+        final SinkWorker[] sinkWorkers;
+        synchronized (mySinkLock_) {
+            sinkWorkers = mySinkWorkers_;
+            mySinkWorkers_ = new SinkWorker[0];
+            updateLowestEnabledImportance();
+        }
+        final long deadline = System.currentTimeMillis() + milliseconds;
+        for (SinkWorker sinkWorker : sinkWorkers) {
+            sinkWorker.stop(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Keeps the most recent readouts of every rank, or null if the flight
+     * recorder is off.
+     */
+    private static volatile FlightRecorder myFlightRecorderOrNull_ = null;
+
+    /**
+     * @return how many readouts the flight recorder keeps, or 0 if it is off.
+     */
+    public static int getMyFlightRecorderCapacity() {
+        final FlightRecorder flightRecorder = myFlightRecorderOrNull_;
+        return (flightRecorder == null) ? 0 : flightRecorder.getCapacity();
+    }
+
+    /**
+     * Turns on the flight recorder, which keeps the most recent readouts of
+     * every rank in memory, including ones below the debug level and the log
+     * file level. They are written to the log file when an assertion fails,
+     * when {@link #killApplication(java.lang.String) } runs, or on
+     * {@link #dumpFlightRecorder() }. Combined with a higher log file level,
+     * this gives the full story around a failure without logging every
+     * unimportant readout all the time:
+     * <pre>
+     * AppTester.setMyLogFileLevel(AppTester.NORMAL);
+     * AppTester.setMyFlightRecorderCapacity(10000);
+     * </pre>
+     *
+     * @param capacity how many readouts to keep, or 0 to turn the flight
+     * recorder off. Changing the capacity starts an empty recording.
+     */
+    public static synchronized void setMyFlightRecorderCapacity(int capacity) {
+        AppTester.check(capacity >= 0, "The flight recorder capacity must not be negative.");
+        myFlightRecorderOrNull_ = (capacity == 0) ? null : new FlightRecorder(capacity);
+        updateLowestEnabledImportance();
+    }
+
+    /**
+     * @return the readouts the flight recorder holds, oldest first, or an
+     * empty list if it is off.
+     */
+    public static List<Readout> getFlightRecording() {
+        final FlightRecorder flightRecorder = myFlightRecorderOrNull_;
+        return (flightRecorder == null) ? new ArrayList<Readout>() : flightRecorder.getReadouts();
+    }
+
+    /**
+     * Writes every readout the flight recorder holds to the log file, oldest
+     * first, whatever its rank, between two marker lines. Readouts that were
+     * already logged appear again.
+     *
+     * @return false if the flight recorder is off or nothing goes to the log
+     * file.
+     */
+    public static boolean dumpFlightRecorder() {
+        final FlightRecorder flightRecorder = myFlightRecorderOrNull_;
+        if (flightRecorder == null || !printToLogFile_ || hasLogFileFailed_) {
+            return false;
+        }
+        drainAsynchronousReadout();
+        openLogFileIfNeeded();
+        final List<Readout> readouts = flightRecorder.getReadouts();
+        writeToLogFileOnly(new Readout(System.currentTimeMillis(), null, null,
+                "\n" + "----- Flight recorder: the last " + readouts.size() + " readouts, oldest first -----",
+                null, true, ReadoutCondition.NON_ERROR, IMPORTANT));
+        for (Readout readout : readouts) {
+            writeToLogFileOnly(readout);
+        }
+        writeToLogFileOnly(new Readout(System.currentTimeMillis(), null, null,
+                "\n" + "----- End of flight recorder -----", null, true, ReadoutCondition.NON_ERROR, IMPORTANT));
+        return true;
+    }
+
+    /**
+     * Writes a readout to the log file whatever its rank, with the time it
+     * was printed at.
+     */
+    private static void writeToLogFileOnly(Readout readout) {
+        final LogFileFormat format = myLogFileFormat_;
+        final boolean isImportantOrError = readout.getSeverity() == IMPORTANT
+                || readout.getCondition() == ReadoutCondition.ERROR;
+        if (format == LogFileFormat.BINARY) {
+            String binaryMessage = readout.getMessage();
+            if (readout.keyValuesOrNull() != null) {
+                binaryMessage = ReadoutFormatter.appendKeyValues(new StringBuilder(binaryMessage),
+                        readout.keyValuesOrNull()).toString();
+            }
+            writeEncodedToReadout(format, null, null, readout.getEpochMillis(), readout.getThreadNameOrNull(),
+                    readout.getLocationOrNull(), binaryMessage, readout.isWithNewline(),
+                    readout.getCondition(), readout.getSeverity());
+            return;
+        }
+        final ByteBuffer bytes = ReadoutFormatter.get().encode(readout, format, ls);
+        final LogFileHandle logFileHandleOrNull = myLogFileHandleOrNull_;
+        if (logFileHandleOrNull != null && logFileHandleOrNull.isConcurrent()) {
+            writeConcurrentlyToLogFile(logFileHandleOrNull, format, bytes, isImportantOrError);
+        } else {
+            writeEncodedToReadout(format, bytes, null, readout.getEpochMillis(), readout.getThreadNameOrNull(),
+                    readout.getLocationOrNull(), readout.getMessage(), readout.isWithNewline(),
+                    readout.getCondition(), readout.getSeverity());
+        }
+    }
+    // </editor-fold>
+    // <editor-fold defaultstate="collapsed" desc="Delayed Initialization Vars">
+    /**
+     * The name of the folder that holds all the log files.
+     */
+    private static final String LOG_FOLDER_NAME = "Log_Files";
+
+    /**
+     * Creates the folder that holds all the log files, if it does not exist
+     * yet.
+     *
+     * @return the folder, or null if there is no folder and it could not be
+     * created.
+     */
+    private static File tryCreateLogFolder() {
+        final File logFilesFolder = new File(System.getProperty("user.dir"), LOG_FOLDER_NAME);
+        if (!logFilesFolder.exists()) {
+            // No folder exists, so the folder needs to be created.
+            boolean madeFolder = false;
+            try {
+                madeFolder = logFilesFolder.mkdir();
+            } catch (SecurityException se) {
+                // madeFolder remains false.
+            }
+
+            if (madeFolder) {
+                //Tester.print("A log file folder was created.", NORMAL);
+                return logFilesFolder;
+            } else {
+                //Tester.print("The log file folder could not be created.", NORMAL);
+                return null;
+            }
+        } else {
+            // The folder already exists.
+            //Tester.print("The log file folder already exists.", NORMAL);
+            return logFilesFolder;
+        }
+    }
+
+    /**
+     * The name of the log file if log file creation was successful, or null if
+     * no log file was created. Perform null checks before use.
+     */
+    private static volatile String myLogFileNameOrNull_ = null;
+
+    /**
+     * True once the log file has been created, or creating it has failed. The
+     * log file is only created when something is first written to it, so that
+     * an application that never logs anything never touches the disk.
+     */
+    private static volatile boolean wasLogFileOpened_ = false;
+
+    /**
+     * True if the log file could not be created, in which case nothing goes
+     * to the log file.
+     */
+    private static volatile boolean hasLogFileFailed_ = false;
+
+    /**
+     * @return Either the name of the log file or empty string if the log file
+     * was not successfully created. Creates the log file if it has not been
+     * created yet and log files are turned on.
+     */
+    public static String getLogFileNameOrEmptyString() {
+        if (printToLogFile_) {
+            openLogFileIfNeeded();
+        }
+        if(myLogFileNameOrNull_ != null) {
+            return myLogFileNameOrNull_;
+        } else {
+            return "";
+        }
+    }
+    /**
+     * How text gets into the log file. By default set to
+     * {@link LogFileBackend#BUFFERED_CHANNEL}
+     */
+    private static LogFileBackend myLogFileBackend_ = LogFileBackend.BUFFERED_CHANNEL;
+
+    /**
+     * If initialization was successful, this variable will be non-null,
+     * otherwise it will by null. Perform null checks before use.
+     */
+    private static volatile LogFileHandle myLogFileHandleOrNull_; // this does the actual writing
+
+    /**
+     * @return how text gets into the log file.
+     */
+    public static LogFileBackend getMyLogFileBackend() {
+        return myLogFileBackend_;
+    }
+
+    /**
+     * Switches how text gets into the log file. Everything written so far
+     * stays in the log file, and later readouts are appended to the same file
+     * through the new backend.
+     *
+     * @param backend the new backend.
+     * @return false if the log file could not be reopened, in which case no
+     * more readouts go to the log file.
+     */
+    public static synchronized boolean setMyLogFileBackend(LogFileBackend backend) {
+        AppTester.check(backend != null, "No null inputs");
+        myLogFileBackend_ = backend;
+        if (!wasLogFileOpened_) {
+            return true; // the log file will be opened with the new backend.
+        }
+        final LogFileHandle oldHandle = myLogFileHandleOrNull_;
+        if (oldHandle == null) {
+            return false;
+        }
+        return tryReopenLogFile(oldHandle, oldHandle.getPath());
+    }
+
+    /**
+     * What the log file looks like. By default set to
+     * {@link LogFileFormat#TEXT}
+     */
+    private static volatile LogFileFormat myLogFileFormat_ = LogFileFormat.TEXT;
+
+    /**
+     * Encodes readouts under {@link LogFileFormat#BINARY}. Guarded by the
+     * AppTester class lock.
+     */
+    private static final BinaryLogEncoder myBinaryLogEncoder_ = new BinaryLogEncoder();
+
+    /**
+     * @return what the log file looks like.
+     */
+    public static LogFileFormat getMyLogFileFormat() {
+        return myLogFileFormat_;
+    }
+
+    /**
+     * Switches what the log file looks like. Binary readouts go to a ".bin"
+     * file and JSON Lines readouts to a ".jsonl" file with the same name as
+     * the text log file, and switching back to text appends to the text log
+     * file again.
+     *
+     * @param format the new format.
+     * @return false if the log file could not be opened, in which case no
+     * more readouts go to the log file.
+     */
+    public static synchronized boolean setMyLogFileFormat(LogFileFormat format) {
+        AppTester.check(format != null, "No null inputs");
+        if (format == myLogFileFormat_) {
+            return !hasLogFileFailed_;
+        }
+        myLogFileFormat_ = format;
+        if (!wasLogFileOpened_) {
+            return true; // the log file will be opened in the new format.
+        }
+        final LogFileHandle oldHandle = myLogFileHandleOrNull_;
+        if (oldHandle == null) {
+            return false;
+        }
+        final String extension = format.getExtension();
+        final String oldName = oldHandle.getPath().getFileName().toString();
+        final int dot = oldName.lastIndexOf('.');
+        final String newName = ((dot == -1) ? oldName : oldName.substring(0, dot)) + extension;
+        return tryReopenLogFile(oldHandle, oldHandle.getPath().resolveSibling(newName));
+    }
+
+    /**
+     * The number of log file bytes each entry of the sidecar index covers, or
+     * 0 for no index.
+     */
+    private static int myLogIndexBlockBytes_ = 0;
+
+    /**
+     * Indexes the log file, or null. Guarded by the AppTester class lock.
+     */
+    private static LogIndexWriter myLogIndexOrNull_ = null;
+
+    /**
+     * @return how many bytes of the log file each entry of its index covers,
+     * or 0 if log files are not indexed.
+     */
+    public static synchronized int getMyLogIndexBlockBytes() {
+        return myLogIndexBlockBytes_;
+    }
+
+    /**
+     * Makes every text or JSON Lines log file opened from now on come with a
+     * small index, in a file of the same name plus ".idx", that lets
+     * {@link LogQuery} find readouts by time, rank, error and call site
+     * without reading the whole log file. Set it before the first readout to
+     * index the first log file. Sharded log files are not indexed.
+     *
+     * @param blockBytes how many bytes of the log file each index entry
+     * covers, such as 64 * 1024, or 0 for no index.
+     */
+    public static synchronized void setMyLogIndexBlockBytes(int blockBytes) {
+        AppTester.check(blockBytes >= 0, "The log index block size must not be negative.");
+        myLogIndexBlockBytes_ = blockBytes;
+    }
+
+    /**
+     * Starts indexing a newly opened log file, done with the old one. Must
+     * hold the AppTester class lock.
+     *
+     * @param startOffset how long the log file already is.
+     */
+    private static void startLogIndex(Path path, long startOffset) {
+        if (myLogIndexOrNull_ != null) {
+            myLogIndexOrNull_.close();
+            myLogIndexOrNull_ = null;
+        }
+        if (myLogIndexBlockBytes_ > 0 && myLogFileBackend_ != LogFileBackend.SHARDED
+                && (myLogFileFormat_ == LogFileFormat.TEXT || myLogFileFormat_ == LogFileFormat.JSON_LINES)) {
+            myLogIndexOrNull_ = LogIndexWriter.tryOpen(path, myLogIndexBlockBytes_, startOffset);
+        }
+    }
+
+    /**
+     * Closes the log file handle and opens a new one with the current backend.
+     * Must hold the AppTester class lock.
+     */
+    private static boolean tryReopenLogFile(LogFileHandle oldHandle, Path path) {
+        try {
+            oldHandle.close();
+        } catch (IOException ioe) {
+            // Reopening below decides whether logging can go on.
+        }
+        long startOffset;
+        try {
+            // Measured before opening, since a memory mapped log file is longer than its text while open.
+            startOffset = Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException ioe) {
+            startOffset = 0;
+        }
+        myLogFileHandleOrNull_ = LogFileHandle.tryOpen(path, myLogFileBackend_);
+        if (myLogFileHandleOrNull_ == null) {
+            startLogIndex(path, 0); // just closes the old index.
+            return false;
+        }
+        startLogIndex(path, startOffset);
+        myLogFileHandleOrNull_.setFlushPolicy(myFlushPolicy_, myFlushByteThreshold_, myFlushMillisecondInterval_);
+        myLogFileHandleOrNull_.setForcedOnClose(myGroupCommitterOrNull_ != null);
+        if (!path.equals(oldHandle.getPath())) {
+            myLogRotator_.startSegment(path);
+        }
+        return true;
+    }
+
+    /**
+     * Decides when the log file rolls over and compresses old segments.
+     */
+    private static final LogRotator myLogRotator_ = new LogRotator();
+
+    /**
+     * @return the size in bytes at which the log file rolls over to a new
+     * one, or 0 if it never does.
+     */
+    public static long getMyMaxLogFileBytes() {
+        return myLogRotator_.getMaxSegmentBytes();
+    }
+
+    /**
+     * Makes the log file roll over to a new file once this many bytes have
+     * been written to it. The old file is then gzip compressed in the
+     * background. See {@link #setMyLogFolderByteBudget(long) }.
+     *
+     * @param maxBytes the size at which to roll over, or 0 to never roll over
+     * by size.
+     */
+    public static void setMyMaxLogFileBytes(long maxBytes) {
+        AppTester.check(maxBytes >= 0, "The log file size limit must not be negative.");
+        myLogRotator_.setMaxSegmentBytes(maxBytes);
+    }
+
+    /**
+     * @return the age in milliseconds at which the log file rolls over to a
+     * new one, or 0 if it never does.
+     */
+    public static long getMyMaxLogFileMilliseconds() {
+        return myLogRotator_.getMaxSegmentMilliseconds();
+    }
+
+    /**
+     * Makes the log file roll over to a new file once it has been written to
+     * for this long. The check happens when a readout is written, so a quiet
+     * log file rolls over with the first readout after the interval.
+     *
+     * @param maxMilliseconds the age at which to roll over, or 0 to never roll
+     * over by age.
+     */
+    public static void setMyMaxLogFileMilliseconds(long maxMilliseconds) {
+        AppTester.check(maxMilliseconds >= 0, "The log file age limit must not be negative.");
+        myLogRotator_.setMaxSegmentMilliseconds(maxMilliseconds);
+    }
+
+    /**
+     * @return how many bytes of log files the log folder may hold, or 0 for
+     * no limit.
+     */
+    public static long getMyLogFolderByteBudget() {
+        return myLogRotator_.getFolderByteBudget();
+    }
+
+    /**
+     * Limits the total size of the log folder. Whenever the log file rolls
+     * over, the oldest log files (from this run or earlier ones) are deleted
+     * until the folder fits. The log file currently being written to is never
+     * deleted.
+     *
+     * @param budget the most bytes of log files to keep, or 0 for no limit.
+     */
+    public static void setMyLogFolderByteBudget(long budget) {
+        AppTester.check(budget >= 0, "The log folder budget must not be negative.");
+        myLogRotator_.setFolderByteBudget(budget);
+        if (budget > 0) {
+            myLogRotator_.trim();
+        }
+    }
+
+    /**
+     * Rolls the log file over to a new file right away. The new file is
+     * opened before the old one is closed, so no readout is lost in between,
+     * and the old one is closed and compressed in the background, so the
+     * printing threads do not wait for it to be flushed or forced.
+     *
+     * @return false if there is no log file or the new file could not be
+     * opened, in which case readouts keep going to the old one.
+     */
+    public static synchronized boolean rotateLogFile() {
+        final LogFileHandle oldHandle = myLogFileHandleOrNull_;
+        if (oldHandle == null || myLogFileNameOrNull_ == null) {
+            return false;
+        }
+        final Path next = myLogRotator_.nextSegmentPath(oldHandle.getPath(), myLogFileNameOrNull_);
+        final LogFileHandle newHandle = LogFileHandle.tryOpen(next, myLogFileBackend_);
+        if (newHandle == null) {
+            return false;
+        }
+        newHandle.setFlushPolicy(myFlushPolicy_, myFlushByteThreshold_, myFlushMillisecondInterval_);
+        newHandle.setForcedOnClose(myGroupCommitterOrNull_ != null);
+        myLogFileHandleOrNull_ = newHandle;
+        startLogIndex(next, 0);
+        myLogRotator_.startSegment(next);
+        myLogRotator_.retire(oldHandle);
+        return true;
+    }
+
+    /**
+     * Creates the log file and opens the log file handle, the first time
+     * something is about to be written to the log file.
+     */
+    private static void openLogFileIfNeeded() {
+        if (!wasLogFileOpened_) {
+            openLogFile();
+        }
+    }
+
+    private static synchronized void openLogFile() {
+        if (wasLogFileOpened_) {
+            return;
+        }
+        final File logFolderOrNull = tryCreateLogFolder();
+        if (!(logFolderOrNull == null)) {
+            final DateFormat dateFormat = new SimpleDateFormat("yyyy_MM_dd___HH:mm:ss");
+            final Calendar cal = Calendar.getInstance();
+            final String dateTimeForLogFile = dateFormat.format(cal.getTime()); /* 2014_08_06___16:00:22 */
+
+            final String expectedFileName = dateTimeForLogFile + myLogFileFormat_.getExtension();
+            final File logFile = new File(logFolderOrNull, expectedFileName);
+
+            boolean wasFileCreated = false;
+            try {
+                wasFileCreated = logFile.createNewFile();
+            } catch (IOException ioe) {
+                // wasFileCreated remains false.
+            } catch (SecurityException se) {
+                // wasFileCreated remains false.
+            }
+
+            boolean success = false;
+            long startOffset = 0;
+            if (wasFileCreated == true) {
+                //Tester.printEx("Managed to create log file.", AppTester.IMPORTANT);
+                // The path is resolved here, once. Readouts never search for the file again.
+                myLogFileHandleOrNull_ = LogFileHandle.tryOpen(logFile.toPath(), myLogFileBackend_);
+                if (myLogFileHandleOrNull_ != null) {
+                    myLogFileHandleOrNull_.setFlushPolicy(myFlushPolicy_, myFlushByteThreshold_, myFlushMillisecondInterval_);
+                    myLogFileHandleOrNull_.setForcedOnClose(myGroupCommitterOrNull_ != null);
+                    if (myLogFileFormat_ == LogFileFormat.TEXT) {
+                        final String startingLine = "Starting log file" + ls;
+                        success = myLogFileHandleOrNull_.tryWrite(startingLine, false);
+                        startOffset = startingLine.getBytes(StandardCharsets.UTF_8).length;
+                        // Just ignore a failure - don't kill the thread.
+                    } else {
+                        success = true;
+                    }
+                }
+            } else {
+                //Tester.printEx("Failed to create log file.", AppTester.IMPORTANT);
+                myLogFileHandleOrNull_ = null;
+            }
+
+            if (success == true) {
+                myLogFileNameOrNull_ = expectedFileName;
+                myLogRotator_.startSegment(logFile.toPath());
+                startLogIndex(logFile.toPath(), startOffset);
+            } else {
+                myLogFileNameOrNull_ = null;
+                hasLogFileFailed_ = true;
+            }
+        } else {
+            hasLogFileFailed_ = true;
+        }
+        wasLogFileOpened_ = true;
+        if (hasLogFileFailed_) {
+            updateLowestEnabledImportance();
+            if (logFolderOrNull == null) {
+                // No log folder, so definetely no log files.
+                AppTester.printerr("Could not create log file because log folder does not exist.");
+            }
+        }
+    }
+
+    // </editor-fold>
+    // <editor-fold defaultstate="collapsed" desc="Functions">
+    /**
+     * Closes the AppTester by killing any background threads it may be running
+     * and closing its log file writer. Must be called at or before termination.
+     * Readouts still waiting on the asynchronous writer thread are written out
+     * first.
+     */
+    public static void close() {
+        
+        try {
+            if (myScheduler_ != null) {
+                myScheduler_.shutdownNow();
+                printlnToReadout("\n" + "The scheduler has been shut down", ReadoutCondition.NON_ERROR, UNIMPORTANT);
+            }
+            if (myTimingWheelOrNull_ != null) {
+                myTimingWheelOrNull_.stop();
+                printlnToReadout("\n" + "The scheduler has been shut down", ReadoutCondition.NON_ERROR, UNIMPORTANT);
+            }
+            if (myEventWorkersOrNull_ != null) {
+                myEventWorkersOrNull_.stop();
+            }
+        } catch (Exception e) {
+            // ignore it.
+            //e.printStackTraceNoLeadingLineNumber();
+        }
+        for (CallSite callSite : CallSite.all()) {
+            if (callSite.hasSuppressed()) {
+                reportSuppressed(callSite, ReadoutCondition.NON_ERROR, NORMAL);
+            }
+        }
+        stopSinks(5000);
+        try {
+            if (myLogFileHandleOrNull_ != null) {
+                printlnToReadout("\n" + "The log file is being shut down.", ReadoutCondition.NON_ERROR, NORMAL);
+                drainAsynchronousReadout();
+                myLogFileHandleOrNull_.close();
+            } 
+            myLogRotator_.closeRetiring();
+        } catch (Exception ioe) {
+            // ioe.printStackTraceNoLeadingLineNumber();
+            // ignore the error. myLogFileHandleOrNull_ is already closed.
+        }
+        closeLogIndex();
+        drainAsynchronousReadout();
+        final GroupCommitter groupCommitterOrNull = myGroupCommitterOrNull_;
+        if (groupCommitterOrNull != null) {
+            groupCommitterOrNull.stop(); // the log file was forced as it closed.
+        }
+        myLogRotator_.close(5000); // let old log files finish compressing.
+        unregisterMetricsMBean();
+    }
+
+    private static synchronized void closeLogIndex() {
+        if (myLogIndexOrNull_ != null) {
+            myLogIndexOrNull_.close();
+            myLogIndexOrNull_ = null;
+        }
+    }
+
+    /**
+     * Writes out any readouts that are waiting on the asynchronous writer
+     * thread, using the current thread if need be.
+     */
+    private static void drainAsynchronousReadout() {
+        final AsyncReadout asyncReadout = myAsyncReadoutOrNull_;
+        if (asyncReadout != null && !asyncReadout.isEmpty()) {
+            asyncReadout.drain();
+        }
+    }
+
+    /**
+     * Tries to write encoded text to the log file. The "\n" newline characters
+     * that are sent to the terminal must already have been replaced with OS
+     * specific end of line characters.
+     *
+     * @param bytes the text to be written to the log file.
+     * @param isImportantOrError whether the text may need to be written out
+     * right away under {@link FlushPolicy#ON_IMPORTANT_OR_ERROR}.
+     * @return false if no text is written or true if text is successfully
+     * written.
+     */
+    private static boolean tryWritingSomethingToLogFileNoNewline(ByteBuffer bytes, boolean isImportantOrError) {
+        final LogFileHandle logFileHandle = myLogFileHandleOrNull_;
+        if (logFileHandle == null) {
+            return false;
+        } else {
+            // false means the log file was closed.
+            return logFileHandle.tryWrite(bytes, isImportantOrError);
+        }
+    }
+    
+    public static void printlnToReadout(final String message, ReadoutCondition condition, Rank severity) {
+        readout(null, null, message, null, true, condition, severity, null);
+    }
+
+    /**
+     * This print statement is meant for use by other print statements in
+     * this class, but it can also be used as a more verbose alternative to
+     * {@link #print(java.lang.String) } or {@link #printerr(java.lang.String) }
+     * if you desire not to include file names or line numbers.. It also appends 
+ text to the log file, but unlike printEx and print, this
  method does NOT include the line number, method name, or class name at the
  top of the print statement.
      *
      * @param message the message to be printed
      * @param condition whether the message is an error or non-error message
      */
-    public static synchronized void printToReadout(final String message, ReadoutCondition condition, Rank severity) {
+    public static void printToReadout(final String message, ReadoutCondition condition, Rank severity) {
+        readout(null, null, message, null, false, condition, severity, null);
+    }
+
+    /**
+     * Hands a readout over to the writer thread in asynchronous mode, or
+     * writes it out right away otherwise. The header line is only put
+     * together when the readout is written out.
+     *
+     * @param threadNameOrNull the name of the printing thread, or null for no
+     * header line.
+     * @param locationOrNull where the print statement is, or null for no
+     * header line.
+     * @param message the message to be printed
+     * @param keyValuesOrNull keys and values that go with the message, or
+     * null for none.
+     * @param withNewline whether to end the message with a newline.
+     * @param debugLevelOrNull the debug level of the print statement's class
+     * or package, or null to go by {@link #getMyDebugLevel() }.
+     */
+    private static void readout(String threadNameOrNull, String locationOrNull, String message, Object[] keyValuesOrNull,
+            boolean withNewline, ReadoutCondition condition, Rank severity, Rank debugLevelOrNull) {
+        if (!isEnabled(severity)) {
+            return;
+        }
+        final FlightRecorder flightRecorderOrNull = myFlightRecorderOrNull_;
+        if (flightRecorderOrNull != null) {
+            flightRecorderOrNull.record(threadNameOrNull, locationOrNull, message, keyValuesOrNull,
+                    withNewline, condition, severity);
+            if (severity.getImportance() < myLowestWrittenImportance_) {
+                return; // only the flight recorder wants it.
+            }
+        }
+        final SinkWorker[] sinkWorkers = mySinkWorkers_;
+        if (sinkWorkers.length != 0) {
+            sendToSinks(sinkWorkers, threadNameOrNull, locationOrNull, message, keyValuesOrNull,
+                    withNewline, condition, severity);
+        }
+        final AsyncReadout asyncReadout = myAsyncReadoutOrNull_;
+        if (asyncReadout != null) {
+            if (myGroupCommitterOrNull_ != null && (severity == IMPORTANT || condition == ReadoutCondition.ERROR)) {
+                // The printing thread has to wait for this one, so it writes it itself, after the ones before it.
+                drainAsynchronousReadout();
+            } else if (asyncReadout.tryPublish(threadNameOrNull, locationOrNull,
+                    message, keyValuesOrNull, withNewline, condition, severity, debugLevelOrNull)) {
+                return; // the writer thread takes it from here.
+            }
+        }
+        writeToReadout(threadNameOrNull, locationOrNull, message, keyValuesOrNull, withNewline,
+                condition, severity, debugLevelOrNull);
+    }
+
+    /**
+     * Formats a readout and writes it to the log file and terminal. Called by
+     * the printing thread, or by the writer thread in asynchronous mode.
+     * Formatting and encoding happen outside of the lock, in buffers that
+     * belong to the calling thread.
+     */
+    static void writeToReadout(String threadNameOrNull, String locationOrNull, String message, Object[] keyValuesOrNull,
+            boolean withNewline, ReadoutCondition condition, Rank severity, Rank debugLevelOrNull) {
+        // Logging happens regardless of the terminal's debug level.
+        final boolean toLogFile = printToLogFile_ && !hasLogFileFailed_
+                && myLogFileRank_.getImportance() <= severity.getImportance();
+        if (toLogFile) {
+            openLogFileIfNeeded();
+        }
+        final Rank debugLevel = (debugLevelOrNull == null) ? myRank_ : debugLevelOrNull;
+        final boolean toTerminal = printToTerminal_
+                && debugLevel.getImportance() <= severity.getImportance();
+        if (!toLogFile && !toTerminal) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final long epochMillis = System.currentTimeMillis();
+        final LogFileFormat fileFormatOrNull = toLogFile ? myLogFileFormat_ : null;
+        final ReadoutFormatter formatter = ReadoutFormatter.get()
+                .format(threadNameOrNull, locationOrNull, message, keyValuesOrNull, withNewline);
+        final ByteBuffer fileBytesOrNull;
+        String binaryMessage = message;
+        if (fileFormatOrNull == LogFileFormat.TEXT) {
+            fileBytesOrNull = formatter.encodeForFile(ls);
+        } else if (fileFormatOrNull == LogFileFormat.JSON_LINES) {
+            fileBytesOrNull = formatter.encodeJsonLine(epochMillis, threadNameOrNull,
+                    locationOrNull, message, keyValuesOrNull, condition, severity, ls);
+        } else {
+            fileBytesOrNull = null;
+            if (fileFormatOrNull == LogFileFormat.BINARY && keyValuesOrNull != null) {
+                // The binary format has no place for keys and values.
+                binaryMessage = ReadoutFormatter.appendKeyValues(new StringBuilder(message), keyValuesOrNull).toString();
+            }
+        }
+        final ByteBuffer terminalBytesOrNull = toTerminal ? formatter.encodeForTerminal() : null;
+        final LogFileHandle logFileHandleOrNull = myLogFileHandleOrNull_;
+        if (fileBytesOrNull != null && logFileHandleOrNull != null && logFileHandleOrNull.isConcurrent()) {
+            // Sharded log files do their own locking.
+            writeConcurrentlyToLogFile(logFileHandleOrNull, fileFormatOrNull, fileBytesOrNull,
+                    severity == IMPORTANT || condition == ReadoutCondition.ERROR);
+            if (terminalBytesOrNull != null) {
+                writeEncodedToReadout(null, null, terminalBytesOrNull, epochMillis,
+                        threadNameOrNull, locationOrNull, message, withNewline, condition, severity);
+            }
+        } else {
+            writeEncodedToReadout(fileFormatOrNull, fileBytesOrNull, terminalBytesOrNull, epochMillis,
+                    threadNameOrNull, locationOrNull, binaryMessage, withNewline, condition, severity);
+        }
+        myMetrics_.recordReadout(severity, condition, System.nanoTime() - start);
+        final GroupCommitter groupCommitterOrNull = myGroupCommitterOrNull_;
+        if (toLogFile && groupCommitterOrNull != null) {
+            final long ticket = groupCommitterOrNull.recordWritten();
+            if ((severity == IMPORTANT || condition == ReadoutCondition.ERROR)
+                    && !groupCommitterOrNull.awaitForced(ticket)) {
+                tryForceLogFileHandle(); // one more try, on this thread, before giving up.
+            }
+        }
+    }
+
+    /**
+     * Writes text to a log file that many threads can write to at once,
+     * without taking the AppTester lock. If the log file rolls over in the
+     * meantime, the text goes to the new one.
+     */
+    private static void writeConcurrentlyToLogFile(LogFileHandle logFileHandle, LogFileFormat format,
+            ByteBuffer bytes, boolean isImportantOrError) {
+        final int start = bytes.position();
+        final int length = bytes.remaining();
+        while (!logFileHandle.tryWrite(bytes, isImportantOrError)) {
+            final LogFileHandle current = myLogFileHandleOrNull_;
+            if (current == null || current == logFileHandle || !current.isConcurrent()
+                    || myLogFileFormat_ != format) {
+                return; // give up, like the other log files do.
+            }
+            logFileHandle = current;
+            bytes.position(start);
+        }
+        myMetrics_.recordLogFileBytes(length);
+        if (myLogRotator_.isEnabled()) {
+            recordConcurrentWrite(length);
+        }
+    }
 
-        // Logging happens regardless of severity.
-        if (printToLogFile_) {
-            // log stuff
-            if (!(AppTester.myLogFileNameOrNull_ == null)) {
-                final String logFilesPathString = FileFinder.tryFindPathToFileWhoseNameIs(myLogFileNameOrNull_);
-                AppTester.check(logFilesPathString != null, "The log file name is non-null, so the log file must exist.");
-                boolean success = AppTester.
-                        tryWritingSomethingToLogFileNoNewline(message.replaceAll("\n", ls));
-                // this success is being silently ignored if it doesn't write to log file,
-                // I'm not doing anything about it.
-            } else {
-                // Don't bother, it won't work.
+    private static synchronized void recordConcurrentWrite(int length) {
+        if (myLogRotator_.recordWrite(length)) {
+            rotateLogFile();
+        }
+    }
+
+    /**
+     * Writes an encoded readout. Binary readouts are encoded here, under the
+     * lock, because each one may refer to thread names and call sites written
+     * by the ones before it.
+     *
+     * @param fileFormatOrNull the log file format the readout was prepared
+     * for, or null if it does not go to the log file. Dropped from the log
+     * file if the format changed in the meantime.
+     * @param fileBytesOrNull the readout for a {@link LogFileFormat#TEXT} or
+     * {@link LogFileFormat#JSON_LINES} log file.
+     * @param epochMillis when the readout was printed, for binary log files.
+     */
+    private static synchronized void writeEncodedToReadout(LogFileFormat fileFormatOrNull,
+            ByteBuffer fileBytesOrNull, ByteBuffer terminalBytesOrNull, long epochMillis, String threadNameOrNull,
+            String locationOrNull, String message, boolean withNewline,
+            ReadoutCondition condition, Rank severity) {
+        final boolean isImportantOrError = severity == IMPORTANT || condition == ReadoutCondition.ERROR;
+        long bytesWritten = 0;
+        if (fileBytesOrNull != null && fileFormatOrNull == myLogFileFormat_) {
+            bytesWritten = fileBytesOrNull.remaining();
+            boolean success = AppTester.tryWritingSomethingToLogFileNoNewline(fileBytesOrNull,
+                    isImportantOrError);
+            if (success && myLogIndexOrNull_ != null) {
+                myLogIndexOrNull_.record(epochMillis, severity, condition, locationOrNull, bytesWritten);
+            }
+            // this success is being silently ignored if it doesn't write to log file,
+            // I'm not doing anything about it.
+        } else if (fileFormatOrNull == LogFileFormat.BINARY && myLogFileFormat_ == LogFileFormat.BINARY) {
+            final LogFileHandle logFileHandle = myLogFileHandleOrNull_;
+            if (logFileHandle != null) {
+                final ByteBuffer binaryBytes = myBinaryLogEncoder_.encode(logFileHandle.getOpening(),
+                        epochMillis, threadNameOrNull, locationOrNull,
+                        message, withNewline, condition, severity);
+                bytesWritten = binaryBytes.remaining();
+                logFileHandle.tryWrite(binaryBytes, isImportantOrError);
             }
         }
-        if(! printToTerminal_) {
-            // Do not print anything.
-            return;
-        } else if (myRank_.getImportance() > severity.getImportance()) {
-            // This message is not important enough to be printed. 
+        if (bytesWritten > 0) {
+            myMetrics_.recordLogFileBytes(bytesWritten);
+            if (myLogRotator_.recordWrite(bytesWritten)) {
+                rotateLogFile();
+            }
+        }
+        if (terminalBytesOrNull == null) {
+            // This message is not important enough to be printed, or the terminal is off.
             return; // return without printing to terminal.
         } else {
             // This message is important enough to be printed to terminal.
+            final byte[] bytes = terminalBytesOrNull.array();
+            final int offset = terminalBytesOrNull.arrayOffset() + terminalBytesOrNull.position();
+            final int length = terminalBytesOrNull.remaining();
+            myMetrics_.recordTerminalBytes(length);
             if (myTargetPrintStream_ == ONLY_STANDARD_OUT) {
-                System.out.print(message);
+                System.out.write(bytes, offset, length);
             } else if (myTargetPrintStream_ == ONLY_STANDARD_ERROR) {
-                System.err.print(message);
+                System.err.write(bytes, offset, length);
             } else {
                 // myTargetPrintStream_ == EITHER_STD_OUT_OR_STD_ERROR
                 if (condition == ReadoutCondition.ERROR) {
-                    System.err.print(message);
+                    System.err.write(bytes, offset, length);
                 } else if (condition == ReadoutCondition.NON_ERROR) {
-                    System.out.print(message);
+                    System.out.write(bytes, offset, length);
                 } else {
                     AppTester.killApplication("This condition is logically impossible");
                 }
@@ -512,13 +2077,9 @@ public class AppTester {
      * termination.
      */
     public static void killApplication(String message, Throwable t) {
-        StackTraceElement[] ste = t.getStackTrace();
-        String concatenation = message + "\n";
-        concatenation += t.toString() + "\n";
-        for (int i = 0; i < ste.length; ++i) {
-            concatenation += (ste[i].toString() + "\n");
-        }
-        AppTester.killApplicationNoStackTrace(concatenation);
+        final StringBuilder concatenation = new StringBuilder(message).append('\n');
+        StackTraceCache.appendThrowable(concatenation, t);
+        AppTester.killApplicationNoStackTrace(concatenation.toString());
     }
     
     /**
@@ -546,6 +2107,8 @@ public class AppTester {
      */
     public static void killApplicationNoStackTrace(String message) {
         printlnToReadout("\n" + message, ReadoutCondition.ERROR, Rank.IMPORTANT);
+        dumpFlightRecorder();
+        forceLogFile();
         close();
         System.exit(-1);
     }
@@ -570,128 +2133,491 @@ public class AppTester {
      * <a href="http://docs.oracle.com/javase/7/docs/technotes/guides/language/assert.html">Programming
      * With Assertions</a>
      *
-     * @param assertion - assertion to be checked
-     * @param message - error message to print
+     * @param assertion - assertion to be checked
+     * @param message - error message to print
+     */
+    public static void check(final boolean assertion, final String message) {
+        check(assertion, message, 3); // nomally it would be 2 but the indirections bumps it up to 3.
+    }
+
+    private static void check(final boolean assertion, final String message, int firstRowOfStackTrace) {
+        if (!assertion) {
+            
+            String toBePrinted = "\n" + "Assertion failed in Thread: \""
+                    + Thread.currentThread().getName() + "\"" + "\n" + message;
+            // length of stack trace is 5 (thread called by check called by check called by handle called by main)
+            //printlnToReadout(toBePrinted, ReadoutCondition.ERROR, Rank.IMPORTANT); // print rows 3 & 4
+            final StackTraceElement[] stackTraceArray = Thread.currentThread().getStackTrace();
+            // This should print the stack trace from firstRowOfStackTrace down.
+            printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(toBePrinted, stackTraceArray, firstRowOfStackTrace);
+            dumpFlightRecorder();
+            forceLogFile(); // in case close() fails part way.
+            close();
+            System.exit(-1);
+        }
+    }
+
+    private static void print(String message, Rank severityLevel, int stackTraceStart) {
+        if (!isEnabled(severityLevel)) {
+            return; // Don't bother finding the call site.
+        }
+        final CallSite callSite = CallSite.find(stackTraceStart);
+        if (!isWithinRateLimit(callSite, ReadoutCondition.NON_ERROR, severityLevel)) {
+            return;
+        }
+        final String thread_name = Thread.currentThread().getName();
+        final String location_of_print_statement = callSite.getLocation();
+        readout(thread_name, location_of_print_statement, message, null, true, ReadoutCondition.NON_ERROR,
+                severityLevel, callSite.getDebugLevelOrNull(myLevelTree_));
+    }
+
+    /**
+     * Prints the name of the current thread and where the print statement comes
+     * from to standard output or to the stream specified by
+     * {@link #myTargetPrintStream_}. The {@link #myTargetPrintStream_} variable
+     * acts as a global override for the preferred output stream of the
+     * application.
+     *
+     * @param message - message to be printed
+     */
+    private static void print(String message, Rank severityLevel) {
+        print(message, severityLevel, 3);
+    }
+    
+    /**
+     * Prints an unimportant non-error message.
+     * Short for "unimportant print".
+     */
+    public static void uPrint(String message) {
+        print(message, UNIMPORTANT, 3);
+    }
+
+    /**
+     * Same as {@link #print(java.lang.String, Utilities.AppTester.Rank)  },
+     * but with the {@link #NORMAL} severity level specified by default.
+     *
+     * @param message the message to be printed as if it were a regular
+     * non-error message.
+     */
+    public static void print(String message) {
+        print(message, NORMAL, 3);
+    }
+    
+    /**
+     * Prints an important non-error message.
+     * Short for "important print."
+     */
+    public static void iPrint(String message) {
+        print(message, IMPORTANT, 3);
+    }
+
+    /**
+     * Same as {@link #uPrint(java.lang.String) }, but the message is only
+     * built if it is going to be printed or logged.
+     *
+     * @param message supplies the message to be printed.
+     */
+    public static void uPrint(Supplier<String> message) {
+        if (isEnabled(UNIMPORTANT)) {
+            print(message.get(), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #uPrint(java.lang.String) }, but the message is only
+     * formatted if it is going to be printed or logged. The "{}" in the
+     * format is replaced by the argument.
+     */
+    public static void uPrint(String format, Object argument) {
+        if (isEnabled(UNIMPORTANT)) {
+            print(formatMessage(format, argument), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #uPrint(java.lang.String, java.lang.Object) }, but with
+     * two "{}" placeholders.
+     */
+    public static void uPrint(String format, Object argument1, Object argument2) {
+        if (isEnabled(UNIMPORTANT)) {
+            print(formatMessage(format, argument1, argument2), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #uPrint(java.lang.String, java.lang.Object) }, but with
+     * any number of "{}" placeholders.
+     */
+    public static void uPrint(String format, Object... arguments) {
+        if (isEnabled(UNIMPORTANT)) {
+            print(formatMessage(format, arguments), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #print(java.lang.String) }, but the message is only
+     * built if it is going to be printed or logged.
+     *
+     * @param message supplies the message to be printed.
+     */
+    public static void print(Supplier<String> message) {
+        if (isEnabled(NORMAL)) {
+            print(message.get(), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #print(java.lang.String) }, but the message is only
+     * formatted if it is going to be printed or logged. The "{}" in the
+     * format is replaced by the argument.
+     */
+    public static void print(String format, Object argument) {
+        if (isEnabled(NORMAL)) {
+            print(formatMessage(format, argument), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #print(java.lang.String, java.lang.Object) }, but with
+     * two "{}" placeholders.
+     */
+    public static void print(String format, Object argument1, Object argument2) {
+        if (isEnabled(NORMAL)) {
+            print(formatMessage(format, argument1, argument2), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #print(java.lang.String, java.lang.Object) }, but with
+     * any number of "{}" placeholders.
+     */
+    public static void print(String format, Object... arguments) {
+        if (isEnabled(NORMAL)) {
+            print(formatMessage(format, arguments), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #iPrint(java.lang.String) }, but the message is only
+     * built if it is going to be printed or logged.
+     *
+     * @param message supplies the message to be printed.
+     */
+    public static void iPrint(Supplier<String> message) {
+        if (isEnabled(IMPORTANT)) {
+            print(message.get(), IMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #iPrint(java.lang.String) }, but the message is only
+     * formatted if it is going to be printed or logged. The "{}" in the
+     * format is replaced by the argument.
+     */
+    public static void iPrint(String format, Object argument) {
+        if (isEnabled(IMPORTANT)) {
+            print(formatMessage(format, argument), IMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #iPrint(java.lang.String, java.lang.Object) }, but with
+     * two "{}" placeholders.
+     */
+    public static void iPrint(String format, Object argument1, Object argument2) {
+        if (isEnabled(IMPORTANT)) {
+            print(formatMessage(format, argument1, argument2), IMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #iPrint(java.lang.String, java.lang.Object) }, but with
+     * any number of "{}" placeholders.
+     */
+    public static void iPrint(String format, Object... arguments) {
+        if (isEnabled(IMPORTANT)) {
+            print(formatMessage(format, arguments), IMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Prints an error message to terminal and/or log file including
+     * accompanying stack trace element.
+     *
+     * @param message The error message
+     * @param severityLevel How important the message is
+     * @param stackTraceStart The position of the current line on the stack
+     * trace
+     */
+    private static void printerr(String message, Rank severityLevel, int stackTraceStart) {
+        if (!isEnabled(severityLevel)) {
+            return; // Don't bother finding the call site.
+        }
+        final CallSite callSite = CallSite.find(stackTraceStart);
+        if (!isWithinRateLimit(callSite, ReadoutCondition.ERROR, severityLevel)) {
+            return;
+        }
+        final String thread_name = Thread.currentThread().getName();
+        final String location_of_print_statement = callSite.getLocation();
+        readout(thread_name, location_of_print_statement, message, null, true, ReadoutCondition.ERROR,
+                severityLevel, callSite.getDebugLevelOrNull(myLevelTree_));
+    }
+
+    /**
+     * Prints the name of the current thread and where the print statement comes
+     * from to the error output stream or to the stream specified by
+     * {@link #myTargetPrintStream_}. The {@link #myTargetPrintStream_} variable
+     * acts as a global override for the preferred output stream of the
+     * application.
+     *
+     * @param message - message to be printed
+     */
+    private static void printerr(String message, Rank severityLevel) {
+        printerr(message, severityLevel, 3);
+    }
+    
+    /**
+     * Short for print error not important. Prints an unimportant error.
+     * Short for "unimportant print error".
+     */
+    public static void uPrinterr(String message) {
+        printerr(message, UNIMPORTANT, 3);
+    }
+
+    /**
+     * Same as {@link #printerr(java.lang.String, Utilities.AppTester.Rank) 
+     * }, but with the {@link #NORMAL} severity level specified by default.
+     *
+     * @param message the message to be printed as if it were an error.
+     */
+    public static void printerr(String message) {
+        printerr(message, NORMAL, 3);
+    }
+    
+    /**
+     * Short for print error important. Prints an important error.
+     * Short for "important print error".
+     */
+    public static void iPrinterr(String message) {
+        printerr(message, IMPORTANT, 3);
+    }
+
+    /**
+     * Same as {@link #uPrinterr(java.lang.String) }, but the message is only
+     * built if it is going to be printed or logged.
+     *
+     * @param message supplies the message to be printed as an error.
+     */
+    public static void uPrinterr(Supplier<String> message) {
+        if (isEnabled(UNIMPORTANT)) {
+            printerr(message.get(), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #uPrinterr(java.lang.String) }, but the message is only
+     * formatted if it is going to be printed or logged. The "{}" in the
+     * format is replaced by the argument.
+     */
+    public static void uPrinterr(String format, Object argument) {
+        if (isEnabled(UNIMPORTANT)) {
+            printerr(formatMessage(format, argument), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #uPrinterr(java.lang.String, java.lang.Object) }, but with
+     * two "{}" placeholders.
+     */
+    public static void uPrinterr(String format, Object argument1, Object argument2) {
+        if (isEnabled(UNIMPORTANT)) {
+            printerr(formatMessage(format, argument1, argument2), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #uPrinterr(java.lang.String, java.lang.Object) }, but with
+     * any number of "{}" placeholders.
+     */
+    public static void uPrinterr(String format, Object... arguments) {
+        if (isEnabled(UNIMPORTANT)) {
+            printerr(formatMessage(format, arguments), UNIMPORTANT, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #printerr(java.lang.String) }, but the message is only
+     * built if it is going to be printed or logged.
+     *
+     * @param message supplies the message to be printed as an error.
+     */
+    public static void printerr(Supplier<String> message) {
+        if (isEnabled(NORMAL)) {
+            printerr(message.get(), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #printerr(java.lang.String) }, but the message is only
+     * formatted if it is going to be printed or logged. The "{}" in the
+     * format is replaced by the argument.
+     */
+    public static void printerr(String format, Object argument) {
+        if (isEnabled(NORMAL)) {
+            printerr(formatMessage(format, argument), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #printerr(java.lang.String, java.lang.Object) }, but with
+     * two "{}" placeholders.
+     */
+    public static void printerr(String format, Object argument1, Object argument2) {
+        if (isEnabled(NORMAL)) {
+            printerr(formatMessage(format, argument1, argument2), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #printerr(java.lang.String, java.lang.Object) }, but with
+     * any number of "{}" placeholders.
+     */
+    public static void printerr(String format, Object... arguments) {
+        if (isEnabled(NORMAL)) {
+            printerr(formatMessage(format, arguments), NORMAL, 3);
+        }
+    }
+
+    /**
+     * Same as {@link #iPrinterr(java.lang.String) }, but the message is only
+     * built if it is going to be printed or logged.
+     *
+     * @param message supplies the message to be printed as an error.
      */
-    public static void check(final boolean assertion, final String message) {
-        check(assertion, message, 3); // nomally it would be 2 but the indirections bumps it up to 3.
+    public static void iPrinterr(Supplier<String> message) {
+        if (isEnabled(IMPORTANT)) {
+            printerr(message.get(), IMPORTANT, 3);
+        }
     }
 
-    private static void check(final boolean assertion, final String message, int firstRowOfStackTrace) {
-        if (!assertion) {
-            
-            String toBePrinted = "\n" + "Assertion failed in Thread: \""
-                    + Thread.currentThread().getName() + "\"" + "\n" + message;
-            // length of stack trace is 5 (thread called by check called by check called by handle called by main)
-            //printlnToReadout(toBePrinted, ReadoutCondition.ERROR, Rank.IMPORTANT); // print rows 3 & 4
-            final StackTraceElement[] stackTraceArray = Thread.currentThread().getStackTrace();
-            // This should print the stack trace from firstRowOfStackTrace down.
-            printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(toBePrinted, stackTraceArray, firstRowOfStackTrace);
-            close();
-            System.exit(-1);
+    /**
+     * Same as {@link #iPrinterr(java.lang.String) }, but the message is only
+     * formatted if it is going to be printed or logged. The "{}" in the
+     * format is replaced by the argument.
+     */
+    public static void iPrinterr(String format, Object argument) {
+        if (isEnabled(IMPORTANT)) {
+            printerr(formatMessage(format, argument), IMPORTANT, 3);
         }
     }
 
-    private static void print(String message, Rank severityLevel, int stackTraceStart) {
-        final String thread_name = Thread.currentThread().getName();
-        final String location_of_print_statement = Thread.currentThread().getStackTrace()[stackTraceStart].toString();
-        printlnToReadout("\n" + "Thread \"" + thread_name + "\": "
-                + location_of_print_statement + "\n" + message, ReadoutCondition.NON_ERROR, severityLevel);
+    /**
+     * Same as {@link #iPrinterr(java.lang.String, java.lang.Object) }, but with
+     * two "{}" placeholders.
+     */
+    public static void iPrinterr(String format, Object argument1, Object argument2) {
+        if (isEnabled(IMPORTANT)) {
+            printerr(formatMessage(format, argument1, argument2), IMPORTANT, 3);
+        }
     }
 
     /**
-     * Prints the name of the current thread and where the print statement comes
-     * from to standard output or to the stream specified by
-     * {@link #myTargetPrintStream_}. The {@link #myTargetPrintStream_} variable
-     * acts as a global override for the preferred output stream of the
-     * application.
-     *
-     * @param message - message to be printed
+     * Same as {@link #iPrinterr(java.lang.String, java.lang.Object) }, but with
+     * any number of "{}" placeholders.
      */
-    private static void print(String message, Rank severityLevel) {
-        print(message, severityLevel, 3);
+    public static void iPrinterr(String format, Object... arguments) {
+        if (isEnabled(IMPORTANT)) {
+            printerr(formatMessage(format, arguments), IMPORTANT, 3);
+        }
     }
-    
+
     /**
-     * Prints an unimportant non-error message.
-     * Short for "unimportant print".
+     * Replaces each "{}" in the format with the next argument, in order.
+     * Placeholders without a matching argument are left as they are.
      */
-    public static void uPrint(String message) {
-        print(message, UNIMPORTANT, 3);
+    private static String formatMessage(String format, Object... arguments) {
+        final StringBuilder formatted = new StringBuilder(format.length() + 16 * arguments.length);
+        int argumentIndex = 0;
+        int copiedUpTo = 0;
+        int placeholder = format.indexOf("{}");
+        while (placeholder >= 0 && argumentIndex < arguments.length) {
+            formatted.append(format, copiedUpTo, placeholder);
+            formatted.append(String.valueOf(arguments[argumentIndex++]));
+            copiedUpTo = placeholder + 2;
+            placeholder = format.indexOf("{}", copiedUpTo);
+        }
+        formatted.append(format, copiedUpTo, format.length());
+        return formatted.toString();
     }
 
     /**
-     * Same as {@link #print(java.lang.String, Utilities.AppTester.Rank)  },
-     * but with the {@link #NORMAL} severity level specified by default.
+     * Prints a message with keys and values attached. Under
+     * {@link LogFileFormat#JSON_LINES} each key becomes a field of the JSON
+     * record, next to "ts", "thread", "site", "rank", "condition" and "msg",
+     * which should not be used as keys. Elsewhere the pairs follow the
+     * message as " key=value".
      *
-     * @param message the message to be printed as if it were a regular
-     * non-error message.
+     * @param keyValues keys, each followed by its value. Numbers and booleans
+     * stay numbers and booleans in JSON, anything else is written as its
+     * toString(), taken on the printing thread.
      */
-    public static void print(String message) {
-        print(message, NORMAL, 3);
+    private static void printKV(String message, Object[] keyValues, ReadoutCondition condition,
+            Rank severityLevel, int stackTraceStart) {
+        if (!isEnabled(severityLevel)) {
+            return; // Don't bother finding the call site.
+        }
+        final CallSite callSite = CallSite.find(stackTraceStart);
+        if (!isWithinRateLimit(callSite, condition, severityLevel)) {
+            return;
+        }
+        readout(Thread.currentThread().getName(), callSite.getLocation(), message,
+                ReadoutFormatter.snapshotKeyValues(keyValues), true, condition, severityLevel,
+                callSite.getDebugLevelOrNull(myLevelTree_));
     }
-    
+
     /**
-     * Prints an important non-error message.
-     * Short for "important print."
+     * Prints an unimportant non-error message with keys and values, as in
+     * uPrintKV("Cache miss", "key", key, "size", size).
      */
-    public static void iPrint(String message) {
-        print(message, IMPORTANT, 3);
+    public static void uPrintKV(String message, Object... keyValues) {
+        printKV(message, keyValues, ReadoutCondition.NON_ERROR, UNIMPORTANT, 3);
     }
 
     /**
-     * Prints an error message to terminal and/or log file including
-     * accompanying stack trace element.
-     *
-     * @param message The error message
-     * @param severityLevel How important the message is
-     * @param stackTraceStart The position of the current line on the stack
-     * trace
+     * Prints a non-error message with keys and values, as in
+     * printKV("Request served", "path", path, "millis", millis).
      */
-    private static void printerr(String message, Rank severityLevel, int stackTraceStart) {
-        final String thread_name = Thread.currentThread().getName();
-        final String location_of_print_statement = Thread.currentThread().getStackTrace()[stackTraceStart].toString();
-        printlnToReadout("\n" + "Thread \"" + thread_name + "\": "
-                + location_of_print_statement + "\n" + message, ReadoutCondition.ERROR, severityLevel);
+    public static void printKV(String message, Object... keyValues) {
+        printKV(message, keyValues, ReadoutCondition.NON_ERROR, NORMAL, 3);
     }
 
     /**
-     * Prints the name of the current thread and where the print statement comes
-     * from to the error output stream or to the stream specified by
-     * {@link #myTargetPrintStream_}. The {@link #myTargetPrintStream_} variable
-     * acts as a global override for the preferred output stream of the
-     * application.
-     *
-     * @param message - message to be printed
+     * Prints an important non-error message with keys and values.
      */
-    private static void printerr(String message, Rank severityLevel) {
-        printerr(message, severityLevel, 3);
+    public static void iPrintKV(String message, Object... keyValues) {
+        printKV(message, keyValues, ReadoutCondition.NON_ERROR, IMPORTANT, 3);
     }
-    
+
     /**
-     * Short for print error not important. Prints an unimportant error.
-     * Short for "unimportant print error".
+     * Prints an unimportant error with keys and values.
      */
-    public static void uPrinterr(String message) {
-        printerr(message, UNIMPORTANT, 3);
+    public static void uPrinterrKV(String message, Object... keyValues) {
+        printKV(message, keyValues, ReadoutCondition.ERROR, UNIMPORTANT, 3);
     }
 
     /**
-     * Same as {@link #printerr(java.lang.String, Utilities.AppTester.Rank) 
-     * }, but with the {@link #NORMAL} severity level specified by default.
-     *
-     * @param message the message to be printed as if it were an error.
+     * Prints an error with keys and values, as in
+     * printerrKV("Request failed", "path", path, "status", status).
      */
-    public static void printerr(String message) {
-        printerr(message, NORMAL, 3);
+    public static void printerrKV(String message, Object... keyValues) {
+        printKV(message, keyValues, ReadoutCondition.ERROR, NORMAL, 3);
     }
-    
+
     /**
-     * Short for print error important. Prints an important error.
-     * Short for "important print error".
+     * Prints an important error with keys and values.
      */
-    public static void iPrinterr(String message) {
-        printerr(message, IMPORTANT, 3);
+    public static void iPrinterrKV(String message, Object... keyValues) {
+        printKV(message, keyValues, ReadoutCondition.ERROR, IMPORTANT, 3);
     }
 
     /**
@@ -730,54 +2656,66 @@ public class AppTester {
      * @param firstRow The first row of the stack trace, between zero and length.
      */
     private static void printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(final String message, StackTraceElement[] stackTrace, int firstRow) {
-        /**
-         * This will be the important (front) part of the stack trace.
-         */
-        final int numImportantRows = numberOfRowsIDisplayInStackTraces_;
-        String importantConcatenation = "";
-        importantConcatenation += (message + "\n"); // add leading message and newline
+        printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(message, stackTrace, firstRow, null);
+    }
+
+    /**
+     * Same as {@link #printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(java.lang.String, java.lang.StackTraceElement[], int)
+     * }, but the causes and suppressed throwables of throwableOrNull, if any,
+     * follow the less important part of the stack trace.
+     */
+    private static void printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(final String message,
+            StackTraceElement[] stackTrace, int firstRow, Throwable throwableOrNull) {
         final int length = stackTrace.length;
         AppTester.check(firstRow <= length, "The first row of the stack trace is outside of the bounds of the stack trace array.");
-        final int totalNumRowsToPrint = length - firstRow;
-        if(totalNumRowsToPrint <= numImportantRows) {
-            // This loops totalNumRowsToPrint times.
-            for(int i = firstRow; i < firstRow + totalNumRowsToPrint; ++i) {
-                importantConcatenation += stackTrace[i] + "\n";
-            }
-            printToReadout(importantConcatenation, ReadoutCondition.ERROR, IMPORTANT); // This println statement adds an extra trailing newline
-            return;
-        } else {
-            // Both of these for loops together loop totalNumRowsToPrint times.
-            // First for loop iterates numImportantRows times.
-            for(int i = firstRow; i < firstRow + numImportantRows; ++i) {
-                importantConcatenation += stackTrace[i] + "\n";
-            }
-            printToReadout(importantConcatenation, ReadoutCondition.ERROR, IMPORTANT); // This println statement adds an extra trailing newline
-            /**
-             * This will be the less important (back) part of the stack trace.
-             */
-            String unimportantConcatenation = "";
-            for(int i = firstRow + numImportantRows; i < firstRow + totalNumRowsToPrint; ++i) {
-                unimportantConcatenation += stackTrace[i] + "\n";
-            }
-            printToReadout(unimportantConcatenation, ReadoutCondition.ERROR, UNIMPORTANT);
-            return;
+        /**
+         * The important (front) part of the stack trace.
+         */
+        final int lastImportantRow = Math.min(length, firstRow + numberOfRowsIDisplayInStackTraces_);
+        final StringBuilder concatenation = new StringBuilder(message).append('\n'); // add leading message and newline
+        StackTraceCache.appendFrames(concatenation, stackTrace, firstRow, lastImportantRow);
+        printToReadout(concatenation.toString(), ReadoutCondition.ERROR, IMPORTANT);
+        /**
+         * The less important (back) part of the stack trace.
+         */
+        concatenation.setLength(0);
+        StackTraceCache.appendFrames(concatenation, stackTrace, lastImportantRow, length);
+        if (throwableOrNull != null) {
+            StackTraceCache.appendEnclosedThrowables(concatenation, throwableOrNull, stackTrace);
+        }
+        if (concatenation.length() > 0) {
+            printToReadout(concatenation.toString(), ReadoutCondition.ERROR, UNIMPORTANT);
         }
     } 
     
     private static void printThrowableNoLeadingLineNumber(String nonNullMessage, Throwable t) {
         AppTester.check(nonNullMessage != null, "The message is not supposed to be null");
-        String toPrint = "\n" + nonNullMessage + "\n" + t.toString();
-        // printlnToReadout(toPrint, ReadoutCondition.ERROR, IMPORTANT);
-        printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(toPrint, t.getStackTrace(), 0);
-        printlnToReadout(Thread.currentThread().getStackTrace()[3].toString() + "\n", ReadoutCondition.ERROR, IMPORTANT);
+        printThrowable("\n" + nonNullMessage + "\n", t);
     }
     
     private static void printThrowableNoLeadingLineNumber(Throwable t) {
-        String toPrint = "\n" + t.toString();
-        //printlnToReadout(toPrint, ReadoutCondition.ERROR, IMPORTANT);
-        printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(toPrint, t.getStackTrace(), 0);
-        printlnToReadout(Thread.currentThread().getStackTrace()[3].toString() + "\n", ReadoutCondition.ERROR, IMPORTANT);
+        printThrowable("\n", t);
+    }
+
+    /**
+     * Prints a throwable's stack trace in full the first time it is seen, and
+     * just a reference to that after that. Called by printEx only.
+     *
+     * @param leadingText what goes before the throwable.
+     */
+    private static void printThrowable(String leadingText, Throwable t) {
+        if (!isEnabled(IMPORTANT)) {
+            return; // Don't bother finding the call site.
+        }
+        final StackTraceCache.Occurrence occurrence = myStackTraceCache_.record(t);
+        if (occurrence.isFirst()) {
+            printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(leadingText + t.toString()
+                    + " (trace #" + occurrence.myId_ + ")", t.getStackTrace(), 0, t);
+        } else {
+            printToReadout(leadingText + t.toString() + "\nsame as trace #" + occurrence.myId_
+                    + " (x" + occurrence.myCount_ + ")\n", ReadoutCondition.ERROR, IMPORTANT);
+        }
+        printlnToReadout(CallSite.find(4).getLocation() + "\n", ReadoutCondition.ERROR, IMPORTANT);
     }
 
     /**
@@ -810,18 +2748,17 @@ public class AppTester {
         AppTester.check(millisecondInterval > 0, "Interval must be positive");
         AppTester.check(millisecondsToPollingStart > 0, "Delay must be positive");
 
-        if (myScheduler_ == null) {
-            // deferred instantiation.
-            myScheduler_ = Executors.newSingleThreadScheduledExecutor();
-            // deferred name assignment.
-            myScheduler_.execute(new Runnable() {
-                // Set the name of myEventCheckerThread_ to "Event_Checker".
-                @Override
-                public void run() {
-                    Thread.currentThread().setName("Event_Checker");
-                }
-            });
-        }
+        final PolledBackgroundEvent polledEvent = new PolledBackgroundEvent(event);
+        final EventWorkers.Gate gate = new EventWorkers.Gate(event.getClass().getName());
+        final BackgroundEventSignal signal = new BackgroundEventSignal(polledEvent, gate);
+        polledEvent.startSignalling(signal);
+        final Runnable poll = new Runnable() {
+            @Override
+            public void run() {
+                // Responds through the signal, right after the poll.
+                polledEvent.poll();
+            }
+        };
         final Runnable handleEvent = new Runnable() {
 
             @Override
@@ -831,22 +2768,331 @@ public class AppTester {
                     close();
                     return;
                 } else {
-                    final boolean didEventOccur = event.checkForEventOccurance();
-                    if (didEventOccur) {
-                        event.respondToEventOccurance();
+                    final EventWorkers workersOrNull = myEventWorkersOrNull_;
+                    if (workersOrNull == null) {
+                        poll.run();
+                    } else {
+                        workersOrNull.submitPoll(gate, poll);
                     }
                 }
             }
         };
+        final Runnable canceller;
+        synchronized (AppTester.class) {
+            if (!tryStartEventScheduler()) {
+                return false;
+            }
+            if (myTimingWheelOrNull_ != null) {
+                final TimingWheel.Timeout timeout = myTimingWheelOrNull_.scheduleWithFixedDelay(handleEvent,
+                        millisecondsToPollingStart, millisecondInterval);
+                if (timeout == null) {
+                    AppTester.printlnToReadout("The timing wheel is already shut down", ReadoutCondition.ERROR, IMPORTANT);
+                    return false;
+                }
+                canceller = new Runnable() {
+                    @Override
+                    public void run() {
+                        timeout.cancel();
+                        signal.stop();
+                    }
+                };
+            } else {
+                final ScheduledFuture<?> future;
+                try {
+                    future = myScheduler_.scheduleWithFixedDelay(handleEvent, millisecondsToPollingStart, millisecondInterval, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ree) {
+                    AppTester.printEx("myScheduler_ is already shut down", ree);
+                    return false;
+                } catch (Exception someOtherException) {
+                    return false;
+                }
+                canceller = new Runnable() {
+                    @Override
+                    public void run() {
+                        future.cancel(false);
+                        signal.stop();
+                    }
+                };
+            }
+        }
+        addEventCanceller(event, canceller);
+        return true;
+    }
+
+    /**
+     * Responds to a background event as soon as its source signals it,
+     * instead of polling for it. The response runs where polled events run:
+     * on the "Event_Checker" thread, or on a worker thread under
+     * {@link EventExecution#PARALLEL}.
+     *
+     * @param event the event to respond to. Its
+     * {@link PushedBackgroundEvent_Interface#startSignalling(Utilities.BackgroundEventSignal) }
+     * is called before this returns.
+     * @return false if AppTester has been closed.
+     */
+    public static boolean tryListenForBackgroundEvent(PushedBackgroundEvent_Interface event) {
+        AppTester.check(event != null, "No null inputs");
+        synchronized (AppTester.class) {
+            if (!tryStartEventScheduler()) {
+                return false;
+            }
+        }
+        final BackgroundEventSignal signal = new BackgroundEventSignal(event,
+                new EventWorkers.Gate(event.getClass().getName()));
+        addEventCanceller(event, new Runnable() {
+            @Override
+            public void run() {
+                signal.stop();
+            }
+        });
+        event.startSignalling(signal);
+        return true;
+    }
+
+    /**
+     * Stops responding to a background event. A response under way finishes.
+     *
+     * @param event an event passed to
+     * {@link #tryListenForBackgroundEvent(Utilities.PushedBackgroundEvent_Interface) }.
+     * @return false if the event was not being listened for.
+     */
+    public static boolean stopListeningForBackgroundEvent(PushedBackgroundEvent_Interface event) {
+        AppTester.check(event != null, "No null inputs");
+        return tryCancelBackgroundEvent(event);
+    }
+
+    /**
+     * Stops polling for a background event. A poll or response under way
+     * finishes.
+     *
+     * @param event an event passed to
+     * {@link #tryPollForBackgroundEventAfterEveryXmsStartingInYms(Utilities.BackgroundEvent_Interface, long, long) }.
+     * @return false if the event was not being polled for.
+     */
+    public static boolean stopPollingForBackgroundEvent(BackgroundEvent_Interface event) {
+        AppTester.check(event != null, "No null inputs");
+        return tryCancelBackgroundEvent(event);
+    }
+
+    private static void addEventCanceller(Object event, Runnable canceller) {
+        myEventCancellers_.merge(event, canceller, new BiFunction<Runnable, Runnable, Runnable>() {
+            // The same event registered more than once.
+            @Override
+            public Runnable apply(final Runnable first, final Runnable second) {
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        first.run();
+                        second.run();
+                    }
+                };
+            }
+        });
+    }
+
+    private static boolean tryCancelBackgroundEvent(Object event) {
+        final Runnable cancellerOrNull = myEventCancellers_.remove(event);
+        if (cancellerOrNull == null) {
+            return false;
+        }
+        cancellerOrNull.run();
+        return true;
+    }
+
+    /**
+     * Starts the "Event_Checker" thread if it is not running yet. Must hold
+     * the AppTester class lock.
+     *
+     * @return false if it has been shut down.
+     */
+    private static boolean tryStartEventScheduler() {
+        if (myEventExecution_ == EventExecution.PARALLEL && myEventWorkersOrNull_ == null) {
+            // deferred instantiation.
+            final EventWorkers workers = new EventWorkers(myEventConcurrencyLimit_, myEventTimeoutMilliseconds_);
+            final Runnable checkTimeouts = new Runnable() {
+                @Override
+                public void run() {
+                    workers.checkTimeouts();
+                }
+            };
+            myEventWorkersOrNull_ = workers;
+            if (myEventScheduler_ == EventScheduler.TIMING_WHEEL) {
+                myTimingWheelOrNull_ = new TimingWheel("Event_Checker", 1, 4096);
+                myTimingWheelOrNull_.scheduleWithFixedDelay(checkTimeouts,
+                        EVENT_TIMEOUT_CHECK_MILLISECONDS, EVENT_TIMEOUT_CHECK_MILLISECONDS);
+            } else {
+                tryStartEventScheduler();
+                myScheduler_.scheduleWithFixedDelay(checkTimeouts, EVENT_TIMEOUT_CHECK_MILLISECONDS,
+                        EVENT_TIMEOUT_CHECK_MILLISECONDS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (myEventScheduler_ == EventScheduler.TIMING_WHEEL) {
+            if (myTimingWheelOrNull_ == null) {
+                // deferred instantiation.
+                myTimingWheelOrNull_ = new TimingWheel("Event_Checker", 1, 4096);
+            }
+            return !myTimingWheelOrNull_.isStopped();
+        }
+        if (myScheduler_ == null) {
+            // deferred instantiation.
+            myScheduler_ = Executors.newSingleThreadScheduledExecutor();
+            // deferred name assignment.
+            myScheduler_.execute(new Runnable() {
+                // Set the name of myEventCheckerThread_ to "Event_Checker".
+                @Override
+                public void run() {
+                    Thread.currentThread().setName("Event_Checker");
+                }
+            });
+        }
+        return !myScheduler_.isShutdown();
+    }
+
+    /**
+     * Runs the response to a signalled background event on the
+     * "Event_Checker" thread, or in parallel under
+     * {@link EventExecution#PARALLEL}.
+     *
+     * @param gate limits how many responses to the event run at once.
+     * @return false if the thread has been shut down.
+     */
+    static boolean tryRunBackgroundEvent(EventWorkers.Gate gate, Runnable response) {
+        final EventWorkers workersOrNull = myEventWorkersOrNull_;
+        if (workersOrNull != null) {
+            return workersOrNull.trySubmitResponse(gate, response);
+        }
+        final TimingWheel wheelOrNull = myTimingWheelOrNull_;
+        if (wheelOrNull != null) {
+            return wheelOrNull.tryExecute(response);
+        }
+        final ScheduledExecutorService schedulerOrNull = myScheduler_;
+        if (schedulerOrNull == null) {
+            return false; // AppTester is not listening for any events.
+        }
         try {
-            myScheduler_.scheduleWithFixedDelay(handleEvent, millisecondsToPollingStart, millisecondInterval, TimeUnit.MILLISECONDS);
+            schedulerOrNull.execute(response);
             return true;
         } catch (RejectedExecutionException ree) {
-            AppTester.printEx("myScheduler_ is already shut down", ree);
             return false;
-        } catch (Exception someOtherException) {
+        }
+    }
+
+    /**
+     * Called for each signal, on the "Event_Checker" thread or on a worker
+     * thread under {@link EventExecution#PARALLEL}.
+     */
+    static void respondToBackgroundEvent(PushedBackgroundEvent_Interface event) {
+        if (!myMainThread_.isAlive()) {
+            // Initiate shutdown procedures.
+            close();
+        } else {
+            event.respondToEventOccurance();
+        }
+    }
+
+    /**
+     * Reports a background event that ran too long, under
+     * {@link EventExecution#PARALLEL}.
+     *
+     * @param stackTraceOrNull where the event was when it was caught, or
+     * null.
+     */
+    static void reportBackgroundEventOverrun(String message, StackTraceElement[] stackTraceOrNull) {
+        if (stackTraceOrNull == null) {
+            printlnToReadout("\n" + message, ReadoutCondition.ERROR, IMPORTANT);
+        } else {
+            printStackTraceNoLeadingLineNumberWithLeadingMessageAndNewline(message, stackTraceOrNull, 0);
+        }
+    }
+
+    public static synchronized EventExecution getMyEventExecution() {
+        return myEventExecution_;
+    }
+
+    /**
+     * Switches where the polls and responses of background events run. Must
+     * be called before the first background event is polled or listened for.
+     *
+     * @param execution the new execution mode.
+     * @return false if background events are already running, in which case
+     * nothing changes.
+     */
+    public static synchronized boolean setMyEventExecution(EventExecution execution) {
+        AppTester.check(execution != null, "No null inputs");
+        if (execution != myEventExecution_ && (myScheduler_ != null || myTimingWheelOrNull_ != null)) {
+            return false;
+        }
+        myEventExecution_ = execution;
+        return true;
+    }
+
+    public static synchronized int getMyEventConcurrencyLimit() {
+        return myEventConcurrencyLimit_;
+    }
+
+    /**
+     * Sets how many polls and responses of one background event may run at
+     * once under {@link EventExecution#PARALLEL}. A poll that comes due while
+     * its event is at the limit is skipped and counted as an overrun.
+     *
+     * @param limit at least 1.
+     */
+    public static synchronized void setMyEventConcurrencyLimit(int limit) {
+        AppTester.check(limit > 0, "Limit must be positive");
+        myEventConcurrencyLimit_ = limit;
+        if (myEventWorkersOrNull_ != null) {
+            myEventWorkersOrNull_.setConcurrencyLimit(limit);
+        }
+    }
+
+    public static synchronized long getMyEventTimeoutMilliseconds() {
+        return myEventTimeoutMilliseconds_;
+    }
+
+    /**
+     * Sets how long a poll or response may run under
+     * {@link EventExecution#PARALLEL}. One that runs longer is reported with
+     * its stack trace and counted as an overrun. It is not interrupted, and
+     * runs to the end.
+     *
+     * @param milliseconds the time limit, or 0 for none.
+     */
+    public static synchronized void setMyEventTimeoutMilliseconds(long milliseconds) {
+        AppTester.check(milliseconds >= 0, "Time limit cannot be negative");
+        myEventTimeoutMilliseconds_ = milliseconds;
+        if (myEventWorkersOrNull_ != null) {
+            myEventWorkersOrNull_.setTimeoutMilliseconds(milliseconds);
+        }
+    }
+
+    /**
+     * @return the number of polls skipped and polls and responses timed out
+     * under {@link EventExecution#PARALLEL}.
+     */
+    public static long getBackgroundEventOverrunCount() {
+        final EventWorkers workersOrNull = myEventWorkersOrNull_;
+        return (workersOrNull == null) ? 0 : workersOrNull.getOverrunCount();
+    }
+
+    public static synchronized EventScheduler getMyEventScheduler() {
+        return myEventScheduler_;
+    }
+
+    /**
+     * Switches what runs background events. Must be called before the first
+     * background event is polled for.
+     *
+     * @param scheduler the new scheduler.
+     * @return false if background events are already running on the other
+     * scheduler, in which case nothing changes.
+     */
+    public static synchronized boolean setMyEventScheduler(EventScheduler scheduler) {
+        AppTester.check(scheduler != null, "No null inputs");
+        if (scheduler != myEventScheduler_ && (myScheduler_ != null || myTimingWheelOrNull_ != null)) {
             return false;
         }
+        myEventScheduler_ = scheduler;
+        return true;
     }
     // </editor-fold>
 }
@@ -0,0 +1,190 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what AppTester does. Every count is a {@link LongAdder}, which
+ * spreads updates from different threads over different cells, so that
+ * keeping count does not make printing threads wait on one another.
+ *
+ * @author johnmichaelreed2
+ */
+final class AppTesterMetrics implements AppTesterMetricsMXBean {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+    private final LongAdder[] myReadoutsByRank_ = new LongAdder[Rank.values().length];
+    private final LongAdder[] myReadoutsByCondition_ = new LongAdder[ReadoutCondition.values().length];
+    private final LongAdder myLogFileBytes_ = new LongAdder();
+    private final LongAdder myTerminalBytes_ = new LongAdder();
+    private final LongAdder myDropped_ = new LongAdder();
+    private final LongAdder mySuppressed_ = new LongAdder();
+    private final LongAdder myFlushes_ = new LongAdder();
+    private final LongAdder myForces_ = new LongAdder();
+    private final LongAdder myFailedForces_ = new LongAdder();
+    private final LatencyHistogram myReadoutLatency_ = new LatencyHistogram();
+    private final LatencyHistogram myFlushLatency_ = new LatencyHistogram();
+    private final LatencyHistogram myForceLatency_ = new LatencyHistogram();
+
+    AppTesterMetrics() {
+        for (int i = 0; i < myReadoutsByRank_.length; ++i) {
+            myReadoutsByRank_[i] = new LongAdder();
+        }
+        for (int i = 0; i < myReadoutsByCondition_.length; ++i) {
+            myReadoutsByCondition_[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts a readout that was written out.
+     *
+     * @param nanoseconds how long formatting and writing it took.
+     */
+    void recordReadout(Rank severity, ReadoutCondition condition, long nanoseconds) {
+        myReadoutsByRank_[severity.ordinal()].increment();
+        myReadoutsByCondition_[condition.ordinal()].increment();
+        myReadoutLatency_.record(nanoseconds);
+    }
+
+    void recordLogFileBytes(long bytes) {
+        myLogFileBytes_.add(bytes);
+    }
+
+    void recordTerminalBytes(long bytes) {
+        myTerminalBytes_.add(bytes);
+    }
+
+    void recordDropped() {
+        myDropped_.increment();
+    }
+
+    void recordSuppressed() {
+        mySuppressed_.increment();
+    }
+
+    void recordFlush(long nanoseconds) {
+        myFlushes_.increment();
+        myFlushLatency_.record(nanoseconds);
+    }
+
+    void recordForce(long nanoseconds) {
+        myForces_.increment();
+        myForceLatency_.record(nanoseconds);
+    }
+
+    void recordFailedForce() {
+        myFailedForces_.increment();
+    }
+
+    @Override
+    public long getImportantReadoutCount() {
+        return myReadoutsByRank_[Rank.IMPORTANT.ordinal()].sum();
+    }
+
+    @Override
+    public long getNormalReadoutCount() {
+        return myReadoutsByRank_[Rank.NORMAL.ordinal()].sum();
+    }
+
+    @Override
+    public long getUnimportantReadoutCount() {
+        return myReadoutsByRank_[Rank.UNIMPORTANT.ordinal()].sum();
+    }
+
+    @Override
+    public long getErrorReadoutCount() {
+        return myReadoutsByCondition_[ReadoutCondition.ERROR.ordinal()].sum();
+    }
+
+    @Override
+    public long getNonErrorReadoutCount() {
+        return myReadoutsByCondition_[ReadoutCondition.NON_ERROR.ordinal()].sum();
+    }
+
+    @Override
+    public long getLogFileBytesWritten() {
+        return myLogFileBytes_.sum();
+    }
+
+    @Override
+    public long getTerminalBytesWritten() {
+        return myTerminalBytes_.sum();
+    }
+
+    @Override
+    public long getDroppedReadoutCount() {
+        return myDropped_.sum();
+    }
+
+    @Override
+    public long getSuppressedReadoutCount() {
+        return mySuppressed_.sum();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return myFlushes_.sum();
+    }
+
+    @Override
+    public long getForceCount() {
+        return myForces_.sum();
+    }
+
+    @Override
+    public long getFailedForceCount() {
+        return myFailedForces_.sum();
+    }
+
+    @Override
+    public Map<String, Long> getReadoutLatencyNanos() {
+        return summarize(myReadoutLatency_);
+    }
+
+    @Override
+    public Map<String, Long> getFlushLatencyNanos() {
+        return summarize(myFlushLatency_);
+    }
+
+    @Override
+    public Map<String, Long> getForceLatencyNanos() {
+        return summarize(myForceLatency_);
+    }
+
+    private static Map<String, Long> summarize(LatencyHistogram histogram) {
+        final LinkedHashMap<String, Long> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("mean", Math.round(histogram.getMean()));
+        final long[] values = histogram.getPercentiles(PERCENTILES);
+        for (int i = 0; i < values.length; ++i) {
+            summary.put(PERCENTILE_NAMES[i], values[i]);
+        }
+        summary.put("max", histogram.getMax());
+        return summary;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder count : myReadoutsByRank_) {
+            count.reset();
+        }
+        for (LongAdder count : myReadoutsByCondition_) {
+            count.reset();
+        }
+        myLogFileBytes_.reset();
+        myTerminalBytes_.reset();
+        myDropped_.reset();
+        mySuppressed_.reset();
+        myFlushes_.reset();
+        myForces_.reset();
+        myFailedForces_.reset();
+        myReadoutLatency_.reset();
+        myFlushLatency_.reset();
+        myForceLatency_.reset();
+    }
+}
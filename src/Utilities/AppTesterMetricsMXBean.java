@@ -0,0 +1,96 @@
+package Utilities;
+
+import java.util.Map;
+
+/**
+ * What AppTester reports about itself, through JMX once
+ * {@link AppTester#tryRegisterMetricsMBean() } has been called, under the name
+ * "Utilities:type=AppTester", or directly through
+ * {@link AppTester#getMetrics() }. Counts start when the application starts,
+ * or at the last {@link #reset() }.
+ *
+ * Latencies are reported as a map from "count", "mean", "p50", "p90", "p99",
+ * "p99.9" and "max" to nanoseconds, "count" aside.
+ *
+ * @author johnmichaelreed2
+ */
+public interface AppTesterMetricsMXBean {
+
+    /**
+     * @return readouts written of rank {@link AppTester.Rank#IMPORTANT}.
+     */
+    long getImportantReadoutCount();
+
+    /**
+     * @return readouts written of rank {@link AppTester.Rank#NORMAL}.
+     */
+    long getNormalReadoutCount();
+
+    /**
+     * @return readouts written of rank {@link AppTester.Rank#UNIMPORTANT}.
+     */
+    long getUnimportantReadoutCount();
+
+    /**
+     * @return readouts written with {@link AppTester.ReadoutCondition#ERROR}.
+     */
+    long getErrorReadoutCount();
+
+    /**
+     * @return readouts written with
+     * {@link AppTester.ReadoutCondition#NON_ERROR}.
+     */
+    long getNonErrorReadoutCount();
+
+    long getLogFileBytesWritten();
+
+    long getTerminalBytesWritten();
+
+    /**
+     * @return readouts thrown away because the asynchronous readout buffer was
+     * full.
+     */
+    long getDroppedReadoutCount();
+
+    /**
+     * @return readouts held back by the call site rate limit.
+     */
+    long getSuppressedReadoutCount();
+
+    /**
+     * @return times buffered log file text was written out to the file.
+     */
+    long getFlushCount();
+
+    /**
+     * @return times the log file was forced to the storage device under
+     * group commit.
+     */
+    long getForceCount();
+
+    /**
+     * @return times forcing the log file failed under group commit, leaving
+     * the readouts waiting on it not known to be durable.
+     */
+    long getFailedForceCount();
+
+    /**
+     * @return how long it takes to format and write out a readout.
+     */
+    Map<String, Long> getReadoutLatencyNanos();
+
+    /**
+     * @return how long it takes to write buffered log file text to the file.
+     */
+    Map<String, Long> getFlushLatencyNanos();
+
+    /**
+     * @return how long it takes to force the log file to the storage device.
+     */
+    Map<String, Long> getForceLatencyNanos();
+
+    /**
+     * Sets all counts back to zero.
+     */
+    void reset();
+}
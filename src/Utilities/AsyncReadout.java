@@ -0,0 +1,388 @@
+package Utilities;
+
+import Utilities.AppTester.FullBufferPolicy;
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchronous back end for {@link AppTester#printToReadout(java.lang.String, Utilities.AppTester.ReadoutCondition, Utilities.AppTester.Rank)
+ * }. Printing threads publish readouts into a preallocated multi-producer ring
+ * buffer without taking any lock, and a single daemon thread named
+ * "Log_Writer" drains the ring to the log file and terminal.
+ *
+ * @author johnmichaelreed2
+ */
+final class AsyncReadout {
+
+    /**
+     * One preallocated entry in the ring. The sequence number tells producers
+     * and the consumer whose turn it is to touch the entry.
+     */
+    private static final class Slot {
+
+        volatile long sequence_;
+        String threadNameOrNull_;
+        String locationOrNull_;
+        String message_;
+        Object[] keyValuesOrNull_;
+        boolean withNewline_;
+        ReadoutCondition condition_;
+        Rank severity_;
+        Rank debugLevelOrNull_;
+    }
+
+    /**
+     * A readout that did not fit in the ring under
+     * {@link FullBufferPolicy#SPILL}.
+     */
+    private static final class SpilledReadout {
+
+        final String threadNameOrNull_;
+        final String locationOrNull_;
+        final String message_;
+        final Object[] keyValuesOrNull_;
+        final boolean withNewline_;
+        final ReadoutCondition condition_;
+        final Rank severity_;
+        final Rank debugLevelOrNull_;
+
+        SpilledReadout(String threadNameOrNull, String locationOrNull, String message, Object[] keyValuesOrNull,
+                boolean withNewline, ReadoutCondition condition, Rank severity, Rank debugLevelOrNull) {
+            threadNameOrNull_ = threadNameOrNull;
+            locationOrNull_ = locationOrNull;
+            message_ = message;
+            keyValuesOrNull_ = keyValuesOrNull;
+            withNewline_ = withNewline;
+            condition_ = condition;
+            severity_ = severity;
+            debugLevelOrNull_ = debugLevelOrNull;
+        }
+    }
+
+    private final Slot[] mySlots_;
+    private final int myMask_;
+
+    /**
+     * The next sequence number to be claimed by a producer.
+     */
+    private final AtomicLong myTail_ = new AtomicLong();
+
+    /**
+     * The next sequence number to be consumed. Only written while holding
+     * {@link #myTakeLock_}.
+     */
+    private volatile long myHead_ = 0;
+
+    /**
+     * Held by whoever is writing readouts out of the ring, which is normally
+     * the writer thread but may be a thread calling {@link #drain()}, so they
+     * are written in order. A thread holding the AppTester class lock never
+     * waits for it, since its holder may be waiting for the class lock.
+     */
+    private final ReentrantLock myConsumerLock_ = new ReentrantLock();
+
+    /**
+     * Held while a readout is taken out of the ring or the spill, and never
+     * while it is written.
+     */
+    private final Object myTakeLock_ = new Object();
+
+    private final ConcurrentLinkedQueue<SpilledReadout> mySpill_ = new ConcurrentLinkedQueue<>();
+    private final AtomicLong myDroppedCount_ = new AtomicLong();
+    private volatile FullBufferPolicy myPolicy_;
+    private volatile boolean myWriterIsParked_ = false;
+    private volatile boolean myIsStopped_ = false;
+    private final Thread myWriterThread_;
+
+    /**
+     * @param capacity the number of slots in the ring. Rounded up to a power of
+     * two.
+     * @param policy what a producer does when the ring is full.
+     */
+    AsyncReadout(int capacity, FullBufferPolicy policy) {
+        AppTester.check(capacity > 0, "The ring buffer must have at least one slot.");
+        AppTester.check(policy != null, "No null inputs");
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mySlots_ = new Slot[size];
+        for (int i = 0; i < size; ++i) {
+            mySlots_[i] = new Slot();
+            mySlots_[i].sequence_ = i;
+        }
+        myMask_ = size - 1;
+        myPolicy_ = policy;
+        myWriterThread_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeUntilStopped();
+            }
+        }, "Log_Writer");
+        myWriterThread_.setDaemon(true);
+        myWriterThread_.start();
+    }
+
+    void setPolicy(FullBufferPolicy policy) {
+        AppTester.check(policy != null, "No null inputs");
+        myPolicy_ = policy;
+    }
+
+    /**
+     * @return the number of readouts discarded under
+     * {@link FullBufferPolicy#DROP_LOWEST_RANK}.
+     */
+    long getDroppedCount() {
+        return myDroppedCount_.get();
+    }
+
+    /**
+     * Hands a readout to the writer thread.
+     *
+     * @return true if the readout was queued or deliberately dropped, false if
+     * the caller must write it out itself. The writer thread itself always
+     * gets false so that readouts it triggers cannot wait on themselves, and
+     * so does a thread holding the AppTester class lock when the ring is
+     * full, since the writer thread needs that lock to make room.
+     */
+    boolean tryPublish(String threadNameOrNull, String locationOrNull, String message, Object[] keyValuesOrNull,
+            boolean withNewline, ReadoutCondition condition, Rank severity, Rank debugLevelOrNull) {
+        if (myIsStopped_ || Thread.currentThread() == myWriterThread_) {
+            return false;
+        }
+        // Keep a thread's readouts in order once some of them have spilled.
+        if (!mySpill_.isEmpty()) {
+            mySpill_.add(new SpilledReadout(threadNameOrNull, locationOrNull, message, keyValuesOrNull,
+                    withNewline, condition, severity, debugLevelOrNull));
+            wakeWriter();
+            return true;
+        }
+        while (!tryOffer(threadNameOrNull, locationOrNull, message, keyValuesOrNull, withNewline,
+                condition, severity, debugLevelOrNull)) {
+            final FullBufferPolicy policy = myPolicy_;
+            if (policy == FullBufferPolicy.DROP_NEWEST
+                    || (policy == FullBufferPolicy.DROP_LOWEST_RANK && severity == Rank.UNIMPORTANT)) {
+                myDroppedCount_.incrementAndGet();
+                AppTester.getMetricsRecorder().recordDropped();
+                return true;
+            } else if (policy == FullBufferPolicy.SPILL) {
+                mySpill_.add(new SpilledReadout(threadNameOrNull, locationOrNull, message, keyValuesOrNull,
+                        withNewline, condition, severity, debugLevelOrNull));
+                wakeWriter();
+                return true;
+            } else if (myIsStopped_ || Thread.holdsLock(AppTester.class)) {
+                return false;
+            }
+            // FullBufferPolicy.BLOCK, or a readout too important to drop.
+            wakeWriter();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        wakeWriter();
+        return true;
+    }
+
+    private boolean tryOffer(String threadNameOrNull, String locationOrNull, String message, Object[] keyValuesOrNull,
+            boolean withNewline, ReadoutCondition condition, Rank severity, Rank debugLevelOrNull) {
+        long position = myTail_.get();
+        Slot slot;
+        while (true) {
+            slot = mySlots_[(int) position & myMask_];
+            final long difference = slot.sequence_ - position;
+            if (difference == 0) {
+                if (myTail_.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = myTail_.get();
+            } else if (difference < 0) {
+                // The consumer has not freed this slot yet, so the ring is full.
+                return false;
+            } else {
+                // Another producer claimed this position first.
+                position = myTail_.get();
+            }
+        }
+        slot.threadNameOrNull_ = threadNameOrNull;
+        slot.locationOrNull_ = locationOrNull;
+        slot.message_ = message;
+        slot.keyValuesOrNull_ = keyValuesOrNull;
+        slot.withNewline_ = withNewline;
+        slot.condition_ = condition;
+        slot.severity_ = severity;
+        slot.debugLevelOrNull_ = debugLevelOrNull;
+        slot.sequence_ = position + 1; // publish
+        return true;
+    }
+
+    private void wakeWriter() {
+        if (myWriterIsParked_) {
+            LockSupport.unpark(myWriterThread_);
+        }
+    }
+
+    /**
+     * @return true if nothing is waiting to be written.
+     */
+    boolean isEmpty() {
+        return myTail_.get() == myHead_ && mySpill_.isEmpty();
+    }
+
+    /**
+     * Writes out everything that was published before this call, using the
+     * calling thread if the writer thread is not already doing so.
+     *
+     * A thread holding the AppTester class lock does not wait for the writer
+     * thread, which may be waiting for that lock itself, and writes what is
+     * left in the ring alongside it. The readout the writer thread is in the
+     * middle of is then written once the class lock is let go.
+     */
+    void drain() {
+        final long publishedBeforeDrain = myTail_.get();
+        final boolean isConsumer;
+        if (Thread.holdsLock(AppTester.class)) {
+            isConsumer = myConsumerLock_.tryLock();
+        } else {
+            myConsumerLock_.lock();
+            isConsumer = true;
+        }
+        try {
+            writeAvailable();
+            // A producer may have claimed a slot without having filled it yet.
+            while (myHead_ < publishedBeforeDrain) {
+                Thread.yield();
+                writeAvailable();
+            }
+        } finally {
+            if (isConsumer) {
+                myConsumerLock_.unlock();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #drain() }, but gives up if another thread has been
+     * writing for longer than the timeout. Used by the shutdown hook, which
+     * must not wait on a thread that is itself calling System.exit.
+     */
+    void tryDrain(long milliseconds) {
+        try {
+            if (myConsumerLock_.tryLock(milliseconds, TimeUnit.MILLISECONDS)) {
+                try {
+                    writeAvailable();
+                } finally {
+                    myConsumerLock_.unlock();
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drains everything and stops the writer thread. Readouts published after
+     * this are refused, so callers fall back to writing synchronously.
+     */
+    void stop() {
+        myIsStopped_ = true;
+        drain();
+        LockSupport.unpark(myWriterThread_);
+    }
+
+    /**
+     * Should be called with {@link #myConsumerLock_} held, unless the AppTester
+     * class lock is held instead. See {@link #drain() }.
+     *
+     * @return true if anything was written.
+     */
+    private boolean writeAvailable() {
+        boolean wroteSomething = false;
+        while (writeNext()) {
+            wroteSomething = true;
+        }
+        return wroteSomething;
+    }
+
+    /**
+     * Takes the oldest readout out of the ring, or else out of the spill, and
+     * writes it out.
+     *
+     * @return false if there was nothing to write.
+     */
+    private boolean writeNext() {
+        final String threadNameOrNull;
+        final String locationOrNull;
+        final String message;
+        final Object[] keyValuesOrNull;
+        final boolean withNewline;
+        final ReadoutCondition condition;
+        final Rank severity;
+        final Rank debugLevelOrNull;
+        synchronized (myTakeLock_) {
+            final Slot slot = mySlots_[(int) myHead_ & myMask_];
+            if (slot.sequence_ == myHead_ + 1) {
+                threadNameOrNull = slot.threadNameOrNull_;
+                locationOrNull = slot.locationOrNull_;
+                message = slot.message_;
+                keyValuesOrNull = slot.keyValuesOrNull_;
+                withNewline = slot.withNewline_;
+                condition = slot.condition_;
+                severity = slot.severity_;
+                debugLevelOrNull = slot.debugLevelOrNull_;
+                slot.threadNameOrNull_ = null;
+                slot.locationOrNull_ = null;
+                slot.message_ = null;
+                slot.keyValuesOrNull_ = null;
+                slot.condition_ = null;
+                slot.severity_ = null;
+                slot.debugLevelOrNull_ = null;
+                slot.sequence_ = myHead_ + mySlots_.length; // free the slot
+                myHead_ = myHead_ + 1;
+            } else {
+                // Only look at the spill once the ring is empty; spilled readouts
+                // are always newer than the ones in the ring.
+                final SpilledReadout spilled = mySpill_.poll();
+                if (spilled == null) {
+                    return false;
+                }
+                threadNameOrNull = spilled.threadNameOrNull_;
+                locationOrNull = spilled.locationOrNull_;
+                message = spilled.message_;
+                keyValuesOrNull = spilled.keyValuesOrNull_;
+                withNewline = spilled.withNewline_;
+                condition = spilled.condition_;
+                severity = spilled.severity_;
+                debugLevelOrNull = spilled.debugLevelOrNull_;
+            }
+        }
+        try {
+            AppTester.writeToReadout(threadNameOrNull, locationOrNull, message, keyValuesOrNull,
+                    withNewline, condition, severity, debugLevelOrNull);
+        } catch (RuntimeException re) {
+            // One readout that cannot be written must not stop the writer thread.
+        }
+        return true;
+    }
+
+    private void writeUntilStopped() {
+        while (!myIsStopped_) {
+            boolean wroteSomething;
+            myConsumerLock_.lock();
+            try {
+                wroteSomething = writeAvailable();
+            } finally {
+                myConsumerLock_.unlock();
+            }
+            if (!wroteSomething) {
+                myWriterIsParked_ = true;
+                if (isEmpty()) {
+                    LockSupport.park(this); // until a producer or stop() wakes it.
+                }
+                myWriterIsParked_ = false;
+            }
+        }
+    }
+}
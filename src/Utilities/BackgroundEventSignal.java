@@ -0,0 +1,89 @@
+package Utilities;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Tells AppTester that a {@link PushedBackgroundEvent_Interface} has occurred,
+ * so that it responds right away. While a response is waiting to run, more
+ * signals are merged into it and only cost a compare and set.
+ *
+ * @author johnmichaelreed2
+ */
+public final class BackgroundEventSignal {
+
+    private final PushedBackgroundEvent_Interface myEvent_;
+    private final EventWorkers.Gate myGate_;
+
+    /**
+     * Whether a response is waiting to run.
+     */
+    private final AtomicBoolean isPending_ = new AtomicBoolean(false);
+    private volatile boolean isStopped_ = false;
+
+    private final Runnable myResponse_ = new Runnable() {
+        @Override
+        public void run() {
+            // Cleared first, so a signal during the response gets a response of its own.
+            isPending_.set(false);
+            if (!isStopped_) {
+                AppTester.respondToBackgroundEvent(myEvent_);
+            }
+        }
+    };
+
+    /**
+     * @param gate limits how many responses to the event run at once.
+     */
+    BackgroundEventSignal(PushedBackgroundEvent_Interface event, EventWorkers.Gate gate) {
+        myEvent_ = event;
+        myGate_ = gate;
+    }
+
+    /**
+     * Says that the event has occurred. Can be called from any thread.
+     *
+     * @return false if the signal has been stopped or AppTester has been
+     * closed.
+     */
+    public boolean signal() {
+        if (isStopped_) {
+            return false;
+        }
+        if (!isPending_.compareAndSet(false, true)) {
+            return true; // merged into the response already waiting.
+        }
+        if (!AppTester.tryRunBackgroundEvent(myGate_, myResponse_)) {
+            isPending_.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Signals once the future completes, normally or not.
+     *
+     * @param stage the future.
+     */
+    public void signalWhenComplete(CompletionStage<?> stage) {
+        AppTester.check(stage != null, "No null inputs");
+        stage.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable throwableOrNull) {
+                signal();
+            }
+        });
+    }
+
+    /**
+     * Stops responding to the event. A response under way finishes.
+     */
+    void stop() {
+        isStopped_ = true;
+    }
+
+    public boolean isStopped() {
+        return isStopped_;
+    }
+}
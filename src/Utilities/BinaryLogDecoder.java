@@ -0,0 +1,173 @@
+package Utilities;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Turns a binary log file written under {@link AppTester.LogFileFormat#BINARY}
+ * back into the same text AppTester writes to text log files, such as:
+ * <pre>
+ * Thread "main": PackageName.ClassName.method(ClassName.java:291)
+ * Hello World
+ * </pre>
+ *
+ * Run with: java -cp [classes] Utilities.BinaryLogDecoder [file.bin]
+ *
+ * A file name of "-" reads standard in, so the output of
+ * {@link ShardedLogMerger} can be piped in.
+ *
+ * This tool deliberately does not use {@link AppTester}, so that decoding a
+ * log file does not create a new one.
+ *
+ * @author johnmichaelreed2
+ */
+public class BinaryLogDecoder {
+
+    private final DataInputStream myInput_;
+    private final ArrayList<String> myThreadNames_ = new ArrayList<>();
+    private final ArrayList<String> myCallSites_ = new ArrayList<>();
+    private long myTimeMillis_;
+
+    /**
+     * @param input a binary log file, positioned at its start.
+     */
+    public BinaryLogDecoder(InputStream input) {
+        myInput_ = new DataInputStream(input);
+    }
+
+    public static void main(String args[]) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java Utilities.BinaryLogDecoder [binary log file]");
+            System.exit(-1);
+        }
+        final Writer output = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (InputStream input = new BufferedInputStream(
+                args[0].equals("-") ? System.in : new FileInputStream(args[0]))) {
+            new BinaryLogDecoder(input).decodeTo(output, System.getProperty("line.separator"));
+        }
+        output.flush();
+    }
+
+    /**
+     * Decodes the whole file as text.
+     *
+     * @param output where the text goes.
+     * @param lineSeparator what each line ends with.
+     * @throws IOException if the file can't be read or is not a binary log
+     * file. Text decoded before the problem is still written.
+     */
+    public void decodeTo(Writer output, String lineSeparator) throws IOException {
+        final StringBuilder readout = new StringBuilder();
+        boolean isFirstRecord = true;
+        while (true) {
+            final int recordType = myInput_.read();
+            if (recordType == -1) {
+                return;
+            }
+            if (recordType == 0) {
+                continue; // padding
+            }
+            if (isFirstRecord && recordType != BinaryLogEncoder.SESSION) {
+                throw new IOException("Not a binary AppTester log file.");
+            }
+            isFirstRecord = false;
+            switch (recordType) {
+                case BinaryLogEncoder.SESSION:
+                    readSession();
+                    break;
+                case BinaryLogEncoder.THREAD_NAME:
+                    define(myThreadNames_);
+                    break;
+                case BinaryLogEncoder.CALL_SITE:
+                    define(myCallSites_);
+                    break;
+                case BinaryLogEncoder.READOUT:
+                    readout.setLength(0);
+                    readReadout(readout);
+                    output.write(readout.toString().replace("\n", lineSeparator));
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + recordType);
+            }
+        }
+    }
+
+    /**
+     * @return the time of the last readout decoded, in milliseconds since the
+     * epoch.
+     */
+    public long getTimeMillis() {
+        return myTimeMillis_;
+    }
+
+    private void readSession() throws IOException {
+        final byte[] magic = new byte[BinaryLogEncoder.MAGIC.length];
+        myInput_.readFully(magic);
+        if (!Arrays.equals(magic, BinaryLogEncoder.MAGIC)) {
+            throw new IOException("Not a binary AppTester log file.");
+        }
+        final int version = myInput_.readUnsignedByte();
+        if (version != BinaryLogEncoder.VERSION) {
+            throw new IOException("Unsupported binary log version " + version);
+        }
+        myTimeMillis_ = myInput_.readLong();
+        myThreadNames_.clear();
+        myCallSites_.clear();
+    }
+
+    private void define(ArrayList<String> names) throws IOException {
+        final int id = (int) readVarint();
+        final String text = readText();
+        while (names.size() < id) {
+            names.add(null);
+        }
+        names.set(id - 1, text);
+    }
+
+    private void readReadout(StringBuilder readout) throws IOException {
+        myTimeMillis_ += readVarint();
+        final int threadId = (int) readVarint();
+        final int callSiteId = (int) readVarint();
+        final int flags = myInput_.readUnsignedByte();
+        final String message = readText();
+        if (threadId != 0 && callSiteId != 0) {
+            readout.append("\nThread \"").append(myThreadNames_.get(threadId - 1)).append("\": ")
+                    .append(myCallSites_.get(callSiteId - 1)).append('\n');
+        }
+        readout.append(message);
+        if ((flags & BinaryLogEncoder.NEWLINE_FLAG) != 0) {
+            readout.append('\n');
+        }
+    }
+
+    private String readText() throws IOException {
+        final byte[] bytes = new byte[(int) readVarint()];
+        myInput_.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = myInput_.read();
+            if (b == -1) {
+                throw new EOFException("The log file ends in the middle of a record.");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in binary log file.");
+    }
+}
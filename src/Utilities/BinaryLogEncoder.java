@@ -0,0 +1,152 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Encodes readouts in the compact binary log file format used under
+ * {@link AppTester.LogFileFormat#BINARY}. Most of a text log is the same few
+ * thread names and call sites over and over, so these are written once, given
+ * a number, and referred to by number afterwards.
+ *
+ * A binary log file is a sequence of records, each starting with a type byte.
+ * Numbers are unsigned LEB128 varints and text is UTF-8 preceded by its length.
+ * <pre>
+ * SESSION     0x01 'A' 'T' 'L' 'B' version start-time-millis(8 bytes, big endian)
+ * THREAD_NAME 0x02 id length text
+ * CALL_SITE   0x03 id length text
+ * READOUT     0x04 millis-since-previous-readout thread-id call-site-id flags length message
+ * </pre>
+ * Zero bytes between records are padding left by a memory mapped log file
+ * that was never closed, and are skipped.
+ * Every file starts with a SESSION record, and a new one is written whenever
+ * the file is (re)opened. Each session has its own numbering. A thread id or
+ * call site id of zero means the readout has no header line. The flags hold
+ * the {@link Rank} importance in bits 0-1, an {@link ReadoutCondition#ERROR}
+ * bit in bit 2 and a trailing-newline bit in bit 3.
+ *
+ * Use {@link BinaryLogDecoder} to turn a binary log file back into text.
+ *
+ * @author johnmichaelreed2
+ */
+final class BinaryLogEncoder {
+
+    static final byte SESSION = 0x01;
+    static final byte THREAD_NAME = 0x02;
+    static final byte CALL_SITE = 0x03;
+    static final byte READOUT = 0x04;
+    static final byte[] MAGIC = {'A', 'T', 'L', 'B'};
+    static final byte VERSION = 1;
+    static final int RANK_MASK = 0x03;
+    static final int ERROR_FLAG = 0x04;
+    static final int NEWLINE_FLAG = 0x08;
+
+    private final HashMap<String, Integer> myThreadIds_ = new HashMap<>();
+    private final HashMap<String, Integer> myCallSiteIds_ = new HashMap<>();
+    private long myPreviousTimeMillis_;
+    private ByteBuffer myBytes_ = ByteBuffer.allocate(1024);
+
+    /**
+     * Which opening of the log file the current session was started for. See
+     * {@link LogFileHandle#getOpening() }.
+     */
+    private long mySessionOpening_ = -1;
+
+    /**
+     * Encodes one readout, preceded by a SESSION record if the log file has
+     * been (re)opened and by definitions of any new thread name or call site.
+     * Not thread safe.
+     *
+     * @param opening which opening of the log file the readout goes to.
+     * @param timeMillis when the readout happened.
+     * @return a buffer, ready to be read, that stays valid until the next call.
+     */
+    ByteBuffer encode(long opening, long timeMillis, String threadNameOrNull, String locationOrNull,
+            String message, boolean withNewline, ReadoutCondition condition, Rank severity) {
+        myBytes_.clear();
+        if (opening != mySessionOpening_) {
+            mySessionOpening_ = opening;
+            myThreadIds_.clear();
+            myCallSiteIds_.clear();
+            myPreviousTimeMillis_ = timeMillis;
+            ensureRoom(MAGIC.length + 10);
+            myBytes_.put(SESSION).put(MAGIC).put(VERSION).putLong(timeMillis);
+        }
+        int threadId = 0;
+        int callSiteId = 0;
+        if (threadNameOrNull != null && locationOrNull != null) {
+            threadId = intern(myThreadIds_, THREAD_NAME, threadNameOrNull);
+            callSiteId = intern(myCallSiteIds_, CALL_SITE, locationOrNull);
+        }
+        final long delta = Math.max(0, timeMillis - myPreviousTimeMillis_);
+        myPreviousTimeMillis_ = Math.max(myPreviousTimeMillis_, timeMillis);
+        int flags = severity.getImportance() & RANK_MASK;
+        if (condition == ReadoutCondition.ERROR) {
+            flags |= ERROR_FLAG;
+        }
+        if (withNewline) {
+            flags |= NEWLINE_FLAG;
+        }
+        ensureRoom(1 + 10 + 5 + 5 + 1);
+        myBytes_.put(READOUT);
+        putVarint(delta);
+        putVarint(threadId);
+        putVarint(callSiteId);
+        myBytes_.put((byte) flags);
+        putText(message);
+        myBytes_.flip();
+        return myBytes_;
+    }
+
+    /**
+     * @return the id of the text, first writing a definition record for it
+     * if it has not been seen in this session.
+     */
+    private int intern(HashMap<String, Integer> ids, byte recordType, String text) {
+        final Integer existing = ids.get(text);
+        if (existing != null) {
+            return existing;
+        }
+        final int id = ids.size() + 1; // zero means "none"
+        ids.put(text, id);
+        ensureRoom(1 + 5);
+        myBytes_.put(recordType);
+        putVarint(id);
+        putText(text);
+        return id;
+    }
+
+    private void putText(String text) {
+        ensureRoom(5 + ReadoutFormatter.maxUtf8Length(text, null));
+        // Leave room for the longest length prefix, then slide the text back.
+        final int lengthPosition = myBytes_.position();
+        final int textStart = lengthPosition + 5;
+        final int textEnd = ReadoutFormatter.putUtf8(text, null, myBytes_.array(), textStart);
+        final int textLength = textEnd - textStart;
+        putVarint(textLength);
+        final int shift = textStart - myBytes_.position();
+        if (shift > 0) {
+            System.arraycopy(myBytes_.array(), textStart, myBytes_.array(), myBytes_.position(), textLength);
+        }
+        myBytes_.position(textEnd - shift);
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            myBytes_.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        myBytes_.put((byte) value);
+    }
+
+    private void ensureRoom(int bytes) {
+        if (myBytes_.remaining() < bytes) {
+            final ByteBuffer bigger = ByteBuffer.allocate(Math.max(myBytes_.capacity() * 2, myBytes_.position() + bytes));
+            myBytes_.flip();
+            bigger.put(myBytes_);
+            myBytes_ = bigger;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package Utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link LogFileHandle} that keeps an append-mode channel open on the log
+ * file. Text is collected in a buffer and written out according to the
+ * {@link AppTester.FlushPolicy} in use, so that many readouts can share one
+ * write system call.
+ *
+ * @author johnmichaelreed2
+ */
+final class BufferedLogFileHandle extends LogFileHandle {
+
+    /**
+     * The size of the write buffer. Text that does not fit is written straight
+     * through.
+     */
+    private static final int BUFFER_CAPACITY = 64 * 1024;
+
+    private final ByteBuffer myBuffer_ = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+    private AppTester.FlushPolicy myFlushPolicy_ = AppTester.FlushPolicy.ALWAYS;
+    private int myFlushByteThreshold_ = 8 * 1024;
+
+    /**
+     * Runs periodic flushes under {@link AppTester.FlushPolicy#EVERY_T_MILLISECONDS},
+     * otherwise null.
+     */
+    private ScheduledExecutorService myFlusherOrNull_ = null;
+    private FileChannel myChannelOrNull_;
+
+    BufferedLogFileHandle(Path path) throws IOException {
+        super(path);
+        myChannelOrNull_ = openChannel(path);
+        rememberOpenedFile();
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    synchronized void setFlushPolicy(AppTester.FlushPolicy policy, int byteThreshold, long millisecondInterval) {
+        myFlushPolicy_ = policy;
+        myFlushByteThreshold_ = Math.min(byteThreshold, BUFFER_CAPACITY);
+        if (myFlusherOrNull_ != null) {
+            myFlusherOrNull_.shutdownNow();
+            myFlusherOrNull_ = null;
+        }
+        if (policy == AppTester.FlushPolicy.EVERY_T_MILLISECONDS) {
+            myFlusherOrNull_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread flusher = new Thread(r, "Log_Flusher");
+                    flusher.setDaemon(true);
+                    return flusher;
+                }
+            });
+            myFlusherOrNull_.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    tryFlush();
+                }
+            }, millisecondInterval, millisecondInterval, TimeUnit.MILLISECONDS);
+        }
+        if (policy == AppTester.FlushPolicy.ALWAYS) {
+            tryFlush();
+        }
+    }
+
+    @Override
+    synchronized boolean tryWrite(ByteBuffer bytes, boolean isImportantOrError) {
+        if (myChannelOrNull_ == null) {
+            return false;
+        }
+        try {
+            if (bytes.remaining() > myBuffer_.remaining()) {
+                flushBuffer();
+            }
+            if (bytes.remaining() > myBuffer_.remaining()) {
+                // Too big to ever fit, so write it straight through.
+                reopenIfReplaced();
+                writeFully(bytes);
+                return true;
+            }
+            myBuffer_.put(bytes);
+            if (shouldFlush(isImportantOrError)) {
+                flushBuffer();
+            }
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    private boolean shouldFlush(boolean isImportantOrError) {
+        switch (myFlushPolicy_) {
+            case EVERY_N_BYTES:
+                return myBuffer_.position() >= myFlushByteThreshold_;
+            case EVERY_T_MILLISECONDS:
+                return false; // the flusher thread takes care of it.
+            case ON_IMPORTANT_OR_ERROR:
+                return isImportantOrError;
+            default:
+                return true; // AppTester.FlushPolicy.ALWAYS
+        }
+    }
+
+    @Override
+    synchronized boolean tryFlush() {
+        if (myChannelOrNull_ == null) {
+            return false;
+        }
+        try {
+            flushBuffer();
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Only the flush holds the lock. Printing threads can go on filling the
+     * buffer while the channel is being forced.
+     */
+    @Override
+    boolean tryForce() {
+        final FileChannel channel;
+        synchronized (this) {
+            if (myChannelOrNull_ == null) {
+                return false;
+            }
+            try {
+                flushBuffer();
+            } catch (IOException ioe) {
+                return false;
+            }
+            channel = myChannelOrNull_;
+        }
+        try {
+            channel.force(false);
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (myBuffer_.position() == 0) {
+            return;
+        }
+        final long start = System.nanoTime();
+        reopenIfReplaced();
+        myBuffer_.flip();
+        try {
+            writeFully(myBuffer_);
+        } finally {
+            myBuffer_.clear();
+        }
+        AppTester.getMetricsRecorder().recordFlush(System.nanoTime() - start);
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            myChannelOrNull_.write(bytes);
+        }
+    }
+
+    /**
+     * Re-creates the log file if it was deleted or replaced since the last
+     * check.
+     */
+    private void reopenIfReplaced() throws IOException {
+        if (wasReplaced()) {
+            try {
+                myChannelOrNull_.close();
+            } catch (IOException ioe) {
+                // The old file is gone anyway.
+            }
+            myChannelOrNull_ = openChannel(getPath());
+            rememberOpenedFile();
+        }
+    }
+
+    @Override
+    synchronized void close() throws IOException {
+        if (myFlusherOrNull_ != null) {
+            myFlusherOrNull_.shutdownNow();
+            myFlusherOrNull_ = null;
+        }
+        if (myChannelOrNull_ != null) {
+            final FileChannel channel = myChannelOrNull_;
+            try {
+                flushBuffer();
+                if (isForcedOnClose()) {
+                    channel.force(false);
+                }
+            } finally {
+                myChannelOrNull_ = null;
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import java.lang.StackWalker.StackFrame;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * The location of a print statement in the source code, such as
+ * "PackageName.ClassName.method(ClassName.java:291)".
+ *
+ * Call sites are found with a lazy {@link StackWalker} that stops at the frame
+ * it needs instead of materializing the whole stack trace, and each call site
+ * is formatted only once and then cached, keyed by its class, method and
+ * bytecode index.
+ *
+ * Each call site also keeps the state of its rate limit, a token bucket kept
+ * as the single time at which the bucket will be full again (the "generic
+ * cell rate algorithm"), so checking the limit is one compare and set with no
+ * locks and no allocation.
+ *
+ * Each call site also caches the debug level of its class from the
+ * {@link LevelTree}, stamped with the tree's generation, in a single volatile
+ * long.
+ *
+ * @author johnmichaelreed2
+ */
+final class CallSite {
+
+    private static final StackWalker myStackWalker_ = StackWalker.getInstance();
+
+    /**
+     * Identifies a call site. Lookups reuse a thread local instance so that a
+     * cache hit does not allocate a key.
+     */
+    private static final class Key {
+
+        String className_;
+        String methodName_;
+        int byteCodeIndex_;
+
+        Key set(StackFrame frame) {
+            className_ = frame.getClassName();
+            methodName_ = frame.getMethodName();
+            byteCodeIndex_ = frame.getByteCodeIndex();
+            return this;
+        }
+
+        Key copy() {
+            final Key copy = new Key();
+            copy.className_ = className_;
+            copy.methodName_ = methodName_;
+            copy.byteCodeIndex_ = byteCodeIndex_;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return (className_.hashCode() * 31 + methodName_.hashCode()) * 31 + byteCodeIndex_;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) other;
+            return byteCodeIndex_ == that.byteCodeIndex_
+                    && className_.equals(that.className_)
+                    && methodName_.equals(that.methodName_);
+        }
+    }
+
+    private static final ConcurrentHashMap<Key, CallSite> myCache_ = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Key> myProbeKey_ = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    /**
+     * The stack frame walker for each depth, created on demand.
+     */
+    private static final ConcurrentHashMap<Integer, Function<Stream<StackFrame>, StackFrame>> myWalkers_
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Stands in for a call site below the bottom of the stack.
+     */
+    private static final CallSite UNKNOWN = new CallSite("", "Unknown Source");
+
+    private static final Rank[] RANKS = Rank.values();
+
+    private static final AtomicLongFieldUpdater<CallSite> myAllowedAtUpdater_
+            = AtomicLongFieldUpdater.newUpdater(CallSite.class, "myAllowedAtNanos_");
+    private static final AtomicLongFieldUpdater<CallSite> mySuppressedCountUpdater_
+            = AtomicLongFieldUpdater.newUpdater(CallSite.class, "mySuppressedCount_");
+    private static final AtomicLongFieldUpdater<CallSite> myLastSummaryUpdater_
+            = AtomicLongFieldUpdater.newUpdater(CallSite.class, "myLastSummaryNanos_");
+
+    private final String myClassName_;
+    private final String myLocation_;
+
+    /**
+     * When, in {@link System#nanoTime() } terms, the token bucket will be full
+     * again if no more readouts come.
+     */
+    private volatile long myAllowedAtNanos_;
+    private volatile long mySuppressedCount_ = 0;
+    private volatile long myLastSummaryNanos_;
+
+    /**
+     * The generation of the level tree in the high 32 bits, and in the low 32
+     * bits the ordinal plus one of the class's debug level, or 0 if it has
+     * none. -1 until the level is first looked up.
+     */
+    private volatile long myDebugLevel_ = -1;
+
+    private CallSite(String className, String location) {
+        myClassName_ = className;
+        myLocation_ = location;
+        myAllowedAtNanos_ = System.nanoTime();
+        myLastSummaryNanos_ = myAllowedAtNanos_;
+    }
+
+    /**
+     * @return the call site formatted the same way as
+     * {@link StackTraceElement#toString() }.
+     */
+    String getLocation() {
+        return myLocation_;
+    }
+
+    @Override
+    public String toString() {
+        return myLocation_;
+    }
+
+    /**
+     * @return the debug level of the call site's class or package, or null if
+     * the global debug level applies. Only looks in the tree when it has
+     * changed since the last time.
+     */
+    Rank getDebugLevelOrNull(LevelTree levelTree) {
+        final int generation = levelTree.getGeneration();
+        final long debugLevel = myDebugLevel_;
+        if ((int) (debugLevel >>> 32) == generation && debugLevel != -1) {
+            final int ordinalPlusOne = (int) debugLevel;
+            return (ordinalPlusOne == 0) ? null : RANKS[ordinalPlusOne - 1];
+        }
+        final Rank levelOrNull = levelTree.resolveOrNull(myClassName_);
+        myDebugLevel_ = ((long) generation << 32) | ((levelOrNull == null) ? 0 : levelOrNull.ordinal() + 1);
+        return levelOrNull;
+    }
+
+    /**
+     * Takes a token from this call site's bucket, if there is one.
+     *
+     * @param now the current {@link System#nanoTime() }.
+     * @param intervalNanos how long it takes for one token to come back.
+     * @param burstNanos how far ahead of the steady rate readouts may run,
+     * which is the interval times one less than the size of the bucket.
+     * @return true if the readout fits in the rate limit.
+     */
+    boolean tryAcquire(long now, long intervalNanos, long burstNanos) {
+        while (true) {
+            final long allowedAt = myAllowedAtNanos_;
+            final long start = (allowedAt - now < 0) ? now : allowedAt;
+            if (start - now > burstNanos) {
+                return false;
+            }
+            if (myAllowedAtUpdater_.compareAndSet(this, allowedAt, start + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Counts a readout that did not fit in the rate limit.
+     */
+    void countSuppressed() {
+        mySuppressedCountUpdater_.incrementAndGet(this);
+    }
+
+    boolean hasSuppressed() {
+        return mySuppressedCount_ != 0;
+    }
+
+    /**
+     * @return the number of readouts suppressed since the last call, which
+     * resets it to zero.
+     */
+    long takeSuppressedCount() {
+        return mySuppressedCountUpdater_.getAndSet(this, 0);
+    }
+
+    /**
+     * @return true for just one caller per period, once the period has passed
+     * since the last time this returned true.
+     */
+    boolean isSummaryDue(long now, long periodNanos) {
+        final long lastSummary = myLastSummaryNanos_;
+        return now - lastSummary >= periodNanos
+                && myLastSummaryUpdater_.compareAndSet(this, lastSummary, now);
+    }
+
+    /**
+     * @return every call site found so far.
+     */
+    static Collection<CallSite> all() {
+        return myCache_.values();
+    }
+
+    /**
+     * Finds a call site on the current thread's stack.
+     *
+     * @param stackTraceStart the position of the call site on the stack, in
+     * the same terms as an index into {@link Thread#getStackTrace() } taken by
+     * the method calling this one.
+     * @return the call site, or a call site with the location "Unknown Source"
+     * if the stack is not that deep.
+     */
+    static CallSite find(final int stackTraceStart) {
+        final StackFrame frame = myStackWalker_.walk(walkerFor(stackTraceStart));
+        if (frame == null) {
+            return UNKNOWN;
+        }
+        final Key probe = myProbeKey_.get().set(frame);
+        final CallSite cached = myCache_.get(probe);
+        if (cached != null) {
+            return cached;
+        }
+        final CallSite created = new CallSite(frame.getClassName(), frame.toStackTraceElement().toString());
+        final CallSite raced = myCache_.putIfAbsent(probe.copy(), created);
+        return raced != null ? raced : created;
+    }
+
+    /**
+     * Frame zero of the walk is {@link #find(int) } itself, which lines up with
+     * frame zero of {@link Thread#getStackTrace() } being getStackTrace.
+     */
+    private static Function<Stream<StackFrame>, StackFrame> walkerFor(final int stackTraceStart) {
+        Function<Stream<StackFrame>, StackFrame> walker = myWalkers_.get(stackTraceStart);
+        if (walker == null) {
+            walker = new Function<Stream<StackFrame>, StackFrame>() {
+                @Override
+                public StackFrame apply(Stream<StackFrame> frames) {
+                    return frames.skip(stackTraceStart).findFirst().orElse(null);
+                }
+            };
+            myWalkers_.putIfAbsent(stackTraceStart, walker);
+        }
+        return walker;
+    }
+}
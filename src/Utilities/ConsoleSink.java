@@ -0,0 +1,47 @@
+package Utilities;
+
+import Utilities.AppTester.DefaultPrintStream;
+import Utilities.AppTester.ReadoutCondition;
+import java.io.PrintStream;
+
+/**
+ * A {@link LogSink} that prints readouts to standard out or standard error,
+ * chosen the same way the terminal readouts are, by
+ * {@link AppTester#getMyDefaultPrintStream() }. Use it in place of the
+ * terminal to keep a slow terminal or pipe from holding up the application:
+ * <pre>
+ * AppTester.setPrintToTerminal(false);
+ * AppTester.addSink(new ConsoleSink(), AppTester.NORMAL, 8192, AppTester.FullBufferPolicy.DROP_NEWEST);
+ * </pre>
+ *
+ * @author johnmichaelreed2
+ */
+public class ConsoleSink implements LogSink {
+
+    private PrintStream myLastStreamOrNull_ = null;
+
+    @Override
+    public void write(Readout readout) {
+        final DefaultPrintStream target = AppTester.getMyDefaultPrintStream();
+        final PrintStream stream;
+        if (target == DefaultPrintStream.ONLY_STANDARD_ERROR
+                || (target == DefaultPrintStream.EITHER_STD_OUT_OR_STD_ERROR
+                && readout.getCondition() == ReadoutCondition.ERROR)) {
+            stream = System.err;
+        } else {
+            stream = System.out;
+        }
+        if (myLastStreamOrNull_ != null && myLastStreamOrNull_ != stream) {
+            myLastStreamOrNull_.flush(); // keeps the two streams in order.
+        }
+        stream.print(readout.getText());
+        myLastStreamOrNull_ = stream;
+    }
+
+    @Override
+    public void flush() {
+        if (myLastStreamOrNull_ != null) {
+            myLastStreamOrNull_.flush();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package Utilities;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the polls and responses of background events in parallel, so a slow
+ * event does not hold up the others, and the "Event_Checker" thread only
+ * keeps time. Each poll or response runs on a virtual thread of its own where
+ * the JVM has them, and otherwise on a pool that starts threads as they are
+ * needed and lets them go after a minute idle.
+ *
+ * Each event may only have so many polls and responses running at once. A
+ * poll that comes due while its event is at the limit is skipped, and a
+ * response waits for a run of the same event to finish. A run that goes on
+ * past the time limit is reported once, with its stack trace. Both count as
+ * overruns.
+ *
+ * Runs are never interrupted. An interrupt that lands while the run is
+ * writing to the log file would close the log file's channel, and every
+ * readout after it would be lost.
+ *
+ * @author johnmichaelreed2
+ */
+final class EventWorkers {
+
+    /**
+     * How many polls and responses of one event are running, plus the
+     * response waiting for one of them to finish, if any.
+     */
+    static final class Gate {
+
+        private final String myName_;
+        private int myRunning_ = 0;
+        private Runnable myWaitingOrNull_ = null;
+
+        /**
+         * Whether a skipped poll was reported since the event last stopped
+         * running, so a stuck event is reported once and not once per poll.
+         */
+        private boolean isSkipReported_ = false;
+
+        /**
+         * @param name what to call the event in reports, such as its class
+         * name.
+         */
+        Gate(String name) {
+            myName_ = name;
+        }
+    }
+
+    /**
+     * One poll or response.
+     */
+    private final class Run implements Runnable {
+
+        private final Gate myGate_;
+        private final Runnable myTask_;
+        private volatile long myStartNanos_;
+
+        /**
+         * The thread running it, or null once it is done. Guarded by the run,
+         * so the stack trace of the next run on the same thread is not taken
+         * for it.
+         */
+        private Thread myThreadOrNull_ = null;
+        private boolean isReported_ = false; // checking thread only.
+
+        Run(Gate gate, Runnable task) {
+            myGate_ = gate;
+            myTask_ = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                myThreadOrNull_ = Thread.currentThread();
+            }
+            myStartNanos_ = System.nanoTime();
+            myRuns_.add(this);
+            try {
+                myTask_.run();
+            } catch (Throwable t) {
+                // Like a scheduled executor, the exception goes no further.
+            } finally {
+                myRuns_.remove(this);
+                synchronized (this) {
+                    myThreadOrNull_ = null;
+                }
+                finish(myGate_);
+            }
+        }
+    }
+
+    private final ExecutorService myExecutor_;
+    private final Set<Run> myRuns_ = ConcurrentHashMap.newKeySet();
+    private final LongAdder myOverruns_ = new LongAdder();
+    private volatile int myConcurrencyLimit_;
+    private volatile long myTimeoutNanos_;
+
+    /**
+     * @param concurrencyLimit how many polls and responses of one event may
+     * run at once.
+     * @param timeoutMilliseconds how long a poll or response may run, or 0 for
+     * no limit.
+     */
+    EventWorkers(int concurrencyLimit, long timeoutMilliseconds) {
+        myConcurrencyLimit_ = concurrencyLimit;
+        myTimeoutNanos_ = TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+        ExecutorService executor;
+        try {
+            // Java 21 and up. Looked up by name so AppTester still runs on older JVMs.
+            final Method newVirtualThreadPerTaskExecutor
+                    = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // A pool the size of the machine would let a few blocked events hold up the rest.
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger myThreadCount_ = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "Event_Worker_" + myThreadCount_.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        myExecutor_ = executor;
+    }
+
+    void setConcurrencyLimit(int concurrencyLimit) {
+        myConcurrencyLimit_ = concurrencyLimit;
+    }
+
+    void setTimeoutMilliseconds(long timeoutMilliseconds) {
+        myTimeoutNanos_ = TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+    }
+
+    long getOverrunCount() {
+        return myOverruns_.sum();
+    }
+
+    /**
+     * Starts a poll, unless the event is already running as often as it may.
+     */
+    void submitPoll(Gate gate, Runnable poll) {
+        final boolean isFirstSkip;
+        synchronized (gate) {
+            if (gate.myRunning_ < myConcurrencyLimit_) {
+                ++gate.myRunning_;
+                isFirstSkip = false;
+            } else {
+                myOverruns_.increment();
+                isFirstSkip = !gate.isSkipReported_;
+                gate.isSkipReported_ = true;
+                if (!isFirstSkip) {
+                    return;
+                }
+            }
+        }
+        if (isFirstSkip) {
+            AppTester.reportBackgroundEventOverrun("Background event " + gate.myName_
+                    + " is still running, so polls for it are being skipped", null);
+        } else {
+            execute(new Run(gate, poll));
+        }
+    }
+
+    /**
+     * Starts a response, or has it wait for a run of the same event to
+     * finish.
+     *
+     * @return false if the workers have been stopped.
+     */
+    boolean trySubmitResponse(Gate gate, Runnable response) {
+        if (myExecutor_.isShutdown()) {
+            return false;
+        }
+        synchronized (gate) {
+            if (gate.myRunning_ >= myConcurrencyLimit_) {
+                gate.myWaitingOrNull_ = response;
+                return true;
+            }
+            ++gate.myRunning_;
+        }
+        execute(new Run(gate, response));
+        return true;
+    }
+
+    private void finish(Gate gate) {
+        Runnable waitingOrNull = null;
+        synchronized (gate) {
+            --gate.myRunning_;
+            if (gate.myWaitingOrNull_ != null && gate.myRunning_ < myConcurrencyLimit_) {
+                waitingOrNull = gate.myWaitingOrNull_;
+                gate.myWaitingOrNull_ = null;
+                ++gate.myRunning_;
+            }
+            if (gate.myRunning_ == 0) {
+                gate.isSkipReported_ = false;
+            }
+        }
+        if (waitingOrNull != null) {
+            execute(new Run(gate, waitingOrNull));
+        }
+    }
+
+    private void execute(Run run) {
+        try {
+            myExecutor_.execute(run);
+        } catch (RejectedExecutionException ree) {
+            finish(run.myGate_); // shut down.
+        }
+    }
+
+    /**
+     * Reports the polls and responses that have run past the time limit.
+     * Called at regular intervals on the "Event_Checker" thread.
+     */
+    void checkTimeouts() {
+        final long timeoutNanos = myTimeoutNanos_;
+        if (timeoutNanos == 0) {
+            return;
+        }
+        final long now = System.nanoTime();
+        for (Run run : myRuns_) {
+            if (run.isReported_ || now - run.myStartNanos_ <= timeoutNanos) {
+                continue;
+            }
+            final StackTraceElement[] stackTrace;
+            synchronized (run) {
+                if (run.myThreadOrNull_ == null) {
+                    continue; // just finished.
+                }
+                stackTrace = run.myThreadOrNull_.getStackTrace();
+            }
+            run.isReported_ = true;
+            myOverruns_.increment();
+            AppTester.reportBackgroundEventOverrun("Background event " + run.myGate_.myName_ + " ran for "
+                    + TimeUnit.NANOSECONDS.toMillis(now - run.myStartNanos_) + " ms, over its limit of "
+                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms, and is still running", stackTrace);
+        }
+    }
+
+    /**
+     * Starts no more polls and responses. Those under way finish.
+     */
+    void stop() {
+        myExecutor_.shutdown();
+    }
+}
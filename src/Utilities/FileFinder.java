@@ -34,20 +34,36 @@ public class FileFinder {
      */
     private static int mySearchDepth_ = 6;
 
-    static {
-        AppTester.check(CLASSPATH_SEPARATOR != null, "Null path separator");
-        AppTester.check(HOME_DIRECTORY != null, "Null home directory");
-        AppTester.check(WORKING_DIRECTORY != null, "Null current user directory");
-        if (System.getProperty("os.name").toLowerCase().contains("win")) {
-            // It's Windows. Make sure the file seperator is correct.
-            AppTester.check(FILE_SEPARATOR.equals("" + WINDOWS_DIRECTORY_SEPARATOR));
-            AppTester.check(CLASSPATH_SEPARATOR.equals("" + WINDOWS_CLASSPATH_SEPARATOR));
+    /**
+     * Makes sure the system properties above make sense. The checks run the
+     * first time this class is actually used to search for a file, not when
+     * it is loaded, so reading one of the constants above costs nothing.
+     */
+    private static final class SystemPropertyCheck {
+
+        static {
+            AppTester.check(CLASSPATH_SEPARATOR != null, "Null path separator");
+            AppTester.check(HOME_DIRECTORY != null, "Null home directory");
+            AppTester.check(WORKING_DIRECTORY != null, "Null current user directory");
+            if (System.getProperty("os.name").toLowerCase().contains("win")) {
+                // It's Windows. Make sure the file seperator is correct.
+                AppTester.check(FILE_SEPARATOR.equals("" + WINDOWS_DIRECTORY_SEPARATOR));
+                AppTester.check(CLASSPATH_SEPARATOR.equals("" + WINDOWS_CLASSPATH_SEPARATOR));
+            }
+            AppTester.check(FILE_SEPARATOR.equals(File.separator));
+            AppTester.check(CLASSPATH_SEPARATOR.equals(File.pathSeparator));
+        }
+
+        /**
+         * Runs the checks, once.
+         */
+        static void run() {
+            // Loading this class is what runs the checks.
         }
-        AppTester.check(FILE_SEPARATOR.equals(File.separator));
-        AppTester.check(CLASSPATH_SEPARATOR.equals(File.pathSeparator));
     }
 
     public static String getParentDirPath(String fileOrDirPath) {
+        SystemPropertyCheck.run();
         boolean endsWithSlash = fileOrDirPath.endsWith(File.separator);
         return fileOrDirPath.substring(0, fileOrDirPath.lastIndexOf(File.separatorChar,
                 endsWithSlash ? fileOrDirPath.length() - 2 : fileOrDirPath.length() - 1));
@@ -160,6 +176,7 @@ public class FileFinder {
      * @return null on failure non-null on success.
      */
     public static String tryFindFileWhoseNameBeginsWith(final String file_name, final String searchDirectory) {
+        SystemPropertyCheck.run();
         final Path startingDir = Paths.get(searchDirectory); //Paths.get(WORKING_DIRECTORY);
         Finder finder = new Finder(file_name + "*");
         try {
@@ -214,6 +231,7 @@ public class FileFinder {
      * @return null on failure, non-null on success.
      */
     public static Path tryFindAbsolutePathOfFileWhoseNameIs(final String file_name, final String base_directory) {
+        SystemPropertyCheck.run();
         AppTester.check(file_name != null, "No null inputs");
         AppTester.check(base_directory != null, "No null inputs");
 
@@ -0,0 +1,52 @@
+package Utilities;
+
+import Utilities.AppTester.LogFileFormat;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link LogSink} that appends readouts to a file of its own, as text or as
+ * JSON Lines. Readouts are buffered and written out each time the sink's
+ * queue runs empty, so a busy sink makes few, large writes.
+ *
+ * @author johnmichaelreed2
+ */
+public class FileSink implements LogSink {
+
+    private final LogFileFormat myFormat_;
+    private final BufferedLogFileHandle myFile_;
+
+    /**
+     * Opens the file for appending, creating it if need be.
+     *
+     * @param format {@link LogFileFormat#TEXT} or
+     * {@link LogFileFormat#JSON_LINES}.
+     */
+    public FileSink(Path file, LogFileFormat format) throws IOException {
+        AppTester.check(file != null, "No null inputs");
+        AppTester.check(format == LogFileFormat.TEXT || format == LogFileFormat.JSON_LINES,
+                "A file sink writes text or JSON Lines.");
+        myFormat_ = format;
+        myFile_ = new BufferedLogFileHandle(file);
+        myFile_.setFlushPolicy(AppTester.FlushPolicy.EVERY_N_BYTES, Integer.MAX_VALUE, 0);
+    }
+
+    @Override
+    public void write(Readout readout) throws IOException {
+        if (!myFile_.tryWrite(ReadoutFormatter.get().encode(readout, myFormat_, AppTester.ls), false)) {
+            throw new IOException("Could not write to " + myFile_.getPath());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!myFile_.tryFlush()) {
+            throw new IOException("Could not flush " + myFile_.getPath());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        myFile_.close();
+    }
+}
@@ -0,0 +1,102 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent readouts of every rank in memory, whether or not they
+ * are printed or logged, so that they can be written to the log file when
+ * something goes wrong. The slots are allocated up front and reused, and
+ * recording a readout only stores references to its parts. Nothing is
+ * formatted until the recording is dumped.
+ *
+ * @author johnmichaelreed2
+ */
+final class FlightRecorder {
+
+    /**
+     * One readout. Each slot has its own lock, which is almost never
+     * contended, since two printing threads only meet at the same slot when
+     * the ring wraps around between them.
+     */
+    private static final class Slot {
+
+        /**
+         * The readout number, or -1 if the slot was never used.
+         */
+        private long mySequence_ = -1;
+        private long myEpochMillis_;
+        private String myThreadNameOrNull_;
+        private String myLocationOrNull_;
+        private String myMessage_;
+        private Object[] myKeyValuesOrNull_;
+        private boolean myWithNewline_;
+        private ReadoutCondition myCondition_;
+        private Rank mySeverity_;
+    }
+
+    private final Slot[] mySlots_;
+
+    /**
+     * The number of the next readout. It goes in slot number % capacity.
+     */
+    private final AtomicLong myNextSequence_ = new AtomicLong();
+
+    /**
+     * @param capacity how many readouts to keep.
+     */
+    FlightRecorder(int capacity) {
+        mySlots_ = new Slot[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            mySlots_[i] = new Slot();
+        }
+    }
+
+    int getCapacity() {
+        return mySlots_.length;
+    }
+
+    void record(String threadNameOrNull, String locationOrNull, String message,
+            Object[] keyValuesOrNull, boolean withNewline, ReadoutCondition condition, Rank severity) {
+        final long sequence = myNextSequence_.getAndIncrement();
+        final Slot slot = mySlots_[(int) (sequence % mySlots_.length)];
+        synchronized (slot) {
+            if (slot.mySequence_ > sequence) {
+                return; // a thread that came later already took the slot.
+            }
+            slot.mySequence_ = sequence;
+            slot.myEpochMillis_ = System.currentTimeMillis();
+            slot.myThreadNameOrNull_ = threadNameOrNull;
+            slot.myLocationOrNull_ = locationOrNull;
+            slot.myMessage_ = message;
+            slot.myKeyValuesOrNull_ = keyValuesOrNull;
+            slot.myWithNewline_ = withNewline;
+            slot.myCondition_ = condition;
+            slot.mySeverity_ = severity;
+        }
+    }
+
+    /**
+     * @return the readouts kept, oldest first. Readouts that were being
+     * recorded at the time may be missing.
+     */
+    List<Readout> getReadouts() {
+        final long next = myNextSequence_.get();
+        final long first = Math.max(0, next - mySlots_.length);
+        final ArrayList<Readout> readouts = new ArrayList<>((int) (next - first));
+        for (long sequence = first; sequence < next; ++sequence) {
+            final Slot slot = mySlots_[(int) (sequence % mySlots_.length)];
+            synchronized (slot) {
+                if (slot.mySequence_ == sequence) {
+                    readouts.add(new Readout(slot.myEpochMillis_, slot.myThreadNameOrNull_,
+                            slot.myLocationOrNull_, slot.myMessage_, slot.myKeyValuesOrNull_,
+                            slot.myWithNewline_, slot.myCondition_, slot.mySeverity_));
+                }
+            }
+        }
+        return readouts;
+    }
+}
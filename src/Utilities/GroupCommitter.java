@@ -0,0 +1,146 @@
+package Utilities;
+
+/**
+ * Makes log file readouts durable in batches. Every readout written to the log
+ * file takes a ticket, and a daemon thread named "Log_Committer" forces the
+ * log file to the storage device every few milliseconds, or sooner once
+ * enough readouts are waiting, so that one force covers many readouts.
+ * Threads that need a readout to be durable wait for the force that covers
+ * its ticket, and learn whether that force succeeded.
+ *
+ * The committer thread is never interrupted, since that would close the
+ * channel it is forcing.
+ *
+ * @author johnmichaelreed2
+ */
+final class GroupCommitter {
+
+    private final long myIntervalMilliseconds_;
+    private final int myRecordCount_;
+    private final Thread myCommitterThread_;
+
+    /**
+     * The last ticket handed out. Guarded by this.
+     */
+    private long myWritten_ = 0;
+
+    /**
+     * The last ticket known to be on the storage device. Guarded by this.
+     */
+    private long myForced_ = 0;
+
+    /**
+     * The last ticket a force was tried for, whether or not it succeeded.
+     * Guarded by this.
+     */
+    private long myAttempted_ = 0;
+
+    private boolean isStopped_ = false;
+
+    /**
+     * @param intervalMilliseconds the longest a written readout waits for a
+     * force.
+     * @param recordCount the number of waiting readouts that triggers a force
+     * right away.
+     */
+    GroupCommitter(long intervalMilliseconds, int recordCount) {
+        myIntervalMilliseconds_ = intervalMilliseconds;
+        myRecordCount_ = recordCount;
+        myCommitterThread_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitUntilStopped();
+            }
+        }, "Log_Committer");
+        myCommitterThread_.setDaemon(true);
+        myCommitterThread_.start();
+    }
+
+    /**
+     * Must be called after a readout has been handed to the log file.
+     *
+     * @return the ticket to wait on for the readout to be durable.
+     */
+    synchronized long recordWritten() {
+        ++myWritten_;
+        if (myWritten_ - myAttempted_ == 1 || myWritten_ - myAttempted_ >= myRecordCount_) {
+            notifyAll(); // starts the interval, or cuts it short.
+        }
+        return myWritten_;
+    }
+
+    /**
+     * Waits until a force that covers the readout with the ticket has been
+     * tried, or the committer is stopped.
+     *
+     * @return false if the readout is not known to be on the storage device,
+     * because the force failed or never happened.
+     */
+    synchronized boolean awaitForced(long ticket) {
+        try {
+            while (myAttempted_ < ticket && !isStopped_) {
+                wait();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return myForced_ >= ticket;
+    }
+
+    private void commitUntilStopped() {
+        while (true) {
+            final long target;
+            synchronized (this) {
+                try {
+                    while (myWritten_ == myAttempted_ && !isStopped_) {
+                        wait();
+                    }
+                    final long deadline = System.currentTimeMillis() + myIntervalMilliseconds_;
+                    long remaining = myIntervalMilliseconds_;
+                    while (myWritten_ - myAttempted_ < myRecordCount_ && remaining > 0 && !isStopped_) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException ie) {
+                    // Never interrupted on purpose. Force what there is.
+                }
+                if (isStopped_) {
+                    return;
+                }
+                target = myWritten_;
+            }
+            final long start = System.nanoTime();
+            final boolean isForced = AppTester.tryForceLogFileHandle();
+            if (isForced) {
+                AppTester.getMetricsRecorder().recordForce(System.nanoTime() - start);
+            } else {
+                AppTester.getMetricsRecorder().recordFailedForce();
+            }
+            synchronized (this) {
+                if (isForced) {
+                    myForced_ = target; // a force covers everything written before it, failed batches too.
+                }
+                myAttempted_ = target;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops the committer and lets every waiting thread go. Whatever is still
+     * unforced is forced when the log file is closed.
+     */
+    void stop() {
+        synchronized (this) {
+            isStopped_ = true;
+            notifyAll();
+        }
+        if (Thread.currentThread() != myCommitterThread_) {
+            try {
+                myCommitterThread_.join(1000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
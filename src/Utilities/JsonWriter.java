@@ -0,0 +1,315 @@
+package Utilities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes JSON as UTF-8 straight into a reusable byte array, one token at a
+ * time. Strings are escaped as they are copied in, numbers are written digit
+ * by digit, and nothing is looked at through reflection, so writing a record
+ * allocates nothing once the array has grown to fit it, other than what
+ * toString() allocates for values that are not strings, numbers or booleans.
+ *
+ * Commas are put in automatically, so a record is written as
+ * <pre>
+ * json.reset().beginObject().name("a").value(1).name("b").value("x").endObject();
+ * </pre>
+ *
+ * @author johnmichaelreed2
+ */
+final class JsonWriter {
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private byte[] myBytes_ = new byte[1024];
+    private ByteBuffer myWrapper_ = ByteBuffer.wrap(myBytes_);
+    private int myLength_ = 0;
+
+    /**
+     * True if the next value or name follows another one at the same level
+     * and needs a comma in front.
+     */
+    private boolean needsComma_ = false;
+
+    /**
+     * Throws away what has been written.
+     *
+     * @return this writer.
+     */
+    JsonWriter reset() {
+        myLength_ = 0;
+        needsComma_ = false;
+        return this;
+    }
+
+    JsonWriter beginObject() {
+        separate();
+        ensureRoom(1);
+        myBytes_[myLength_++] = '{';
+        needsComma_ = false;
+        return this;
+    }
+
+    JsonWriter endObject() {
+        ensureRoom(1);
+        myBytes_[myLength_++] = '}';
+        needsComma_ = true;
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of an object.
+     */
+    JsonWriter name(CharSequence name) {
+        separate();
+        putString(name);
+        ensureRoom(1);
+        myBytes_[myLength_++] = ':';
+        needsComma_ = false;
+        return this;
+    }
+
+    JsonWriter value(CharSequence textOrNull) {
+        separate();
+        if (textOrNull == null) {
+            putAscii("null");
+        } else {
+            putString(textOrNull);
+        }
+        needsComma_ = true;
+        return this;
+    }
+
+    JsonWriter value(long number) {
+        separate();
+        putLong(number);
+        needsComma_ = true;
+        return this;
+    }
+
+    /**
+     * Writes a number, or a string for NaN and the infinities, which JSON
+     * has no numbers for.
+     */
+    JsonWriter value(double number) {
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return value(Double.toString(number));
+        }
+        separate();
+        putAscii(Double.toString(number));
+        needsComma_ = true;
+        return this;
+    }
+
+    JsonWriter value(boolean truth) {
+        separate();
+        putAscii(truth ? "true" : "false");
+        needsComma_ = true;
+        return this;
+    }
+
+    /**
+     * Writes numbers as numbers, booleans as booleans, null as null and
+     * anything else as the string its toString() returns.
+     */
+    JsonWriter value(Object valueOrNull) {
+        if (valueOrNull == null) {
+            return value((CharSequence) null);
+        } else if (valueOrNull instanceof CharSequence) {
+            return value((CharSequence) valueOrNull);
+        } else if (valueOrNull instanceof Long || valueOrNull instanceof Integer
+                || valueOrNull instanceof Short || valueOrNull instanceof Byte) {
+            return value(((Number) valueOrNull).longValue());
+        } else if (valueOrNull instanceof Double || valueOrNull instanceof Float) {
+            return value(((Number) valueOrNull).doubleValue());
+        } else if (valueOrNull instanceof Boolean) {
+            return value(((Boolean) valueOrNull).booleanValue());
+        } else {
+            return value(String.valueOf(valueOrNull));
+        }
+    }
+
+    /**
+     * Writes a time as an ISO 8601 string in UTC, such as
+     * "2014-08-06T16:00:22.123Z".
+     */
+    JsonWriter timestamp(long epochMillis) {
+        separate();
+        final long days = Math.floorDiv(epochMillis, 86400000L);
+        final long millisOfDay = Math.floorMod(epochMillis, 86400000L);
+        // Converts days since 1970-01-01 to a date in the proleptic Gregorian
+        // calendar, counting in 400 year eras that start on March 1st.
+        final long z = days + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final long dayOfEra = z - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        ensureRoom(32);
+        myBytes_[myLength_++] = '"';
+        putDigits(year, 4);
+        myBytes_[myLength_++] = '-';
+        putDigits(month, 2);
+        myBytes_[myLength_++] = '-';
+        putDigits(day, 2);
+        myBytes_[myLength_++] = 'T';
+        putDigits(millisOfDay / 3600000, 2);
+        myBytes_[myLength_++] = ':';
+        putDigits(millisOfDay / 60000 % 60, 2);
+        myBytes_[myLength_++] = ':';
+        putDigits(millisOfDay / 1000 % 60, 2);
+        myBytes_[myLength_++] = '.';
+        putDigits(millisOfDay % 1000, 3);
+        myBytes_[myLength_++] = 'Z';
+        myBytes_[myLength_++] = '"';
+        needsComma_ = true;
+        return this;
+    }
+
+    /**
+     * Ends a JSON Lines record.
+     */
+    JsonWriter newline(String lineSeparator) {
+        putAscii(lineSeparator);
+        needsComma_ = false;
+        return this;
+    }
+
+    /**
+     * @return what has been written, ready to be read. Stays valid until the
+     * next call to any other method.
+     */
+    ByteBuffer toByteBuffer() {
+        myWrapper_.clear();
+        myWrapper_.limit(myLength_);
+        return myWrapper_;
+    }
+
+    private void separate() {
+        if (needsComma_) {
+            ensureRoom(1);
+            myBytes_[myLength_++] = ',';
+        }
+    }
+
+    private void ensureRoom(int bytes) {
+        if (myBytes_.length - myLength_ < bytes) {
+            final byte[] bigger = new byte[Math.max(myLength_ + bytes, 2 * myBytes_.length)];
+            System.arraycopy(myBytes_, 0, bigger, 0, myLength_);
+            myBytes_ = bigger;
+            myWrapper_ = ByteBuffer.wrap(myBytes_);
+        }
+    }
+
+    private void putAscii(String text) {
+        ensureRoom(text.length());
+        for (int i = 0; i < text.length(); ++i) {
+            myBytes_[myLength_++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a number with at least the given number of digits, zero padded.
+     * The number must not be negative.
+     */
+    private void putDigits(long number, int digits) {
+        long divisor = 1;
+        for (int i = 1; i < digits || divisor <= number / 10; ++i) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            myBytes_[myLength_++] = (byte) ('0' + number / divisor % 10);
+        }
+    }
+
+    private void putLong(long number) {
+        if (number == Long.MIN_VALUE) {
+            putAscii("-9223372036854775808");
+            return;
+        }
+        ensureRoom(20);
+        if (number < 0) {
+            myBytes_[myLength_++] = '-';
+            number = -number;
+        }
+        putDigits(number, 1);
+    }
+
+    /**
+     * Writes a quoted string, escaping what JSON requires to be escaped plus
+     * the line and paragraph separators, and encoding the rest as UTF-8.
+     */
+    private void putString(CharSequence text) {
+        final int length = text.length();
+        ensureRoom(6 * length + 2); // an escaped control char takes 6 bytes.
+        final byte[] bytes = myBytes_;
+        int position = myLength_;
+        bytes[position++] = '"';
+        for (int i = 0; i < length; ++i) {
+            final char c = text.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    bytes[position++] = '\\';
+                }
+                bytes[position++] = (byte) c;
+            } else if (c < 0x20) {
+                bytes[position++] = '\\';
+                switch (c) {
+                    case '\n':
+                        bytes[position++] = 'n';
+                        break;
+                    case '\r':
+                        bytes[position++] = 'r';
+                        break;
+                    case '\t':
+                        bytes[position++] = 't';
+                        break;
+                    case '\b':
+                        bytes[position++] = 'b';
+                        break;
+                    case '\f':
+                        bytes[position++] = 'f';
+                        break;
+                    default:
+                        position = putUnicodeEscape(bytes, position, c);
+                }
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c == 0x2028 || c == 0x2029) {
+                bytes[position++] = '\\';
+                position = putUnicodeEscape(bytes, position, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[position++] = '\\'; // an unpaired surrogate
+                position = putUnicodeEscape(bytes, position, c);
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        bytes[position++] = '"';
+        myLength_ = position;
+    }
+
+    /**
+     * Writes the "uXXXX" that follows a backslash.
+     */
+    private static int putUnicodeEscape(byte[] bytes, int position, char c) {
+        bytes[position++] = 'u';
+        bytes[position++] = HEX_DIGITS[(c >> 12) & 0xF];
+        bytes[position++] = HEX_DIGITS[(c >> 8) & 0xF];
+        bytes[position++] = HEX_DIGITS[(c >> 4) & 0xF];
+        bytes[position++] = HEX_DIGITS[c & 0xF];
+        return position;
+    }
+}
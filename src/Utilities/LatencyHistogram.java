@@ -0,0 +1,125 @@
+package Utilities;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long something took, in nanoseconds, without locks. Values below
+ * 16 get a bucket each, and every power of two above that is split into 8
+ * buckets, so a percentile is off by at most one eighth of its value. Each
+ * bucket is a {@link LongAdder}, so threads recording at the same time do not
+ * fight over a cache line.
+ *
+ * @author johnmichaelreed2
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values of 16 and up have a highest set bit from 4 to 62.
+     */
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+    private final LongAdder[] myBuckets_ = new LongAdder[BUCKETS];
+    private final LongAdder mySum_ = new LongAdder();
+    private final LongAccumulator myMax_ = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            myBuckets_[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanoseconds how long it took. Negative values count as 0.
+     */
+    void record(long nanoseconds) {
+        final long value = Math.max(0, nanoseconds);
+        myBuckets_[bucketOf(value)].increment();
+        mySum_.add(value);
+        myMax_.accumulate(value);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (highestBit - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that falls in a bucket.
+     */
+    private static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        final int highestBit = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        final long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        final int shift = highestBit - SUB_BUCKET_BITS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    long getCount() {
+        long count = 0;
+        for (LongAdder bucket : myBuckets_) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    long getMax() {
+        return myMax_.get();
+    }
+
+    double getMean() {
+        final long count = getCount();
+        return (count == 0) ? 0 : mySum_.sum() / (double) count;
+    }
+
+    /**
+     * Reads all the buckets once. Values recorded while reading may or may
+     * not be counted.
+     *
+     * @param percentiles such as 50 or 99.9.
+     * @return for each percentile, the highest value of the bucket it falls
+     * in, or 0 if nothing was recorded.
+     */
+    long[] getPercentiles(double... percentiles) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = myBuckets_[i].sum();
+            total += counts[i];
+        }
+        final long[] values = new long[percentiles.length];
+        if (total == 0) {
+            return values;
+        }
+        for (int p = 0; p < percentiles.length; ++p) {
+            final long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    values[p] = Math.min(highestValueIn(i), getMax());
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    void reset() {
+        for (LongAdder bucket : myBuckets_) {
+            bucket.reset();
+        }
+        mySum_.reset();
+        myMax_.reset();
+    }
+}
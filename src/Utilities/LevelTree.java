@@ -0,0 +1,90 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Debug levels for packages and classes. A class gets the level set for its
+ * own name, or else for the closest package around it, so "com.acme" covers
+ * "com.acme.net.Server" unless "com.acme.net" has a level of its own. A nested
+ * class such as "com.acme.net.Server$Handler" gets its own level, or else the
+ * level of the class around it.
+ *
+ * Looking up a level means trying every enclosing name, so it is not done per
+ * readout. Each {@link CallSite} caches what it looked up together with the
+ * generation it looked it up in, and every change to the tree starts a new
+ * generation.
+ *
+ * @author johnmichaelreed2
+ */
+final class LevelTree {
+
+    private final ConcurrentHashMap<String, Rank> myLevels_ = new ConcurrentHashMap<>();
+
+    /**
+     * Goes up by one with every change.
+     */
+    private volatile int myGeneration_ = 0;
+
+    int getGeneration() {
+        return myGeneration_;
+    }
+
+    /**
+     * @param name a package or class name, such as "com.acme" or
+     * "com.acme.net.Server".
+     * @param levelOrNull the level, or null to go back to the level of the
+     * enclosing package.
+     */
+    synchronized void set(String name, Rank levelOrNull) {
+        if (levelOrNull == null) {
+            myLevels_.remove(name);
+        } else {
+            myLevels_.put(name, levelOrNull);
+        }
+        ++myGeneration_;
+    }
+
+    /**
+     * @return the level of the class, or null if neither it nor any class or
+     * package around it has one.
+     */
+    Rank resolveOrNull(String className) {
+        if (myLevels_.isEmpty()) {
+            return null;
+        }
+        String name = className;
+        while (true) {
+            final Rank level = myLevels_.get(name);
+            if (level != null) {
+                return level;
+            }
+            final int separator = Math.max(name.lastIndexOf('$'), name.lastIndexOf('.'));
+            if (separator == -1) {
+                return null;
+            }
+            name = name.substring(0, separator);
+        }
+    }
+
+    /**
+     * @return the importance of the least important level in the tree, or
+     * {@link Integer#MAX_VALUE} if it is empty.
+     */
+    int getLowestImportance() {
+        int lowest = Integer.MAX_VALUE;
+        for (Rank level : myLevels_.values()) {
+            lowest = Math.min(lowest, level.getImportance());
+        }
+        return lowest;
+    }
+
+    /**
+     * @return every name with a level, sorted.
+     */
+    Map<String, Rank> getLevels() {
+        return new TreeMap<>(myLevels_);
+    }
+}
@@ -0,0 +1,225 @@
+package Utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An open handle on the log file. The path is resolved once and the file stays
+ * open, so writing a readout never involves a search of the working directory.
+ *
+ * If the log file is deleted or replaced (moved away by a log rotation tool,
+ * for example), the handle notices by comparing the file key of the path to
+ * the file key of the file it opened and re-creates the file. The comparison
+ * is a single stat, done at most once every
+ * {@link #IDENTITY_CHECK_INTERVAL_NANOS} nanoseconds.
+ *
+ * @author johnmichaelreed2
+ */
+abstract class LogFileHandle {
+
+    /**
+     * How often to check that the path still refers to the file we have open.
+     */
+    static final long IDENTITY_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Counts every time any log file is opened or re-created.
+     */
+    private static final AtomicLong myOpenings_ = new AtomicLong();
+
+    private final Path myPath_;
+
+    /**
+     * The file key (inode on Linux) of the file that is open, or null if the
+     * file system does not support file keys.
+     */
+    private Object myFileKeyOrNull_;
+    private long myLastIdentityCheckNanos_;
+    private volatile long myOpening_;
+    private volatile boolean isForcedOnClose_ = false;
+
+    /**
+     * Subclasses must open the file and then call
+     * {@link #rememberOpenedFile() }.
+     */
+    LogFileHandle(Path path) {
+        myPath_ = path;
+        myFileKeyOrNull_ = null;
+        myLastIdentityCheckNanos_ = System.nanoTime();
+    }
+
+    /**
+     * Opens a file for appending, creating it if it does not exist.
+     *
+     * @param path the log file.
+     * @param backend how text gets into the file.
+     * @return null on failure, non-null on success.
+     */
+    static LogFileHandle tryOpen(Path path, AppTester.LogFileBackend backend) {
+        AppTester.check(path != null, "No null inputs");
+        AppTester.check(backend != null, "No null inputs");
+        try {
+            if (backend == AppTester.LogFileBackend.MEMORY_MAPPED) {
+                return new MappedLogFileHandle(path);
+            } else if (backend == AppTester.LogFileBackend.SHARDED) {
+                return new ShardedLogFileHandle(path);
+            } else {
+                return new BufferedLogFileHandle(path);
+            }
+        } catch (IOException ioe) {
+            return null;
+        } catch (SecurityException se) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the file key of the file at path, or null if the file does not
+     * exist or file keys are not supported.
+     */
+    private static Object tryReadFileKey(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    Path getPath() {
+        return myPath_;
+    }
+
+    /**
+     * @return the files this handle has written to.
+     */
+    List<Path> getFiles() {
+        return Collections.singletonList(myPath_);
+    }
+
+    /**
+     * @return true if many threads can write through this handle at once
+     * without holding the AppTester lock.
+     */
+    boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * @return true if the file at {@link #getPath() } is no longer the file
+     * that was opened. Only actually looks at the file system once every
+     * {@link #IDENTITY_CHECK_INTERVAL_NANOS} nanoseconds, and returns false in
+     * between.
+     */
+    final boolean wasReplaced() throws IOException {
+        final long now = System.nanoTime();
+        if (now - myLastIdentityCheckNanos_ < IDENTITY_CHECK_INTERVAL_NANOS) {
+            return false;
+        }
+        myLastIdentityCheckNanos_ = now;
+        try {
+            final Object currentKey = Files.readAttributes(myPath_, BasicFileAttributes.class).fileKey();
+            return myFileKeyOrNull_ != null && !myFileKeyOrNull_.equals(currentKey);
+        } catch (NoSuchFileException nsfe) {
+            return true;
+        }
+    }
+
+    /**
+     * Must be called after opening or re-creating the file at
+     * {@link #getPath() }.
+     */
+    final void rememberOpenedFile() {
+        myFileKeyOrNull_ = tryReadFileKey(myPath_);
+        myOpening_ = myOpenings_.incrementAndGet();
+    }
+
+    /**
+     * @return a number that changes whenever this handle, or any other, opens
+     * or re-creates a file. Lets formats that start every file with a header
+     * know when to write one.
+     */
+    final long getOpening() {
+        return myOpening_;
+    }
+
+    /**
+     * Changes when text is written to the file. Ignored by handles that have
+     * nothing to flush.
+     *
+     * @param policy the new flush policy.
+     * @param byteThreshold the number of buffered bytes that triggers a flush
+     * under {@link AppTester.FlushPolicy#EVERY_N_BYTES}.
+     * @param millisecondInterval the time between flushes under
+     * {@link AppTester.FlushPolicy#EVERY_T_MILLISECONDS}.
+     */
+    void setFlushPolicy(AppTester.FlushPolicy policy, int byteThreshold, long millisecondInterval) {
+        // Nothing to configure by default.
+    }
+
+    /**
+     * Tries to append text to the log file, encoded as UTF-8.
+     *
+     * @return false if no text is written or true if text is successfully
+     * written.
+     */
+    final boolean tryWrite(String text, boolean isImportantOrError) {
+        return tryWrite(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), isImportantOrError);
+    }
+
+    /**
+     * Tries to append encoded text to the log file. The bytes are copied, so
+     * the buffer can be reused as soon as this returns.
+     *
+     * @param bytes the encoded text, from its position to its limit.
+     * @param isImportantOrError whether the text belongs to an
+     * {@link AppTester.Rank#IMPORTANT} or {@link AppTester.ReadoutCondition#ERROR}
+     * readout, which is flushed right away under
+     * {@link AppTester.FlushPolicy#ON_IMPORTANT_OR_ERROR}.
+     * @return false if no text is written or true if text is successfully
+     * written.
+     */
+    abstract boolean tryWrite(ByteBuffer bytes, boolean isImportantOrError);
+
+    /**
+     * Writes out everything buffered so far.
+     *
+     * @return false if the buffered text could not be written.
+     */
+    abstract boolean tryFlush();
+
+    /**
+     * Writes out everything buffered so far and waits until the file is on
+     * the storage device, so that it survives the operating system crashing
+     * or the power going out.
+     *
+     * @return false if the text could not be written or forced.
+     */
+    abstract boolean tryForce();
+
+    /**
+     * @param forcedOnClose whether {@link #close() } forces the file to the
+     * storage device, so that nothing written to it is left unforced.
+     */
+    final void setForcedOnClose(boolean forcedOnClose) {
+        isForcedOnClose_ = forcedOnClose;
+    }
+
+    final boolean isForcedOnClose() {
+        return isForcedOnClose_;
+    }
+
+    /**
+     * Flushes whatever is buffered and closes the log file. Further writes
+     * fail.
+     */
+    abstract void close() throws IOException;
+}
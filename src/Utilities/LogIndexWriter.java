@@ -0,0 +1,213 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a sparse index of a text or JSON Lines log file to a sidecar file
+ * with ".idx" added to its name. The log file is cut into blocks of about
+ * {@link AppTester#getMyLogIndexBlockBytes() } bytes, each ending at the end
+ * of a readout, and for each block the index records where it is, the
+ * earliest and latest time in it, how many readouts of each rank and how many
+ * errors it holds, and a bloom filter of the call sites and classes that
+ * printed to it. {@link LogQuery} uses the index to read only the blocks that
+ * can hold what it is looking for.
+ *
+ * The index starts with a header and is followed by one entry per block, all
+ * big endian:
+ * <pre>
+ * header: magic(4) version(4) blockBytes(4) bloomBytes(4)
+ * entry:  offset(8) length(8) firstMillis(8) lastMillis(8)
+ *         unimportant(4) normal(4) important(4) errors(4) bloom(bloomBytes)
+ * </pre>
+ *
+ * @author johnmichaelreed2
+ */
+final class LogIndexWriter {
+
+    static final String INDEX_EXTENSION = ".idx";
+    static final int MAGIC = 0x41544958; // "ATIX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int BLOOM_BYTES = 256;
+    static final int BLOOM_HASHES = 4;
+    static final int ENTRY_SIZE = 4 * 8 + 4 * 4 + BLOOM_BYTES;
+
+    private final FileChannel myChannel_;
+    private final int myBlockBytes_;
+    private final ByteBuffer myEntry_ = ByteBuffer.allocate(ENTRY_SIZE);
+    private final int[] myRankCounts_ = new int[Rank.values().length];
+    private final byte[] myBloom_ = new byte[BLOOM_BYTES];
+    private long myBlockStart_;
+    private long myBlockLength_ = 0;
+    private long myFirstMillis_;
+    private long myLastMillis_;
+    private int myErrorCount_;
+
+    /**
+     * The last call site added to the bloom filter, which is usually the
+     * next one too.
+     */
+    private String myLastLocationOrNull_ = null;
+
+    private LogIndexWriter(FileChannel channel, int blockBytes, long startOffset) {
+        myChannel_ = channel;
+        myBlockBytes_ = blockBytes;
+        myBlockStart_ = startOffset;
+    }
+
+    /**
+     * @return the index file that goes with a log file, which may have been
+     * compressed since.
+     */
+    static Path indexPath(Path logFile) {
+        String name = logFile.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        return logFile.resolveSibling(name + INDEX_EXTENSION);
+    }
+
+    /**
+     * Opens the index of a log file for appending, creating it if need be.
+     *
+     * @param startOffset the length of the log file so far. Text before it is
+     * not indexed.
+     * @return null on failure.
+     */
+    static LogIndexWriter tryOpen(Path logFile, int blockBytes, long startOffset) {
+        try {
+            final FileChannel channel = FileChannel.open(indexPath(logFile), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (channel.size() == 0) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(blockBytes).putInt(BLOOM_BYTES).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            }
+            return new LogIndexWriter(channel, blockBytes, startOffset);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts a readout that was just appended to the log file.
+     *
+     * @param locationOrNull the call site, or null for readouts without one.
+     * @param bytes how long the readout is in the log file.
+     */
+    void record(long epochMillis, Rank severity, ReadoutCondition condition, String locationOrNull, long bytes) {
+        if (myBlockLength_ == 0) {
+            myFirstMillis_ = epochMillis;
+            myLastMillis_ = epochMillis;
+        } else {
+            // Flight recorder dumps bring back older times.
+            myFirstMillis_ = Math.min(myFirstMillis_, epochMillis);
+            myLastMillis_ = Math.max(myLastMillis_, epochMillis);
+        }
+        ++myRankCounts_[severity.ordinal()];
+        if (condition == ReadoutCondition.ERROR) {
+            ++myErrorCount_;
+        }
+        if (locationOrNull != null && !locationOrNull.equals(myLastLocationOrNull_)) {
+            addToBloom(myBloom_, locationOrNull);
+            addToBloom(myBloom_, classNameOf(locationOrNull));
+            myLastLocationOrNull_ = locationOrNull;
+        }
+        myBlockLength_ += bytes;
+        if (myBlockLength_ >= myBlockBytes_) {
+            writeEntry();
+        }
+    }
+
+    private void writeEntry() {
+        myEntry_.clear();
+        myEntry_.putLong(myBlockStart_).putLong(myBlockLength_).putLong(myFirstMillis_).putLong(myLastMillis_);
+        for (int count : myRankCounts_) {
+            myEntry_.putInt(count);
+        }
+        myEntry_.putInt(myErrorCount_).put(myBloom_).flip();
+        try {
+            while (myEntry_.hasRemaining()) {
+                myChannel_.write(myEntry_);
+            }
+        } catch (IOException ioe) {
+            // The block is left out, so queries read it whatever they look for.
+        }
+        myBlockStart_ += myBlockLength_;
+        myBlockLength_ = 0;
+        Arrays.fill(myRankCounts_, 0);
+        Arrays.fill(myBloom_, (byte) 0);
+        myErrorCount_ = 0;
+        myLastLocationOrNull_ = null;
+    }
+
+    /**
+     * Indexes the last, partial block and closes the index.
+     */
+    void close() {
+        if (myBlockLength_ > 0) {
+            writeEntry();
+        }
+        try {
+            myChannel_.close();
+        } catch (IOException ioe) {
+            // Nothing more to do.
+        }
+    }
+
+    /**
+     * @return the class part of a call site such as
+     * "PackageName.ClassName.method(ClassName.java:291)".
+     */
+    static String classNameOf(String location) {
+        final int parenthesis = location.indexOf('(');
+        final int dot = location.lastIndexOf('.', (parenthesis == -1) ? location.length() : parenthesis);
+        return (dot == -1) ? location : location.substring(0, dot);
+    }
+
+    static void addToBloom(byte[] bloom, String key) {
+        final int bits = bloom.length * 8;
+        final int hash1 = key.hashCode();
+        final int hash2 = secondHash(hash1);
+        for (int i = 0; i < BLOOM_HASHES; ++i) {
+            final int bit = Math.floorMod(hash1 + i * hash2, bits);
+            bloom[bit >>> 3] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    /**
+     * @return false if the key was definitely never added.
+     */
+    static boolean mightContain(ByteBuffer bloom, int bloomStart, int bloomBytes, String key) {
+        final int bits = bloomBytes * 8;
+        final int hash1 = key.hashCode();
+        final int hash2 = secondHash(hash1);
+        for (int i = 0; i < BLOOM_HASHES; ++i) {
+            final int bit = Math.floorMod(hash1 + i * hash2, bits);
+            if ((bloom.get(bloomStart + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mixes the bits of the first hash, so the probes are spread out even for
+     * keys that differ only in their last characters. Always odd.
+     */
+    private static int secondHash(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash | 1;
+    }
+}
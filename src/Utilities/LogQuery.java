@@ -0,0 +1,337 @@
+package Utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Finds readouts in a log file without reading all of it, using the sidecar
+ * index written by {@link LogIndexWriter}. Only the blocks of the log file
+ * that can hold a match are memory mapped and read, along with any part of
+ * the file the index does not cover.
+ *
+ * Run with: java -cp [classes] Utilities.LogQuery [options] [log file]
+ * <pre>
+ * -from TIME    readouts at or after TIME, such as 2014-08-06T14:02 (local time) or 2014-08-06T14:02:00Z
+ * -to TIME      readouts at or before TIME
+ * -rank RANK    readouts at least this important: UNIMPORTANT, NORMAL or IMPORTANT
+ * -errors       error readouts only
+ * -site SITE    readouts from a call site, such as "a.B.c(B.java:12)", or from a class, such as "a.B"
+ * -stats        report how much of the log file was read, on standard error
+ * </pre>
+ *
+ * JSON Lines log files are filtered readout by readout. Text log files do not
+ * hold times or ranks, so whole matching blocks are printed. Compressed log
+ * files are read as a stream, skipping the blocks that do not match. Like
+ * {@link BinaryLogDecoder}, this tool does not use {@link AppTester}.
+ *
+ * @author johnmichaelreed2
+ */
+public class LogQuery {
+
+    private long myFromMillis_ = Long.MIN_VALUE;
+    private long myToMillis_ = Long.MAX_VALUE;
+    private int myLeastImportance_ = 0;
+    private boolean isErrorsOnly_ = false;
+    private String mySiteOrNull_ = null;
+
+    public static void main(String args[]) throws IOException {
+        final LogQuery query = new LogQuery();
+        Path logFileOrNull = null;
+        boolean printStatistics = false;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "-from":
+                        query.myFromMillis_ = parseTime(args[++i]);
+                        break;
+                    case "-to":
+                        query.myToMillis_ = parseTime(args[++i]);
+                        break;
+                    case "-rank":
+                        query.myLeastImportance_ = AppTester.Rank.valueOf(args[++i]).getImportance();
+                        break;
+                    case "-errors":
+                        query.isErrorsOnly_ = true;
+                        break;
+                    case "-site":
+                        query.mySiteOrNull_ = args[++i];
+                        break;
+                    case "-stats":
+                        printStatistics = true;
+                        break;
+                    default:
+                        logFileOrNull = Paths.get(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | DateTimeParseException e) {
+            logFileOrNull = null;
+        }
+        if (logFileOrNull == null) {
+            System.err.println("Usage: java Utilities.LogQuery [-from TIME] [-to TIME] [-rank RANK] [-errors] [-site SITE] [-stats] [log file]");
+            System.exit(-1);
+        }
+        final OutputStream output = new BufferedOutputStream(System.out, 64 * 1024);
+        final long[] statistics = query.run(logFileOrNull, output);
+        output.flush();
+        if (printStatistics) {
+            System.err.println("Read " + statistics[0] + " of " + ((statistics[1] == -1) ? "?" : statistics[1])
+                    + " bytes in " + statistics[2] + " of " + statistics[3] + " indexed blocks.");
+        }
+    }
+
+    /**
+     * @return milliseconds since 1970 for an ISO-8601 instant, or for a local
+     * date and time in this time zone.
+     */
+    static long parseTime(String time) {
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException dtpe) {
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * Writes the matching readouts of a log file.
+     *
+     * @return the bytes read, the length of the log file, the blocks read and
+     * the blocks indexed.
+     */
+    long[] run(Path logFile, OutputStream output) throws IOException {
+        final boolean isCompressed = logFile.getFileName().toString().endsWith(".gz");
+        final boolean isJsonLines = logFile.getFileName().toString().replace(".gz", "").endsWith(".jsonl");
+        final long logLength = isCompressed ? Long.MAX_VALUE : Files.size(logFile);
+        final ArrayList<long[]> regions = new ArrayList<>();
+        final long[] blocks = findRegions(LogIndexWriter.indexPath(logFile), logLength, regions);
+        long bytesRead = 0;
+        if (isCompressed) {
+            try (InputStream input = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(logFile), 64 * 1024))) {
+                long position = 0;
+                byte[] buffer = new byte[256 * 1024];
+                for (long[] region : regions) {
+                    input.skipNBytes(region[0] - position);
+                    position = region[0];
+                    long remaining = region[1];
+                    int filled = 0;
+                    while (remaining > 0) {
+                        if (filled == buffer.length) {
+                            buffer = Arrays.copyOf(buffer, 2 * buffer.length); // one very long readout.
+                        }
+                        final int read = input.read(buffer, filled, (int) Math.min(buffer.length - filled, remaining));
+                        if (read == -1) {
+                            break;
+                        }
+                        position += read;
+                        remaining -= read;
+                        bytesRead += read;
+                        filled += read;
+                        final int consumed = write(ByteBuffer.wrap(buffer, 0, filled), isJsonLines, false, output);
+                        System.arraycopy(buffer, consumed, buffer, 0, filled - consumed);
+                        filled -= consumed;
+                    }
+                    write(ByteBuffer.wrap(buffer, 0, filled), isJsonLines, true, output);
+                    if (remaining > 0) {
+                        break; // the end of the file.
+                    }
+                }
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                for (long[] region : regions) {
+                    long start = region[0];
+                    final long end = region[0] + region[1];
+                    while (start < end) {
+                        // Blocks end at readouts, so only a region over 1 GB is cut mid readout.
+                        final long length = Math.min(end - start, 1L << 30);
+                        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                        write(mapped, isJsonLines, true, output);
+                        bytesRead += length;
+                        start += length;
+                    }
+                }
+            }
+        }
+        return new long[]{bytesRead, isCompressed ? -1 : logLength, blocks[0], blocks[1]};
+    }
+
+    /**
+     * Picks out the parts of the log file that have to be read: the indexed
+     * blocks that can hold a match, and whatever the index does not cover.
+     * Neighboring parts are joined.
+     *
+     * @param regions filled with {offset, length} pairs, in order.
+     * @return the number of matching blocks and of indexed blocks.
+     */
+    private long[] findRegions(Path indexFile, long logLength, List<long[]> regions) throws IOException {
+        long covered = 0;
+        long matching = 0;
+        long indexed = 0;
+        if (Files.exists(indexFile)) {
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                final MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (index.limit() < LogIndexWriter.HEADER_SIZE || index.getInt(0) != LogIndexWriter.MAGIC
+                        || index.getInt(4) != LogIndexWriter.VERSION) {
+                    throw new IOException(indexFile + " is not a log index.");
+                }
+                final int bloomBytes = index.getInt(12);
+                final int entrySize = LogIndexWriter.ENTRY_SIZE - LogIndexWriter.BLOOM_BYTES + bloomBytes;
+                for (int entry = LogIndexWriter.HEADER_SIZE; entry + entrySize <= index.limit(); entry += entrySize) {
+                    final long offset = index.getLong(entry);
+                    final long length = index.getLong(entry + 8);
+                    if (offset > covered) {
+                        addRegion(regions, covered, offset - covered); // not indexed
+                    }
+                    ++indexed;
+                    if (matches(index, entry, bloomBytes)) {
+                        ++matching;
+                        addRegion(regions, offset, length);
+                    }
+                    covered = Math.max(covered, offset + length);
+                }
+            }
+        }
+        if (logLength > covered) {
+            addRegion(regions, covered, logLength - covered); // written since the last block, or not indexed
+        }
+        return new long[]{matching, indexed};
+    }
+
+    private static void addRegion(List<long[]> regions, long offset, long length) {
+        if (!regions.isEmpty()) {
+            final long[] last = regions.get(regions.size() - 1);
+            if (last[0] + last[1] == offset) {
+                last[1] += length;
+                return;
+            }
+        }
+        regions.add(new long[]{offset, length});
+    }
+
+    /**
+     * @return true if the block at the index entry can hold a match.
+     */
+    private boolean matches(ByteBuffer index, int entry, int bloomBytes) {
+        final long firstMillis = index.getLong(entry + 16);
+        final long lastMillis = index.getLong(entry + 24);
+        if (lastMillis < myFromMillis_ || firstMillis > myToMillis_) {
+            return false;
+        }
+        int counted = 0;
+        for (AppTester.Rank rank : AppTester.Rank.values()) {
+            if (rank.getImportance() >= myLeastImportance_) {
+                counted += index.getInt(entry + 32 + 4 * rank.ordinal());
+            }
+        }
+        if (counted == 0) {
+            return false;
+        }
+        if (isErrorsOnly_ && index.getInt(entry + 44) == 0) {
+            return false;
+        }
+        return mySiteOrNull_ == null
+                || LogIndexWriter.mightContain(index, entry + 48, bloomBytes, mySiteOrNull_);
+    }
+
+    /**
+     * Writes a part of the log file, filtered readout by readout if it is in
+     * JSON Lines.
+     *
+     * @param isEnd false if more of the log file follows, in which case a
+     * JSON Lines readout cut off at the end is left for next time.
+     * @return how many bytes were used up.
+     */
+    private int write(ByteBuffer bytes, boolean isJsonLines, boolean isEnd, OutputStream output) throws IOException {
+        final int first = bytes.position();
+        if (!isJsonLines) {
+            final byte[] chunk = new byte[64 * 1024];
+            while (bytes.hasRemaining()) {
+                final int length = Math.min(chunk.length, bytes.remaining());
+                bytes.get(chunk, 0, length);
+                output.write(chunk, 0, length);
+            }
+            return bytes.position() - first;
+        }
+        byte[] line = new byte[1024];
+        while (bytes.hasRemaining()) {
+            final int start = bytes.position();
+            int end = start;
+            while (end < bytes.limit() && bytes.get(end) != '\n') {
+                ++end;
+            }
+            if (end == bytes.limit() && !isEnd) {
+                break;
+            }
+            final int length = Math.min(end + 1, bytes.limit()) - start;
+            if (line.length < length) {
+                line = new byte[Math.max(length, 2 * line.length)];
+            }
+            bytes.get(line, 0, length);
+            if (length > 1 && line[0] == '{' && matchesLine(new String(line, 0, length, StandardCharsets.UTF_8))) {
+                output.write(line, 0, length);
+            }
+        }
+        return bytes.position() - first;
+    }
+
+    /**
+     * @return true if a JSON Lines readout matches. Relies on the fields
+     * coming in the order AppTester writes them, with "msg" after the rest.
+     */
+    boolean matchesLine(String line) {
+        final String timeOrNull = field(line, "ts");
+        if (timeOrNull != null && (myFromMillis_ != Long.MIN_VALUE || myToMillis_ != Long.MAX_VALUE)) {
+            final long millis = Instant.parse(timeOrNull).toEpochMilli();
+            if (millis < myFromMillis_ || millis > myToMillis_) {
+                return false;
+            }
+        }
+        final String rankOrNull = field(line, "rank");
+        if (rankOrNull != null && AppTester.Rank.valueOf(rankOrNull).getImportance() < myLeastImportance_) {
+            return false;
+        }
+        if (isErrorsOnly_ && !"ERROR".equals(field(line, "condition"))) {
+            return false;
+        }
+        if (mySiteOrNull_ != null) {
+            final String siteOrNull = field(line, "site");
+            return siteOrNull != null && (siteOrNull.equals(mySiteOrNull_)
+                    || LogIndexWriter.classNameOf(siteOrNull).equals(mySiteOrNull_));
+        }
+        return true;
+    }
+
+    /**
+     * @return the raw value of a string field, or null if it is not there.
+     */
+    private static String field(String line, String name) {
+        final String key = "\"" + name + "\":\"";
+        final int start = line.indexOf(key);
+        if (start == -1) {
+            return null;
+        }
+        int end = start + key.length();
+        while (end < line.length() && line.charAt(end) != '"') {
+            end += (line.charAt(end) == '\\') ? 2 : 1;
+        }
+        return line.substring(start + key.length(), Math.min(end, line.length()));
+    }
+}
@@ -0,0 +1,333 @@
+package Utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decides when the log file should roll over to a new segment, and cleans up
+ * after segments once they are retired. Retired segments are closed and gzip
+ * compressed on a low priority background thread named "Log_Compressor",
+ * after which the oldest log files are deleted until the log folder fits in
+ * its byte budget. Closing them there keeps the flush, and the force under
+ * group commit, off the threads holding the AppTester class lock.
+ *
+ * The first segment is the usual "yyyy_MM_dd___HH:mm:ss.txt" file and later
+ * ones add a number, as in "yyyy_MM_dd___HH:mm:ss_1.txt". A compressed
+ * segment gets ".gz" added to its name.
+ *
+ * Limits can be read from any thread. Everything about the current segment
+ * is guarded by the AppTester class lock.
+ *
+ * @author johnmichaelreed2
+ */
+final class LogRotator {
+
+    private volatile long myMaxSegmentBytes_ = 0;
+    private volatile long myMaxSegmentMilliseconds_ = 0;
+    private volatile long myFolderByteBudget_ = 0;
+
+    private long mySegmentBytes_ = 0;
+    private long mySegmentStartMillis_ = System.currentTimeMillis();
+    private int mySegmentNumber_ = 0;
+
+    /**
+     * The segment being written to, which is never deleted to fit the budget.
+     */
+    private volatile Path myActiveSegmentOrNull_ = null;
+
+    /**
+     * Retired segments that are not closed yet.
+     */
+    private final Set<LogFileHandle> myRetiring_ = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Compresses closed segments, created on first use.
+     */
+    private ExecutorService myCompressorOrNull_ = null;
+
+    /**
+     * @return true if segments ever roll over.
+     */
+    boolean isEnabled() {
+        return myMaxSegmentBytes_ > 0 || myMaxSegmentMilliseconds_ > 0;
+    }
+
+    long getMaxSegmentBytes() {
+        return myMaxSegmentBytes_;
+    }
+
+    /**
+     * @param maxBytes the size at which a segment is closed, or 0 for no
+     * limit.
+     */
+    void setMaxSegmentBytes(long maxBytes) {
+        myMaxSegmentBytes_ = maxBytes;
+    }
+
+    long getMaxSegmentMilliseconds() {
+        return myMaxSegmentMilliseconds_;
+    }
+
+    /**
+     * @param maxMilliseconds the age at which a segment is closed, or 0 for
+     * no limit.
+     */
+    void setMaxSegmentMilliseconds(long maxMilliseconds) {
+        myMaxSegmentMilliseconds_ = maxMilliseconds;
+    }
+
+    long getFolderByteBudget() {
+        return myFolderByteBudget_;
+    }
+
+    /**
+     * @param budget how many bytes of log files the log folder may hold, or 0
+     * for no limit.
+     */
+    void setFolderByteBudget(long budget) {
+        myFolderByteBudget_ = budget;
+    }
+
+    /**
+     * Starts counting a new segment.
+     *
+     * @param segment the file now being written to.
+     */
+    void startSegment(Path segment) {
+        myActiveSegmentOrNull_ = segment;
+        mySegmentBytes_ = 0;
+        mySegmentStartMillis_ = System.currentTimeMillis();
+    }
+
+    /**
+     * Counts bytes written to the current segment.
+     *
+     * @return true if the segment is now full or old enough to be rotated.
+     */
+    boolean recordWrite(long bytes) {
+        mySegmentBytes_ += bytes;
+        final long maxBytes = myMaxSegmentBytes_;
+        final long maxMilliseconds = myMaxSegmentMilliseconds_;
+        return (maxBytes > 0 && mySegmentBytes_ >= maxBytes)
+                || (maxMilliseconds > 0 && System.currentTimeMillis() - mySegmentStartMillis_ >= maxMilliseconds);
+    }
+
+    /**
+     * @param current the segment being written to.
+     * @param firstSegmentName the name of the first segment, such as
+     * "2014_08_06___16:00:22.txt".
+     * @return a path for the next segment that does not exist yet, with the
+     * same extension as the current one.
+     */
+    Path nextSegmentPath(Path current, String firstSegmentName) {
+        final String currentName = current.getFileName().toString();
+        final int extensionStart = currentName.lastIndexOf('.');
+        final String extension = (extensionStart == -1) ? "" : currentName.substring(extensionStart);
+        final int stemEnd = firstSegmentName.lastIndexOf('.');
+        final String stem = (stemEnd == -1) ? firstSegmentName : firstSegmentName.substring(0, stemEnd);
+        Path next;
+        do {
+            ++mySegmentNumber_;
+            next = current.resolveSibling(stem + "_" + mySegmentNumber_ + extension);
+        } while (Files.exists(next) || Files.exists(next.resolveSibling(next.getFileName() + ".gz")));
+        return next;
+    }
+
+    /**
+     * Closes a segment, compresses it and enforces the byte budget, in the
+     * background. Until it is closed, {@link #tryForceRetiring() } forces it
+     * too.
+     *
+     * @param segment the handle of a segment that readouts no longer go to.
+     */
+    synchronized void retire(final LogFileHandle segment) {
+        myRetiring_.add(segment);
+        compressor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    segment.close();
+                } catch (IOException ioe) {
+                    // Whatever made it to the file gets compressed anyway.
+                }
+                myRetiring_.remove(segment);
+                for (Path file : segment.getFiles()) {
+                    tryCompress(file);
+                }
+                enforceBudget();
+            }
+        });
+    }
+
+    /**
+     * Forces the retired segments that are not closed yet, so group commit
+     * does not count readouts written just before a rollover as forced too
+     * early. One that closes in the meantime was forced as it closed.
+     */
+    void tryForceRetiring() {
+        for (LogFileHandle segment : myRetiring_) {
+            segment.tryForce();
+        }
+    }
+
+    /**
+     * Closes the retired segments that are not closed yet, on this thread.
+     */
+    void closeRetiring() {
+        for (LogFileHandle segment : myRetiring_) {
+            try {
+                segment.close(); // the compressor's close does nothing after this.
+            } catch (IOException ioe) {
+                // Nothing more to do.
+            }
+        }
+    }
+
+    /**
+     * Enforces the byte budget in the background.
+     */
+    synchronized void trim() {
+        compressor().execute(new Runnable() {
+            @Override
+            public void run() {
+                enforceBudget();
+            }
+        });
+    }
+
+    private ExecutorService compressor() {
+        if (myCompressorOrNull_ == null) {
+            myCompressorOrNull_ = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread compressor = new Thread(r, "Log_Compressor");
+                    compressor.setDaemon(true);
+                    compressor.setPriority(Thread.MIN_PRIORITY);
+                    return compressor;
+                }
+            });
+        }
+        return myCompressorOrNull_;
+    }
+
+    /**
+     * Lets queued compressions finish, waiting at most the given time.
+     */
+    synchronized void close(long milliseconds) {
+        if (myCompressorOrNull_ == null) {
+            return;
+        }
+        myCompressorOrNull_.shutdown();
+        try {
+            myCompressorOrNull_.awaitTermination(milliseconds, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        myCompressorOrNull_ = null;
+    }
+
+    /**
+     * Replaces a file with a gzip compressed copy. The copy is written under a
+     * temporary name first, so a ".gz" file is always complete.
+     */
+    private static void tryCompress(Path segment) {
+        final Path compressed = segment.resolveSibling(segment.getFileName() + ".gz");
+        final Path temporary = segment.resolveSibling(segment.getFileName() + ".gz.tmp");
+        try {
+            try (InputStream in = Files.newInputStream(segment);
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024)) {
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            Files.move(temporary, compressed, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+        } catch (IOException ioe) {
+            // Leave the segment uncompressed.
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ioe2) {
+                // Nothing more to do.
+            }
+        }
+    }
+
+    /**
+     * Deletes the oldest log files in the folder of the active segment until
+     * the folder fits in the byte budget.
+     */
+    private void enforceBudget() {
+        final long budget = myFolderByteBudget_;
+        final Path active = myActiveSegmentOrNull_;
+        if (budget <= 0 || active == null || active.getParent() == null) {
+            return;
+        }
+        final ArrayList<Path> files = new ArrayList<>();
+        final ArrayList<BasicFileAttributes> attributes = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> folder = Files.newDirectoryStream(active.getParent())) {
+            for (Path file : folder) {
+                final String name = file.getFileName().toString();
+                if (!(name.endsWith(".txt") || name.endsWith(".bin") || name.endsWith(".jsonl")
+                        || name.endsWith(".gz") || name.endsWith(ShardedLogFileHandle.SHARD_EXTENSION)
+                        || name.endsWith(LogIndexWriter.INDEX_EXTENSION))) {
+                    continue;
+                }
+                final BasicFileAttributes attribute;
+                try {
+                    attribute = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException nsfe) {
+                    continue;
+                }
+                if (!attribute.isRegularFile()) {
+                    continue;
+                }
+                total += attribute.size();
+                if (!name.startsWith(active.getFileName().toString())) { // its shards and index too
+                    files.add(file);
+                    attributes.add(attribute);
+                }
+            }
+        } catch (IOException ioe) {
+            return;
+        }
+        final ArrayList<Integer> oldestFirst = new ArrayList<>();
+        for (int i = 0; i < files.size(); ++i) {
+            oldestFirst.add(i);
+        }
+        Collections.sort(oldestFirst, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime());
+            }
+        });
+        for (int i = 0; i < oldestFirst.size() && total > budget; ++i) {
+            final int index = oldestFirst.get(i);
+            try {
+                Files.deleteIfExists(files.get(index));
+                total -= attributes.get(index).size();
+            } catch (IOException ioe) {
+                // Try the next one.
+            }
+        }
+    }
+}
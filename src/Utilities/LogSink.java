@@ -0,0 +1,38 @@
+package Utilities;
+
+import java.io.IOException;
+
+/**
+ * Somewhere readouts go, in addition to the terminal and the log file. Add one
+ * with {@link AppTester#addSink(Utilities.LogSink, Utilities.AppTester.Rank, int, Utilities.AppTester.FullBufferPolicy)
+ * }. Each sink gets its own bounded queue and its own worker thread, so a slow
+ * sink falls behind on its own instead of holding up printing threads or
+ * other sinks.
+ *
+ * All methods are called on the sink's worker thread, one at a time, so a
+ * sink does not have to be thread safe.
+ *
+ * @author johnmichaelreed2
+ */
+public interface LogSink {
+
+    /**
+     * Writes out one readout. An exception is counted as a failed write and
+     * the sink goes on with the next readout.
+     */
+    void write(Readout readout) throws IOException;
+
+    /**
+     * Called whenever the sink's queue runs empty, so that sinks can batch
+     * writes and flush once per batch.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Called once, after the last readout, when the sink is removed or
+     * AppTester is closed.
+     */
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,648 @@
+package Utilities;
+
+import Utilities.AppTester.LogFileFormat;
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Follows the log files AppTester writes to a log folder, as another process
+ * would, and hands over each new readout once. Only the bytes added since the
+ * last read are read, and the tail sleeps on a {@link WatchService} until the
+ * folder changes instead of reading the files again and again. When the log
+ * file rolls over, or a new run of the application starts a new log file,
+ * the tail finishes the old file and moves on to the next one, reading
+ * compressed segments too.
+ * <pre>
+ * try (LogTail tail = new LogTail(Paths.get("Log_Files"), AppTester.LogFileFormat.JSON_LINES, Paths.get("tail.checkpoint"))) {
+ *     while (true) {
+ *         for (Readout readout : tail.poll(1000)) {
+ *             ...
+ *         }
+ *         tail.commit();
+ *     }
+ * }
+ * </pre>
+ *
+ * Readouts from JSON Lines log files come back complete. Text log files do
+ * not record times, ranks or conditions, so readouts from them carry the time
+ * they were read and a null rank and condition, and a readout is only known
+ * to be complete once the next one starts or the log file goes quiet. Log
+ * files written with the {@link AppTester.LogFileBackend#BUFFERED_CHANNEL}
+ * backend can be followed. Like {@link BinaryLogDecoder}, this class does not
+ * use {@link AppTester}.
+ *
+ * @author johnmichaelreed2
+ */
+public class LogTail implements Closeable {
+
+    /**
+     * How long a log file must go without growing, once a newer one exists,
+     * before the tail moves on. AppTester writes the last of a log file just
+     * after it opens the next one.
+     */
+    static final long SWITCH_QUIET_MILLISECONDS = 1000;
+
+    private final Path myFolder_;
+    private final LogFileFormat myFormat_;
+    private final String myExtension_;
+    private final Path myCheckpointOrNull_;
+    private final WatchService myWatcher_;
+
+    /**
+     * The log file being followed, by its uncompressed name, or null if the
+     * folder has none yet.
+     */
+    private Path myFileOrNull_ = null;
+    private FileChannel myChannelOrNull_ = null;
+    private InputStream myCompressedOrNull_ = null;
+
+    /**
+     * How far into the log file bytes have been read.
+     */
+    private long myReadOffset_ = 0;
+
+    /**
+     * Where the readout after the last one handed over starts. Saved by
+     * {@link #commit() }.
+     */
+    private long myDeliveredOffset_ = 0;
+    private long myCommittedOffset_ = -1;
+    private Path myCommittedFileOrNull_ = null;
+
+    /**
+     * Bytes read that do not make up a whole line yet.
+     */
+    private byte[] myBuffer_ = new byte[64 * 1024];
+    private int myBuffered_ = 0;
+    private long myLastGrowthMillis_ = System.currentTimeMillis();
+
+    // A text readout still being read, if myTextMessageOrNull_ is not null.
+    private String myTextThreadOrNull_ = null;
+    private String myTextLocationOrNull_ = null;
+    private StringBuilder myTextMessageOrNull_ = null;
+    private int myTextBlankLines_ = 0;
+    private long myTextBlankLineOffset_ = 0; // where the last blank line starts.
+
+    /**
+     * Starts following the log files in a folder. Without a checkpoint, the
+     * tail starts at the end of the newest log file, so only readouts written
+     * from now on are handed over.
+     *
+     * @param logFolder the folder AppTester writes log files to, such as
+     * "Log_Files".
+     * @param format {@link LogFileFormat#JSON_LINES} or
+     * {@link LogFileFormat#TEXT}.
+     * @param checkpointFileOrNull where {@link #commit() } saves how far the
+     * tail got, and where it picks up from when created again, or null.
+     */
+    public LogTail(Path logFolder, LogFileFormat format, Path checkpointFileOrNull) throws IOException {
+        if (format != LogFileFormat.JSON_LINES && format != LogFileFormat.TEXT) {
+            throw new IllegalArgumentException("Only JSON Lines and text log files can be followed.");
+        }
+        myFolder_ = logFolder;
+        myFormat_ = format;
+        myExtension_ = format.getExtension();
+        myCheckpointOrNull_ = checkpointFileOrNull;
+        myWatcher_ = logFolder.getFileSystem().newWatchService();
+        logFolder.register(myWatcher_, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        if (checkpointFileOrNull != null && Files.exists(checkpointFileOrNull)) {
+            resume(checkpointFileOrNull);
+        } else {
+            final List<Path> files = listLogFiles();
+            if (!files.isEmpty()) {
+                final Path newest = files.get(files.size() - 1);
+                open(newest, Files.exists(newest) ? Files.size(newest) : 0);
+            }
+        }
+    }
+
+    private void resume(Path checkpointFile) throws IOException {
+        final Properties checkpoint = new Properties();
+        try (InputStream input = Files.newInputStream(checkpointFile)) {
+            checkpoint.load(input);
+        }
+        final Path file = myFolder_.resolve(checkpoint.getProperty("file"));
+        final long offset = Long.parseLong(checkpoint.getProperty("offset"));
+        myCommittedFileOrNull_ = file;
+        myCommittedOffset_ = offset;
+        if (Files.exists(file) || Files.exists(compressedPath(file))) {
+            open(file, offset);
+        } else {
+            // Deleted to fit the log folder budget. Go on with whatever came next.
+            myFileOrNull_ = file;
+            final Path successorOrNull = findSuccessorOrNull();
+            if (successorOrNull != null) {
+                open(successorOrNull, 0);
+            } else {
+                myFileOrNull_ = null;
+            }
+        }
+    }
+
+    /**
+     * @return the log file being followed, or null if there is none yet.
+     */
+    public Path getFileOrNull() {
+        return myFileOrNull_;
+    }
+
+    /**
+     * @return where in {@link #getFileOrNull() } the next readout starts.
+     */
+    public long getOffset() {
+        return myDeliveredOffset_;
+    }
+
+    /**
+     * Waits for new readouts.
+     *
+     * @param timeoutMilliseconds the longest to wait.
+     * @return the readouts written since the last poll, oldest first, or an
+     * empty list if there were none in time.
+     */
+    public List<Readout> poll(long timeoutMilliseconds) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+        final ArrayList<Readout> readouts = new ArrayList<>();
+        while (true) {
+            if (myFileOrNull_ == null) {
+                final List<Path> files = listLogFiles();
+                if (!files.isEmpty()) {
+                    open(files.get(0), 0);
+                }
+            }
+            final boolean grew = myFileOrNull_ != null && readAvailable(readouts);
+            if (!readouts.isEmpty()) {
+                return readouts;
+            }
+            if (!grew && myFileOrNull_ != null) {
+                finishTextReadout(readouts);
+                if (!readouts.isEmpty()) {
+                    return readouts;
+                }
+                if (trySwitchToSuccessor()) {
+                    continue;
+                }
+            }
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return readouts;
+            }
+            final WatchKey keyOrNull = myWatcher_.poll(Math.min(remaining, SWITCH_QUIET_MILLISECONDS),
+                    java.util.concurrent.TimeUnit.MILLISECONDS);
+            if (keyOrNull != null) {
+                keyOrNull.pollEvents();
+                keyOrNull.reset();
+            }
+        }
+    }
+
+    /**
+     * Saves how far the tail got to the checkpoint file, replacing it in one
+     * step. Readouts handed over after this are handed over again by a tail
+     * that resumes from it.
+     */
+    public void commit() throws IOException {
+        if (myCheckpointOrNull_ == null || myFileOrNull_ == null) {
+            return;
+        }
+        if (myFileOrNull_.equals(myCommittedFileOrNull_) && myDeliveredOffset_ == myCommittedOffset_) {
+            return; // nothing new.
+        }
+        final Properties checkpoint = new Properties();
+        checkpoint.setProperty("file", myFileOrNull_.getFileName().toString());
+        checkpoint.setProperty("offset", Long.toString(myDeliveredOffset_));
+        final Path temporary = myCheckpointOrNull_.resolveSibling(myCheckpointOrNull_.getFileName() + ".tmp");
+        try (java.io.OutputStream output = Files.newOutputStream(temporary)) {
+            checkpoint.store(output, "LogTail checkpoint");
+        }
+        Files.move(temporary, myCheckpointOrNull_, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        myCommittedFileOrNull_ = myFileOrNull_;
+        myCommittedOffset_ = myDeliveredOffset_;
+    }
+
+    /**
+     * Commits and stops watching the log folder.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            closeFile();
+            myWatcher_.close();
+        }
+    }
+
+    private void open(Path file, long offset) throws IOException {
+        closeFile();
+        myFileOrNull_ = file;
+        myBuffered_ = 0;
+        myTextMessageOrNull_ = null;
+        myLastGrowthMillis_ = System.currentTimeMillis();
+        if (Files.exists(file)) {
+            myChannelOrNull_ = FileChannel.open(file, StandardOpenOption.READ);
+            myChannelOrNull_.position(offset);
+        } else {
+            myCompressedOrNull_ = new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(compressedPath(file)), 64 * 1024));
+            myCompressedOrNull_.skipNBytes(offset);
+        }
+        myReadOffset_ = offset;
+        myDeliveredOffset_ = offset;
+    }
+
+    private void closeFile() throws IOException {
+        try {
+            if (myChannelOrNull_ != null) {
+                myChannelOrNull_.close();
+            }
+            if (myCompressedOrNull_ != null) {
+                myCompressedOrNull_.close();
+            }
+        } finally {
+            myChannelOrNull_ = null;
+            myCompressedOrNull_ = null;
+        }
+    }
+
+    /**
+     * Reads whatever has been added to the log file and turns each whole
+     * line into readouts.
+     *
+     * @return true if anything was read.
+     */
+    private boolean readAvailable(List<Readout> readouts) throws IOException {
+        boolean grew = false;
+        while (true) {
+            if (myBuffered_ == myBuffer_.length) {
+                myBuffer_ = Arrays.copyOf(myBuffer_, 2 * myBuffer_.length); // one very long line.
+            }
+            final int read;
+            if (myChannelOrNull_ != null) {
+                read = myChannelOrNull_.read(ByteBuffer.wrap(myBuffer_, myBuffered_, myBuffer_.length - myBuffered_));
+            } else {
+                read = myCompressedOrNull_.read(myBuffer_, myBuffered_, myBuffer_.length - myBuffered_);
+            }
+            if (read <= 0) {
+                return grew;
+            }
+            grew = true;
+            myLastGrowthMillis_ = System.currentTimeMillis();
+            myBuffered_ += read;
+            int lineStart = 0;
+            for (int i = 0; i < myBuffered_; ++i) {
+                if (myBuffer_[i] == '\n') {
+                    final long lineOffset = myReadOffset_ + lineStart;
+                    int lineEnd = i;
+                    if (lineEnd > lineStart && myBuffer_[lineEnd - 1] == '\r') {
+                        --lineEnd;
+                    }
+                    final String line = new String(myBuffer_, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                    lineStart = i + 1;
+                    takeLine(line, lineOffset, myReadOffset_ + lineStart, readouts);
+                }
+            }
+            System.arraycopy(myBuffer_, lineStart, myBuffer_, 0, myBuffered_ - lineStart);
+            myBuffered_ -= lineStart;
+            myReadOffset_ += lineStart;
+        }
+    }
+
+    /**
+     * @param lineOffset where the line starts in the log file.
+     * @param nextOffset where the line after it starts.
+     */
+    private void takeLine(String line, long lineOffset, long nextOffset, List<Readout> readouts) {
+        if (myFormat_ == LogFileFormat.JSON_LINES) {
+            final Readout readoutOrNull = parseJsonLine(line);
+            if (readoutOrNull != null) {
+                readouts.add(readoutOrNull);
+            }
+            myDeliveredOffset_ = nextOffset;
+            return;
+        }
+        if (line.isEmpty()) {
+            ++myTextBlankLines_;
+            myTextBlankLineOffset_ = lineOffset;
+            return;
+        }
+        if (myTextBlankLines_ > 0 && line.startsWith("Thread \"")) {
+            final int nameEnd = line.indexOf("\": ");
+            if (nameEnd != -1) {
+                // A new readout starts at the blank line before its header.
+                finishTextReadout(readouts);
+                myDeliveredOffset_ = myTextBlankLineOffset_;
+                myTextThreadOrNull_ = line.substring("Thread \"".length(), nameEnd);
+                myTextLocationOrNull_ = line.substring(nameEnd + "\": ".length());
+                myTextMessageOrNull_ = new StringBuilder();
+                myTextBlankLines_ = 0;
+                return;
+            }
+        }
+        if (myTextMessageOrNull_ == null) {
+            myTextThreadOrNull_ = null;
+            myTextLocationOrNull_ = null;
+            myTextMessageOrNull_ = new StringBuilder();
+        } else if (myTextMessageOrNull_.length() > 0 || myTextLocationOrNull_ == null) {
+            for (int i = 0; i < myTextBlankLines_; ++i) {
+                myTextMessageOrNull_.append('\n');
+            }
+            if (myTextMessageOrNull_.length() > 0) {
+                myTextMessageOrNull_.append('\n');
+            }
+        }
+        myTextBlankLines_ = 0;
+        myTextMessageOrNull_.append(line);
+    }
+
+    /**
+     * Hands over the text readout being read, which is complete once the
+     * next one starts or the log file stops growing.
+     */
+    private void finishTextReadout(List<Readout> readouts) {
+        if (myTextMessageOrNull_ == null) {
+            return;
+        }
+        readouts.add(new Readout(System.currentTimeMillis(), myTextThreadOrNull_, myTextLocationOrNull_,
+                myTextMessageOrNull_.toString(), null, true, null, null));
+        myTextMessageOrNull_ = null;
+        myDeliveredOffset_ = myReadOffset_;
+    }
+
+    /**
+     * Moves on to the next log file once there is one and the current one
+     * has been read to the end and stopped growing, or has been compressed
+     * or deleted, which AppTester only does to closed log files.
+     */
+    private boolean trySwitchToSuccessor() throws IOException {
+        final Path successorOrNull = findSuccessorOrNull();
+        if (successorOrNull == null) {
+            return false;
+        }
+        final boolean isClosed = myCompressedOrNull_ != null || !Files.exists(myFileOrNull_);
+        if (!isClosed && System.currentTimeMillis() - myLastGrowthMillis_ < SWITCH_QUIET_MILLISECONDS) {
+            return false;
+        }
+        open(successorOrNull, 0);
+        return true;
+    }
+
+    /**
+     * @return the log files in the folder, uncompressed names only, from
+     * oldest to newest.
+     */
+    private List<Path> listLogFiles() throws IOException {
+        final ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> folder = Files.newDirectoryStream(myFolder_)) {
+            for (Path file : folder) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".gz")) {
+                    name = name.substring(0, name.length() - ".gz".length());
+                }
+                if (name.endsWith(myExtension_) && !files.contains(myFolder_.resolve(name))) {
+                    files.add(myFolder_.resolve(name));
+                }
+            }
+        }
+        files.sort(new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return compareLogFiles(a.getFileName().toString(), b.getFileName().toString());
+            }
+        });
+        return files;
+    }
+
+    private Path findSuccessorOrNull() throws IOException {
+        final String current = myFileOrNull_.getFileName().toString();
+        for (Path file : listLogFiles()) {
+            if (compareLogFiles(file.getFileName().toString(), current) > 0) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Orders log files by the time their run started, and then by segment
+     * number, so "2014_08_06___16:00:22_10.txt" comes after
+     * "2014_08_06___16:00:22_9.txt".
+     */
+    static int compareLogFiles(String a, String b) {
+        final String stemA = a.substring(0, Math.max(0, a.lastIndexOf('.')));
+        final String stemB = b.substring(0, Math.max(0, b.lastIndexOf('.')));
+        final int runComparison = runOf(stemA).compareTo(runOf(stemB));
+        return (runComparison != 0) ? runComparison : Long.compare(segmentOf(stemA), segmentOf(stemB));
+    }
+
+    private static String runOf(String stem) {
+        final int underscore = stem.lastIndexOf('_');
+        return (segmentOf(stem) == 0) ? stem : stem.substring(0, underscore);
+    }
+
+    /**
+     * @return the number after the last underscore, or 0 for the first
+     * segment of a run, whose name ends in the time instead.
+     */
+    private static long segmentOf(String stem) {
+        final int underscore = stem.lastIndexOf('_');
+        if (underscore == -1 || underscore == stem.length() - 1) {
+            return 0;
+        }
+        for (int i = underscore + 1; i < stem.length(); ++i) {
+            if (!Character.isDigit(stem.charAt(i))) {
+                return 0;
+            }
+        }
+        try {
+            return Long.parseLong(stem.substring(underscore + 1));
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    private static Path compressedPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    /**
+     * Parses a readout written as JSON Lines by AppTester.
+     *
+     * @return null if the line is not one.
+     */
+    static Readout parseJsonLine(String line) {
+        final JsonReader reader = new JsonReader(line);
+        try {
+            reader.expect('{');
+            long epochMillis = 0;
+            String threadNameOrNull = null;
+            String locationOrNull = null;
+            String message = "";
+            Rank severity = Rank.NORMAL;
+            ReadoutCondition condition = ReadoutCondition.NON_ERROR;
+            final ArrayList<Object> keyValues = new ArrayList<>();
+            if (!reader.tryExpect('}')) {
+                do {
+                    final String name = reader.readString();
+                    reader.expect(':');
+                    final Object value = reader.readValue();
+                    switch (name) {
+                        case "ts":
+                            epochMillis = Instant.parse((String) value).toEpochMilli();
+                            break;
+                        case "thread":
+                            threadNameOrNull = (String) value;
+                            break;
+                        case "site":
+                            locationOrNull = (String) value;
+                            break;
+                        case "rank":
+                            severity = Rank.valueOf((String) value);
+                            break;
+                        case "condition":
+                            condition = ReadoutCondition.valueOf((String) value);
+                            break;
+                        case "msg":
+                            message = (String) value;
+                            break;
+                        default:
+                            keyValues.add(name);
+                            keyValues.add(value);
+                    }
+                } while (reader.tryExpect(','));
+                reader.expect('}');
+            }
+            return new Readout(epochMillis, threadNameOrNull, locationOrNull, message,
+                    keyValues.isEmpty() ? null : keyValues.toArray(), true, condition, severity);
+        } catch (IllegalArgumentException | ClassCastException | DateTimeParseException
+                | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the flat JSON objects AppTester writes: strings, numbers,
+     * booleans and null, no nesting.
+     */
+    private static final class JsonReader {
+
+        private final String myText_;
+        private int myPosition_ = 0;
+
+        JsonReader(String text) {
+            myText_ = text;
+        }
+
+        private void skipSpaces() {
+            while (myPosition_ < myText_.length() && Character.isWhitespace(myText_.charAt(myPosition_))) {
+                ++myPosition_;
+            }
+        }
+
+        boolean tryExpect(char c) {
+            skipSpaces();
+            if (myPosition_ < myText_.length() && myText_.charAt(myPosition_) == c) {
+                ++myPosition_;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!tryExpect(c)) {
+                throw new IllegalArgumentException("Expected " + c + " at " + myPosition_);
+            }
+        }
+
+        String readString() {
+            expect('"');
+            final StringBuilder string = new StringBuilder();
+            while (true) {
+                final char c = myText_.charAt(myPosition_++);
+                if (c == '"') {
+                    return string.toString();
+                } else if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                final char escaped = myText_.charAt(myPosition_++);
+                switch (escaped) {
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'u':
+                        string.append((char) Integer.parseInt(myText_.substring(myPosition_, myPosition_ + 4), 16));
+                        myPosition_ += 4;
+                        break;
+                    default:
+                        string.append(escaped); // " \ and /
+                }
+            }
+        }
+
+        Object readValue() {
+            skipSpaces();
+            final char c = myText_.charAt(myPosition_);
+            if (c == '"') {
+                return readString();
+            }
+            final int start = myPosition_;
+            while (myPosition_ < myText_.length() && ",}] \t".indexOf(myText_.charAt(myPosition_)) == -1) {
+                ++myPosition_;
+            }
+            final String token = myText_.substring(start, myPosition_);
+            switch (token) {
+                case "true":
+                    return Boolean.TRUE;
+                case "false":
+                    return Boolean.FALSE;
+                case "null":
+                    return null;
+                default:
+                    if (token.indexOf('.') == -1 && token.indexOf('e') == -1 && token.indexOf('E') == -1) {
+                        try {
+                            return Long.parseLong(token);
+                        } catch (NumberFormatException nfe) {
+                            // Too big for a long.
+                        }
+                    }
+                    return Double.parseDouble(token); // NumberFormatException is an IllegalArgumentException.
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package Utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link LogFileHandle} that appends text by copying it into a memory mapped
+ * region of the log file. Writing a readout is a memory copy with no system
+ * call, and the operating system's page cache keeps the text even if the JVM
+ * dies before {@link #close() } is called.
+ *
+ * The file is mapped {@link #CHUNK_SIZE} bytes at a time and remapped when a
+ * chunk fills up, so the file on disk is longer than the text in it (padded
+ * with zero bytes) until {@link #close() } truncates it to the real length.
+ * Padding left by a run that died first is cut off when the file is opened
+ * again.
+ *
+ * @author johnmichaelreed2
+ */
+final class MappedLogFileHandle extends LogFileHandle {
+
+    /**
+     * How much of the file is mapped at a time.
+     */
+    static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private FileChannel myChannelOrNull_;
+    private MappedByteBuffer myChunk_;
+
+    /**
+     * Where in the file {@link #myChunk_} starts.
+     */
+    private long myChunkStart_;
+
+    MappedLogFileHandle(Path path) throws IOException {
+        super(path);
+        open();
+    }
+
+    /**
+     * Maps the first chunk after any text already in the file.
+     */
+    private void open() throws IOException {
+        myChannelOrNull_ = FileChannel.open(getPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        rememberOpenedFile();
+        long start = myChannelOrNull_.size();
+        if (!getPath().getFileName().toString().endsWith(".bin")) {
+            // Padding left by a run that died before close(). Binary readouts can end in a zero byte.
+            start = textLength(myChannelOrNull_, start);
+            myChannelOrNull_.truncate(start);
+        }
+        map(start, CHUNK_SIZE);
+    }
+
+    /**
+     * @return the length of the file without the zero bytes at its end.
+     */
+    private static long textLength(FileChannel channel, long size) throws IOException {
+        final ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        long end = size;
+        while (end > 0) {
+            final long blockStart = Math.max(0, end - block.capacity());
+            block.clear().limit((int) (end - blockStart));
+            while (block.hasRemaining()) {
+                if (channel.read(block, blockStart + block.position()) < 0) {
+                    return end; // shorter than it said.
+                }
+            }
+            for (int i = block.limit() - 1; i >= 0; --i) {
+                if (block.get(i) != 0) {
+                    return blockStart + i + 1;
+                }
+            }
+            end = blockStart;
+        }
+        return 0;
+    }
+
+    private void map(long start, int size) throws IOException {
+        myChunkStart_ = start;
+        myChunk_ = myChannelOrNull_.map(FileChannel.MapMode.READ_WRITE, start, size);
+    }
+
+    /**
+     * @return the length of the text written so far.
+     */
+    private long length() {
+        return myChunkStart_ + myChunk_.position();
+    }
+
+    @Override
+    synchronized boolean tryWrite(ByteBuffer bytes, boolean isImportantOrError) {
+        if (myChannelOrNull_ == null) {
+            return false;
+        }
+        try {
+            if (wasReplaced()) {
+                closeChannel();
+                open();
+            }
+            if (bytes.remaining() > myChunk_.remaining()) {
+                map(length(), Math.max(CHUNK_SIZE, bytes.remaining()));
+            }
+            myChunk_.put(bytes);
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Mapped text is already in the page cache, so there is nothing to flush.
+     */
+    @Override
+    synchronized boolean tryFlush() {
+        return myChannelOrNull_ != null;
+    }
+
+    /**
+     * Forces the mapped chunk, and through the channel any chunks mapped
+     * before it.
+     */
+    @Override
+    synchronized boolean tryForce() {
+        if (myChannelOrNull_ == null) {
+            return false;
+        }
+        try {
+            myChunk_.force();
+            myChannelOrNull_.force(false);
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Cuts off the unused part of the last mapped chunk and closes the file.
+     */
+    private void closeChannel() throws IOException {
+        final FileChannel channel = myChannelOrNull_;
+        myChannelOrNull_ = null;
+        try {
+            if (isForcedOnClose()) {
+                myChunk_.force();
+            }
+            channel.truncate(length());
+            if (isForcedOnClose()) {
+                channel.force(true); // the length changed too.
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    synchronized void close() throws IOException {
+        if (myChannelOrNull_ != null) {
+            closeChannel();
+        }
+    }
+}
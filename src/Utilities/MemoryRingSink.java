@@ -0,0 +1,62 @@
+package Utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link LogSink} that keeps the most recent readouts in memory, for tests
+ * and for showing recent output in an application's own user interface.
+ *
+ * @author johnmichaelreed2
+ */
+public class MemoryRingSink implements LogSink {
+
+    private final Readout[] myRing_;
+
+    /**
+     * The number of readouts ever written. The next one goes to
+     * myWritten_ % capacity.
+     */
+    private long myWritten_ = 0;
+
+    /**
+     * @param capacity how many readouts to keep.
+     */
+    public MemoryRingSink(int capacity) {
+        AppTester.check(capacity > 0, "The ring must hold at least one readout.");
+        myRing_ = new Readout[capacity];
+    }
+
+    @Override
+    public synchronized void write(Readout readout) {
+        myRing_[(int) (myWritten_ % myRing_.length)] = readout;
+        ++myWritten_;
+    }
+
+    /**
+     * @return the readouts kept, oldest first.
+     */
+    public synchronized List<Readout> getReadouts() {
+        final int kept = (int) Math.min(myWritten_, myRing_.length);
+        final ArrayList<Readout> readouts = new ArrayList<>(kept);
+        for (long i = myWritten_ - kept; i < myWritten_; ++i) {
+            readouts.add(myRing_[(int) (i % myRing_.length)]);
+        }
+        return readouts;
+    }
+
+    /**
+     * @return the number of readouts ever written, including ones no longer
+     * kept.
+     */
+    public synchronized long getWrittenCount() {
+        return myWritten_;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < myRing_.length; ++i) {
+            myRing_[i] = null;
+        }
+        myWritten_ = 0;
+    }
+}
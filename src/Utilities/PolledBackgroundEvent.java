@@ -0,0 +1,40 @@
+package Utilities;
+
+/**
+ * Turns a {@link BackgroundEvent_Interface} into a
+ * {@link PushedBackgroundEvent_Interface}: AppTester polls
+ * {@link BackgroundEvent_Interface#checkForEventOccurance() } at regular
+ * intervals with {@link #poll() }, and signals when it returns true, so
+ * polled events are responded to the same way as pushed ones.
+ *
+ * @author johnmichaelreed2
+ */
+final class PolledBackgroundEvent implements PushedBackgroundEvent_Interface {
+
+    private final BackgroundEvent_Interface myEvent_;
+    private volatile BackgroundEventSignal mySignalOrNull_ = null;
+
+    PolledBackgroundEvent(BackgroundEvent_Interface event) {
+        myEvent_ = event;
+    }
+
+    @Override
+    public void startSignalling(BackgroundEventSignal signal) {
+        mySignalOrNull_ = signal;
+    }
+
+    @Override
+    public void respondToEventOccurance() {
+        myEvent_.respondToEventOccurance();
+    }
+
+    /**
+     * Checks for the event once, and signals if it occurred.
+     */
+    void poll() {
+        final BackgroundEventSignal signal = mySignalOrNull_;
+        if (signal != null && !signal.isStopped() && myEvent_.checkForEventOccurance()) {
+            signal.signal();
+        }
+    }
+}
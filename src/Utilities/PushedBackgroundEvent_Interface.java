@@ -0,0 +1,28 @@
+package Utilities;
+
+/**
+ * Represents an event in the background whose source says when it happens,
+ * so nothing has to be polled for. See
+ * {@link AppTester#tryListenForBackgroundEvent(Utilities.PushedBackgroundEvent_Interface) }.
+ * @author johnmichaelreed2
+ */
+public interface PushedBackgroundEvent_Interface {
+
+    /**
+     * Called once, when AppTester starts listening for the event. The source
+     * of the event keeps the signal and calls
+     * {@link BackgroundEventSignal#signal() } from any thread whenever the
+     * event occurs, or hands it a future with
+     * {@link BackgroundEventSignal#signalWhenComplete(java.util.concurrent.CompletionStage) }.
+     * @param signal the signal for this event.
+     */
+    public void startSignalling(BackgroundEventSignal signal);
+
+    /**
+     * This method is triggered right after the event is signalled, on the
+     * "Event_Checker" thread, or on a worker thread under
+     * {@link AppTester.EventExecution#PARALLEL}. Signals that come while it
+     * waits to run are responded to once.
+     */
+    public void respondToEventOccurance();
+}
@@ -0,0 +1,128 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+
+/**
+ * One readout, as handed to a {@link LogSink}. Immutable, so the same readout
+ * can sit in the queues of several sinks at once.
+ *
+ * @author johnmichaelreed2
+ */
+public final class Readout {
+
+    private final long myEpochMillis_;
+    private final String myThreadNameOrNull_;
+    private final String myLocationOrNull_;
+    private final String myMessage_;
+    private final Object[] myKeyValuesOrNull_;
+    private final boolean myWithNewline_;
+    private final ReadoutCondition myCondition_;
+    private final Rank mySeverity_;
+
+    /**
+     * The readout laid out as in the terminal, made when first asked for.
+     */
+    private String myTextOrNull_ = null;
+
+    Readout(long epochMillis, String threadNameOrNull, String locationOrNull, String message,
+            Object[] keyValuesOrNull, boolean withNewline, ReadoutCondition condition, Rank severity) {
+        myEpochMillis_ = epochMillis;
+        myThreadNameOrNull_ = threadNameOrNull;
+        myLocationOrNull_ = locationOrNull;
+        myMessage_ = message;
+        myKeyValuesOrNull_ = keyValuesOrNull;
+        myWithNewline_ = withNewline;
+        myCondition_ = condition;
+        mySeverity_ = severity;
+    }
+
+    /**
+     * @return when the print statement ran, in milliseconds since 1970.
+     */
+    public long getEpochMillis() {
+        return myEpochMillis_;
+    }
+
+    /**
+     * @return the name of the printing thread, or null for a readout without
+     * a header line.
+     */
+    public String getThreadNameOrNull() {
+        return myThreadNameOrNull_;
+    }
+
+    /**
+     * @return where the print statement is, such as
+     * "PackageName.ClassName.method(ClassName.java:291)", or null for a
+     * readout without a header line.
+     */
+    public String getLocationOrNull() {
+        return myLocationOrNull_;
+    }
+
+    public String getMessage() {
+        return myMessage_;
+    }
+
+    /**
+     * @return a copy of the keys and values passed to
+     * {@link AppTester#printKV(java.lang.String, java.lang.Object...) } and
+     * the like, each key followed by its value, or null if there are none.
+     */
+    public Object[] getKeyValuesOrNull() {
+        return (myKeyValuesOrNull_ == null) ? null : myKeyValuesOrNull_.clone();
+    }
+
+    /**
+     * @return the keys and values themselves, not to be changed.
+     */
+    Object[] keyValuesOrNull() {
+        return myKeyValuesOrNull_;
+    }
+
+    /**
+     * @return whether the readout ends with a newline.
+     */
+    public boolean isWithNewline() {
+        return myWithNewline_;
+    }
+
+    public ReadoutCondition getCondition() {
+        return myCondition_;
+    }
+
+    public Rank getSeverity() {
+        return mySeverity_;
+    }
+
+    /**
+     * @return the readout laid out as it is in the terminal, with "\n" line
+     * endings.
+     */
+    public String getText() {
+        String text = myTextOrNull_;
+        if (text == null) {
+            final StringBuilder builder = new StringBuilder(myMessage_.length() + 64);
+            if (myThreadNameOrNull_ != null && myLocationOrNull_ != null) {
+                builder.append("\nThread \"").append(myThreadNameOrNull_).append("\": ")
+                        .append(myLocationOrNull_).append('\n');
+            }
+            builder.append(myMessage_);
+            if (myKeyValuesOrNull_ != null) {
+                ReadoutFormatter.appendKeyValues(builder, myKeyValuesOrNull_);
+            }
+            if (myWithNewline_) {
+                builder.append('\n');
+            }
+            text = builder.toString();
+            myTextOrNull_ = text; // Strings are immutable, so a race only means making it twice.
+        }
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+}
@@ -0,0 +1,307 @@
+package Utilities;
+
+import Utilities.AppTester.Rank;
+import Utilities.AppTester.ReadoutCondition;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Formats readouts without creating garbage. Each thread gets one formatter
+ * whose text builder and byte buffers are reused from readout to readout, so
+ * once they have grown to fit the longest readout seen so far, formatting and
+ * encoding a readout allocates nothing.
+ *
+ * A readout with a thread name and call site looks like this:
+ * <pre>
+ * (blank line)
+ * Thread "main": PackageName.ClassName.method(ClassName.java:291)
+ * message
+ * </pre>
+ *
+ * @author johnmichaelreed2
+ */
+final class ReadoutFormatter {
+
+    private static final ThreadLocal<ReadoutFormatter> myFormatters_ = new ThreadLocal<ReadoutFormatter>() {
+        @Override
+        protected ReadoutFormatter initialValue() {
+            return new ReadoutFormatter();
+        }
+    };
+
+    /**
+     * The charset the terminal expects, as reported by the JVM.
+     */
+    private static final Charset TERMINAL_CHARSET = findTerminalCharset();
+
+    private static Charset findTerminalCharset() {
+        for (final String property : new String[]{"stdout.encoding", "sun.stdout.encoding"}) {
+            final String name = System.getProperty(property);
+            if (name != null) {
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException iae) {
+                    // Try the next one.
+                }
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * The readout as it appears in the terminal, with "\n" line endings.
+     */
+    private final StringBuilder myText_ = new StringBuilder(256);
+    private char[] myChars_ = new char[256];
+    private CharBuffer myCharBuffer_ = CharBuffer.wrap(myChars_);
+    private ByteBuffer myFileBytes_ = ByteBuffer.allocate(1024);
+    private ByteBuffer myTerminalBytes_ = ByteBuffer.allocate(1024);
+    private final JsonWriter myJson_ = new JsonWriter();
+    private final CharsetEncoder myTerminalEncoder_ = TERMINAL_CHARSET.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ReadoutFormatter() {
+    }
+
+    /**
+     * @return the current thread's formatter.
+     */
+    static ReadoutFormatter get() {
+        return myFormatters_.get();
+    }
+
+    /**
+     * Lays out a readout, replacing the previous one.
+     *
+     * @param threadNameOrNull the name of the printing thread, or null for a
+     * readout without a header line.
+     * @param locationOrNull the call site, or null for a readout without a
+     * header line.
+     * @param message the message.
+     * @param keyValuesOrNull keys and values to follow the message, as in
+     * "message key=value key2=value2", or null for none.
+     * @param withNewline whether to end the readout with a newline.
+     * @return this formatter.
+     */
+    ReadoutFormatter format(String threadNameOrNull, String locationOrNull, String message,
+            Object[] keyValuesOrNull, boolean withNewline) {
+        myText_.setLength(0);
+        if (threadNameOrNull != null && locationOrNull != null) {
+            myText_.append("\nThread \"").append(threadNameOrNull).append("\": ")
+                    .append(locationOrNull).append('\n');
+        }
+        myText_.append(message);
+        if (keyValuesOrNull != null) {
+            appendKeyValues(myText_, keyValuesOrNull);
+        }
+        if (withNewline) {
+            myText_.append('\n');
+        }
+        return this;
+    }
+
+    /**
+     * Turns every key, and every value that is not a string, number, boolean
+     * or null, into its toString(), so the readout can be written out later,
+     * on another thread, without calling into the caller's objects. A
+     * toString() that throws is written as the exception instead.
+     *
+     * @return the keys and values, or a copy if anything had to be turned
+     * into a string, or null for none.
+     */
+    static Object[] snapshotKeyValues(Object[] keyValuesOrNull) {
+        if (keyValuesOrNull == null) {
+            return null;
+        }
+        final Object[] keyValues = keyValuesOrNull;
+        Object[] snapshot = keyValues;
+        for (int i = 0; i < keyValues.length; ++i) {
+            final Object item = keyValues[i];
+            final boolean isKey = (i % 2) == 0;
+            if (item == null || item instanceof String || (!isKey && (item instanceof Long
+                    || item instanceof Integer || item instanceof Short || item instanceof Byte
+                    || item instanceof Double || item instanceof Float || item instanceof Boolean))) {
+                continue;
+            }
+            if (snapshot == keyValues) {
+                snapshot = keyValues.clone();
+            }
+            try {
+                snapshot[i] = String.valueOf(item);
+            } catch (RuntimeException re) {
+                snapshot[i] = "(toString() threw " + re + ")";
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Appends " key=value" for each pair. A key without a value gets null.
+     *
+     * @return the text.
+     */
+    static StringBuilder appendKeyValues(StringBuilder text, Object[] keyValues) {
+        for (int i = 0; i < keyValues.length; i += 2) {
+            text.append(' ').append(keyValues[i]).append('=')
+                    .append((i + 1 < keyValues.length) ? keyValues[i + 1] : null);
+        }
+        return text;
+    }
+
+    /**
+     * @return the current readout with "\n" line endings.
+     */
+    CharSequence getText() {
+        return myText_;
+    }
+
+    /**
+     * Encodes the current readout as UTF-8 with each "\n" replaced by the
+     * given line separator, in a single pass.
+     *
+     * @return a buffer, ready to be read, that stays valid until the next call.
+     */
+    ByteBuffer encodeForFile(String lineSeparator) {
+        final int worstCase = maxUtf8Length(myText_, lineSeparator);
+        if (myFileBytes_.capacity() < worstCase) {
+            myFileBytes_ = ByteBuffer.allocate(Math.max(worstCase, 2 * myFileBytes_.capacity()));
+        }
+        final int length = putUtf8(myText_, lineSeparator, myFileBytes_.array(), 0);
+        myFileBytes_.clear();
+        myFileBytes_.limit(length);
+        return myFileBytes_;
+    }
+
+    /**
+     * Encodes a readout as one line of JSON, such as
+     * <pre>
+     * {"ts":"2014-08-06T16:00:22.123Z","thread":"main","site":"A.b(A.java:3)","rank":"NORMAL","condition":"NON_ERROR","msg":"Hello","key":"value"}
+     * </pre>
+     * The thread and site are left out for readouts without a header line.
+     * Keys and values follow the standard fields. Strings are escaped as
+     * they are written, so the line never contains a raw line break.
+     *
+     * @return a buffer, ready to be read, that stays valid until the next call.
+     */
+    ByteBuffer encodeJsonLine(long epochMillis, String threadNameOrNull, String locationOrNull,
+            String message, Object[] keyValuesOrNull, ReadoutCondition condition, Rank severity,
+            String lineSeparator) {
+        myJson_.reset().beginObject().name("ts").timestamp(epochMillis);
+        if (threadNameOrNull != null && locationOrNull != null) {
+            myJson_.name("thread").value(threadNameOrNull).name("site").value(locationOrNull);
+        }
+        myJson_.name("rank").value(severity.name()).name("condition").value(condition.name())
+                .name("msg").value(message);
+        if (keyValuesOrNull != null) {
+            for (int i = 0; i < keyValuesOrNull.length; i += 2) {
+                myJson_.name(String.valueOf(keyValuesOrNull[i]))
+                        .value((i + 1 < keyValuesOrNull.length) ? keyValuesOrNull[i + 1] : null);
+            }
+        }
+        return myJson_.endObject().newline(lineSeparator).toByteBuffer();
+    }
+
+    /**
+     * Encodes a readout handed to a {@link LogSink}.
+     *
+     * @param format {@link AppTester.LogFileFormat#TEXT} or
+     * {@link AppTester.LogFileFormat#JSON_LINES}.
+     * @return a buffer, ready to be read, that stays valid until the next call.
+     */
+    ByteBuffer encode(Readout readout, AppTester.LogFileFormat format, String lineSeparator) {
+        if (format == AppTester.LogFileFormat.JSON_LINES) {
+            return encodeJsonLine(readout.getEpochMillis(), readout.getThreadNameOrNull(),
+                    readout.getLocationOrNull(), readout.getMessage(), readout.keyValuesOrNull(),
+                    readout.getCondition(), readout.getSeverity(), lineSeparator);
+        }
+        return format(readout.getThreadNameOrNull(), readout.getLocationOrNull(), readout.getMessage(),
+                readout.keyValuesOrNull(), readout.isWithNewline()).encodeForFile(lineSeparator);
+    }
+
+    /**
+     * @return the most bytes that {@link #putUtf8(java.lang.CharSequence, java.lang.String, byte[], int)
+     * } could need for the text.
+     */
+    static int maxUtf8Length(CharSequence text, String lineSeparatorOrNull) {
+        // Three bytes per char is the most UTF-8 needs for chars outside of
+        // surrogate pairs, and a pair needs four bytes for two chars.
+        final int perChar = lineSeparatorOrNull == null ? 3 : Math.max(3, lineSeparatorOrNull.length());
+        return text.length() * perChar;
+    }
+
+    /**
+     * Encodes text as UTF-8 into an array in a single pass, without
+     * allocating.
+     *
+     * @param text the text to encode.
+     * @param lineSeparatorOrNull what to replace each "\n" with, or null to
+     * leave line endings alone.
+     * @param bytes where the encoded text goes. Must have room for
+     * {@link #maxUtf8Length(java.lang.CharSequence, java.lang.String) } bytes
+     * after the position.
+     * @param position where in the array to start.
+     * @return the position just past the encoded text.
+     */
+    static int putUtf8(CharSequence text, String lineSeparatorOrNull, byte[] bytes, int position) {
+        final int length = text.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = text.charAt(i);
+            if (c == '\n' && lineSeparatorOrNull != null) {
+                for (int j = 0; j < lineSeparatorOrNull.length(); ++j) {
+                    bytes[position++] = (byte) lineSeparatorOrNull.charAt(j);
+                }
+            } else if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[position++] = (byte) '?'; // an unpaired surrogate
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Encodes the current readout in the terminal's charset, line endings
+     * untouched.
+     *
+     * @return a buffer backed by an array, ready to be read, that stays valid
+     * until the next call.
+     */
+    ByteBuffer encodeForTerminal() {
+        final int length = myText_.length();
+        if (myChars_.length < length) {
+            myChars_ = new char[Math.max(length, 2 * myChars_.length)];
+            myCharBuffer_ = CharBuffer.wrap(myChars_);
+        }
+        myText_.getChars(0, length, myChars_, 0);
+        myCharBuffer_.clear();
+        myCharBuffer_.limit(length);
+        final int worstCase = (int) Math.ceil(length * (double) myTerminalEncoder_.maxBytesPerChar());
+        if (myTerminalBytes_.capacity() < worstCase) {
+            myTerminalBytes_ = ByteBuffer.allocate(Math.max(worstCase, 2 * myTerminalBytes_.capacity()));
+        }
+        myTerminalBytes_.clear();
+        myTerminalEncoder_.reset();
+        myTerminalEncoder_.encode(myCharBuffer_, myTerminalBytes_, true);
+        myTerminalEncoder_.flush(myTerminalBytes_);
+        myTerminalBytes_.flip();
+        return myTerminalBytes_;
+    }
+}
@@ -0,0 +1,217 @@
+package Utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link LogFileHandle} that spreads readouts over several shard files so
+ * that printing threads do not have to take turns. Each thread is assigned one
+ * stripe for life, and each stripe has its own lock, buffer and file, named
+ * after the log file plus a stripe number, such as
+ * "2014_08_06___16:00:22.txt.3.shard". A shard file is created when its stripe
+ * is first used.
+ *
+ * Every record is stamped with a number from a single sequence shared by all
+ * stripes, taken while the stripe is locked. A readout that finished before
+ * another started therefore has the lower number, and
+ * {@link ShardedLogMerger} rebuilds the single log file AppTester would have
+ * written by merging the shards in sequence order.
+ *
+ * Each record in a shard file is laid out as:
+ * <pre>
+ * sequence(8 bytes, big endian) length(4 bytes, big endian) bytes
+ * </pre>
+ *
+ * @author johnmichaelreed2
+ */
+final class ShardedLogFileHandle extends LogFileHandle {
+
+    static final String SHARD_EXTENSION = ".shard";
+    static final int RECORD_HEADER_SIZE = 8 + 4;
+
+    /**
+     * Hands out stripes to threads round robin.
+     */
+    private static final AtomicInteger myNextStripe_ = new AtomicInteger();
+
+    private static final ThreadLocal<Integer> myStripeNumber_ = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return myNextStripe_.getAndIncrement();
+        }
+    };
+
+    private final AtomicLong mySequence_ = new AtomicLong();
+    private final Stripe[] myStripes_;
+    private volatile boolean isClosed_ = false;
+    private volatile AppTester.FlushPolicy myFlushPolicy_ = AppTester.FlushPolicy.ALWAYS;
+    private volatile int myFlushByteThreshold_ = 8 * 1024;
+    private volatile long myFlushMillisecondInterval_ = 200;
+
+    /**
+     * One shard file and the buffer its records are framed in.
+     */
+    private final class Stripe {
+
+        private final Path myPath_;
+        private BufferedLogFileHandle myFileOrNull_ = null;
+        private ByteBuffer myRecord_ = ByteBuffer.allocate(1024);
+
+        Stripe(Path path) {
+            myPath_ = path;
+        }
+
+        synchronized boolean tryWrite(ByteBuffer bytes, boolean isImportantOrError) {
+            if (isClosed_) {
+                return false;
+            }
+            try {
+                if (myFileOrNull_ == null) {
+                    myFileOrNull_ = new BufferedLogFileHandle(myPath_);
+                    myFileOrNull_.setFlushPolicy(myFlushPolicy_, myFlushByteThreshold_, myFlushMillisecondInterval_);
+                }
+            } catch (IOException ioe) {
+                return false;
+            }
+            final int length = bytes.remaining();
+            if (myRecord_.capacity() < RECORD_HEADER_SIZE + length) {
+                myRecord_ = ByteBuffer.allocate(Math.max(RECORD_HEADER_SIZE + length, 2 * myRecord_.capacity()));
+            }
+            myRecord_.clear();
+            myRecord_.putLong(mySequence_.getAndIncrement()).putInt(length).put(bytes);
+            myRecord_.flip();
+            return myFileOrNull_.tryWrite(myRecord_, isImportantOrError);
+        }
+
+        synchronized void setFlushPolicy(AppTester.FlushPolicy policy, int byteThreshold, long millisecondInterval) {
+            if (myFileOrNull_ != null) {
+                myFileOrNull_.setFlushPolicy(policy, byteThreshold, millisecondInterval);
+            }
+        }
+
+        synchronized boolean tryFlush() {
+            return myFileOrNull_ == null || myFileOrNull_.tryFlush();
+        }
+
+        boolean tryForce() {
+            final BufferedLogFileHandle fileOrNull;
+            synchronized (this) {
+                fileOrNull = myFileOrNull_;
+            }
+            return fileOrNull == null || fileOrNull.tryForce();
+        }
+
+        synchronized boolean exists() {
+            return myFileOrNull_ != null;
+        }
+
+        synchronized void close() throws IOException {
+            if (myFileOrNull_ != null) {
+                myFileOrNull_.setForcedOnClose(isForcedOnClose());
+                myFileOrNull_.close();
+            }
+        }
+    }
+
+    /**
+     * @param path the log file the shards are named after. It is not created.
+     */
+    ShardedLogFileHandle(Path path) {
+        super(path);
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes *= 2;
+        }
+        myStripes_ = new Stripe[stripes];
+        for (int i = 0; i < stripes; ++i) {
+            myStripes_[i] = new Stripe(shardPath(path, i));
+        }
+        rememberOpenedFile();
+    }
+
+    /**
+     * @return the path of a shard of the log file.
+     */
+    static Path shardPath(Path path, int stripe) {
+        return path.resolveSibling(path.getFileName() + "." + stripe + SHARD_EXTENSION);
+    }
+
+    @Override
+    boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    List<Path> getFiles() {
+        final ArrayList<Path> files = new ArrayList<>();
+        for (Stripe stripe : myStripes_) {
+            if (stripe.exists()) {
+                files.add(stripe.myPath_);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    void setFlushPolicy(AppTester.FlushPolicy policy, int byteThreshold, long millisecondInterval) {
+        myFlushPolicy_ = policy;
+        myFlushByteThreshold_ = byteThreshold;
+        myFlushMillisecondInterval_ = millisecondInterval;
+        for (Stripe stripe : myStripes_) {
+            stripe.setFlushPolicy(policy, byteThreshold, millisecondInterval);
+        }
+    }
+
+    @Override
+    boolean tryWrite(ByteBuffer bytes, boolean isImportantOrError) {
+        final int stripe = myStripeNumber_.get() & (myStripes_.length - 1);
+        return myStripes_[stripe].tryWrite(bytes, isImportantOrError);
+    }
+
+    @Override
+    boolean tryFlush() {
+        if (isClosed_) {
+            return false;
+        }
+        boolean success = true;
+        for (Stripe stripe : myStripes_) {
+            success &= stripe.tryFlush();
+        }
+        return success;
+    }
+
+    @Override
+    boolean tryForce() {
+        if (isClosed_) {
+            return false;
+        }
+        boolean success = true;
+        for (Stripe stripe : myStripes_) {
+            success &= stripe.tryForce();
+        }
+        return success;
+    }
+
+    @Override
+    void close() throws IOException {
+        isClosed_ = true;
+        IOException firstFailureOrNull = null;
+        for (Stripe stripe : myStripes_) {
+            try {
+                stripe.close();
+            } catch (IOException ioe) {
+                if (firstFailureOrNull == null) {
+                    firstFailureOrNull = ioe;
+                }
+            }
+        }
+        if (firstFailureOrNull != null) {
+            throw firstFailureOrNull;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package Utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Merges the shard files written under
+ * {@link AppTester.LogFileBackend#SHARDED} back into the single log file
+ * AppTester would have written, in the order the readouts happened. Reads one
+ * record at a time from each shard, so shards of any size can be merged.
+ *
+ * Run with: java -cp [classes] Utilities.ShardedLogMerger [log file or shard files...]
+ *
+ * Given a log file name such as "Log_Files/2014_08_06___16:00:22.txt", merges
+ * every shard of it, compressed or not. The merged log goes to standard out.
+ * Like {@link BinaryLogDecoder}, this tool does not use {@link AppTester}.
+ *
+ * @author johnmichaelreed2
+ */
+public class ShardedLogMerger {
+
+    /**
+     * The next record of one shard.
+     */
+    private static final class Cursor {
+
+        private final DataInputStream myInput_;
+        private long mySequence_;
+        private byte[] myBytes_ = new byte[1024];
+        private int myLength_;
+
+        Cursor(InputStream input) {
+            myInput_ = new DataInputStream(input);
+        }
+
+        /**
+         * @return false at the end of the shard.
+         */
+        boolean tryAdvance() throws IOException {
+            try {
+                mySequence_ = myInput_.readLong();
+            } catch (EOFException eofe) {
+                return false;
+            }
+            myLength_ = myInput_.readInt();
+            if (myLength_ < 0) {
+                throw new IOException("Malformed shard record.");
+            }
+            if (myBytes_.length < myLength_) {
+                myBytes_ = new byte[Math.max(myLength_, 2 * myBytes_.length)];
+            }
+            myInput_.readFully(myBytes_, 0, myLength_);
+            return true;
+        }
+    }
+
+    private final PriorityQueue<Cursor> myCursors_ = new PriorityQueue<>(new Comparator<Cursor>() {
+        @Override
+        public int compare(Cursor a, Cursor b) {
+            return Long.compare(a.mySequence_, b.mySequence_);
+        }
+    });
+
+    /**
+     * @param shards the shard files, each positioned at its start. Closing
+     * them is up to the caller.
+     */
+    public ShardedLogMerger(List<InputStream> shards) throws IOException {
+        for (InputStream shard : shards) {
+            final Cursor cursor = new Cursor(shard);
+            if (cursor.tryAdvance()) {
+                myCursors_.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * Writes out the records of all shards in sequence order.
+     */
+    public void mergeTo(OutputStream output) throws IOException {
+        while (!myCursors_.isEmpty()) {
+            final Cursor next = myCursors_.poll();
+            output.write(next.myBytes_, 0, next.myLength_);
+            if (next.tryAdvance()) {
+                myCursors_.add(next);
+            }
+        }
+    }
+
+    /**
+     * @param logFile the name of a sharded log file.
+     * @return the shard files of the log file, compressed or not.
+     */
+    public static List<Path> findShards(Path logFile) throws IOException {
+        final Path folder = logFile.toAbsolutePath().getParent();
+        final String prefix = logFile.getFileName() + ".";
+        final ArrayList<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && (name.endsWith(ShardedLogFileHandle.SHARD_EXTENSION)
+                        || name.endsWith(ShardedLogFileHandle.SHARD_EXTENSION + ".gz"))) {
+                    shards.add(file);
+                }
+            }
+        }
+        return shards;
+    }
+
+    public static void main(String args[]) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java Utilities.ShardedLogMerger [log file or shard files...]");
+            System.exit(-1);
+        }
+        final ArrayList<Path> shards = new ArrayList<>();
+        for (String arg : args) {
+            final Path path = Paths.get(arg);
+            if (arg.endsWith(ShardedLogFileHandle.SHARD_EXTENSION)
+                    || arg.endsWith(ShardedLogFileHandle.SHARD_EXTENSION + ".gz")) {
+                shards.add(path);
+            } else {
+                shards.addAll(findShards(path));
+            }
+        }
+        final ArrayList<InputStream> inputs = new ArrayList<>();
+        try {
+            for (Path shard : shards) {
+                InputStream input = new BufferedInputStream(Files.newInputStream(shard), 64 * 1024);
+                if (shard.getFileName().toString().endsWith(".gz")) {
+                    input = new GZIPInputStream(input, 64 * 1024);
+                }
+                inputs.add(input);
+            }
+            final OutputStream output = new BufferedOutputStream(System.out, 64 * 1024);
+            new ShardedLogMerger(inputs).mergeTo(output);
+            output.flush();
+        } finally {
+            for (InputStream input : inputs) {
+                input.close();
+            }
+        }
+    }
+}
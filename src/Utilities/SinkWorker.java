@@ -0,0 +1,184 @@
+package Utilities;
+
+import Utilities.AppTester.FullBufferPolicy;
+import Utilities.AppTester.Rank;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds one {@link LogSink} from its own queue on its own daemon thread, named
+ * "Log_Sink_" plus the class of the sink.
+ *
+ * @author johnmichaelreed2
+ */
+final class SinkWorker {
+
+    /**
+     * How long the worker waits for a readout before checking whether it has
+     * been stopped.
+     */
+    private static final long POLL_MILLISECONDS = 100;
+
+    private final LogSink mySink_;
+    private final Rank myThreshold_;
+    private final FullBufferPolicy myPolicy_;
+    private final BlockingQueue<Readout> myQueue_;
+    private final AtomicLong myDroppedCount_ = new AtomicLong();
+    private final AtomicLong myFailedCount_ = new AtomicLong();
+    private final Thread myWorkerThread_;
+    private volatile boolean isStopped_ = false;
+
+    /**
+     * @param threshold the least important rank the sink gets.
+     * @param capacity how many readouts can wait in the queue. Ignored under
+     * {@link FullBufferPolicy#SPILL}, where the queue is unbounded.
+     * @param policy what a printing thread does when the queue is full.
+     */
+    SinkWorker(LogSink sink, Rank threshold, int capacity, FullBufferPolicy policy) {
+        mySink_ = sink;
+        myThreshold_ = threshold;
+        myPolicy_ = policy;
+        myQueue_ = (policy == FullBufferPolicy.SPILL)
+                ? new LinkedBlockingQueue<Readout>() : new ArrayBlockingQueue<Readout>(capacity);
+        myWorkerThread_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeUntilStopped();
+            }
+        }, "Log_Sink_" + sink.getClass().getSimpleName());
+        myWorkerThread_.setDaemon(true);
+        myWorkerThread_.start();
+    }
+
+    LogSink getSink() {
+        return mySink_;
+    }
+
+    Rank getThreshold() {
+        return myThreshold_;
+    }
+
+    /**
+     * @return true if readouts of this rank go to the sink.
+     */
+    boolean accepts(Rank severity) {
+        return myThreshold_.getImportance() <= severity.getImportance();
+    }
+
+    /**
+     * @return readouts thrown away because the queue was full.
+     */
+    long getDroppedCount() {
+        return myDroppedCount_.get();
+    }
+
+    /**
+     * @return readouts the sink threw an exception on.
+     */
+    long getFailedCount() {
+        return myFailedCount_.get();
+    }
+
+    /**
+     * Queues a readout for the sink, or drops it if the queue is full and the
+     * policy allows. Readouts printed by the sink itself are dropped rather
+     * than waited on, since only the sink could make room for them.
+     */
+    void offer(Readout readout) {
+        if (isStopped_ || myQueue_.offer(readout)) {
+            return;
+        }
+        if (myPolicy_ == FullBufferPolicy.DROP_NEWEST
+                || (myPolicy_ == FullBufferPolicy.DROP_LOWEST_RANK && readout.getSeverity() == Rank.UNIMPORTANT)
+                || Thread.currentThread() == myWorkerThread_) {
+            drop();
+            return;
+        }
+        // FullBufferPolicy.BLOCK, or a readout too important to drop.
+        try {
+            while (!myQueue_.offer(readout, POLL_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+                if (isStopped_) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            drop();
+        }
+    }
+
+    private void drop() {
+        myDroppedCount_.incrementAndGet();
+        AppTester.getMetricsRecorder().recordDropped();
+    }
+
+    private void writeUntilStopped() {
+        boolean wroteSinceFlush = false;
+        try {
+            while (true) {
+                Readout readout = myQueue_.poll();
+                if (readout == null) {
+                    if (wroteSinceFlush) {
+                        flush();
+                        wroteSinceFlush = false;
+                    }
+                    if (isStopped_) {
+                        return;
+                    }
+                    try {
+                        readout = myQueue_.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ie) {
+                        // Keep going until stopped.
+                    }
+                    if (readout == null) {
+                        continue;
+                    }
+                }
+                try {
+                    mySink_.write(readout);
+                } catch (Exception e) {
+                    myFailedCount_.incrementAndGet();
+                }
+                wroteSinceFlush = true;
+            }
+        } finally {
+            try {
+                mySink_.close();
+            } catch (Exception e) {
+                // Nothing more to do.
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            mySink_.flush();
+        } catch (Exception e) {
+            myFailedCount_.incrementAndGet();
+        }
+    }
+
+    /**
+     * Lets the worker write out what is queued and close the sink, waiting at
+     * most the given time. Readouts offered after this are ignored. The worker
+     * is not interrupted, since that would close any channel the sink is
+     * writing to.
+     *
+     * @return false if the worker was still busy when the time ran out.
+     */
+    boolean stop(long milliseconds) {
+        isStopped_ = true;
+        if (Thread.currentThread() == myWorkerThread_) {
+            return false;
+        }
+        try {
+            myWorkerThread_.join(milliseconds);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return !myWorkerThread_.isAlive();
+    }
+}
@@ -0,0 +1,110 @@
+package Utilities;
+
+import Utilities.AppTester.LogFileFormat;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LogSink} that sends readouts over TCP, as text or as JSON Lines,
+ * to a log collector. The connection is made when the first readout is
+ * written. If it breaks, readouts fail until a new connection is made, which
+ * is tried at most once every {@link #RECONNECT_MILLISECONDS} milliseconds so
+ * that a collector that is down does not slow the sink to a crawl.
+ *
+ * @author johnmichaelreed2
+ */
+public class SocketSink implements LogSink {
+
+    static final long RECONNECT_MILLISECONDS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLISECONDS = 1000;
+
+    private final String myHost_;
+    private final int myPort_;
+    private final LogFileFormat myFormat_;
+    private Socket mySocketOrNull_ = null;
+    private OutputStream myOutputOrNull_ = null;
+    private long myNextConnectMillis_ = 0;
+
+    /**
+     * @param format {@link LogFileFormat#TEXT} or
+     * {@link LogFileFormat#JSON_LINES}.
+     */
+    public SocketSink(String host, int port, LogFileFormat format) {
+        AppTester.check(host != null, "No null inputs");
+        AppTester.check(format == LogFileFormat.TEXT || format == LogFileFormat.JSON_LINES,
+                "A socket sink writes text or JSON Lines.");
+        myHost_ = host;
+        myPort_ = port;
+        myFormat_ = format;
+    }
+
+    @Override
+    public void write(Readout readout) throws IOException {
+        final OutputStream output = connect();
+        final ByteBuffer bytes = ReadoutFormatter.get().encode(readout, myFormat_, "\n");
+        try {
+            output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        } catch (IOException ioe) {
+            disconnect();
+            throw ioe;
+        }
+    }
+
+    private OutputStream connect() throws IOException {
+        if (myOutputOrNull_ != null) {
+            return myOutputOrNull_;
+        }
+        final long now = System.currentTimeMillis();
+        if (now < myNextConnectMillis_) {
+            throw new IOException("Not connected to " + myHost_ + ":" + myPort_);
+        }
+        myNextConnectMillis_ = now + RECONNECT_MILLISECONDS;
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(myHost_, myPort_), CONNECT_TIMEOUT_MILLISECONDS);
+        } catch (IOException ioe) {
+            socket.close();
+            throw ioe;
+        }
+        mySocketOrNull_ = socket;
+        myOutputOrNull_ = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        return myOutputOrNull_;
+    }
+
+    private void disconnect() {
+        try {
+            if (mySocketOrNull_ != null) {
+                mySocketOrNull_.close();
+            }
+        } catch (IOException ioe) {
+            // It is broken anyway.
+        }
+        mySocketOrNull_ = null;
+        myOutputOrNull_ = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (myOutputOrNull_ != null) {
+            try {
+                myOutputOrNull_.flush();
+            } catch (IOException ioe) {
+                disconnect();
+                throw ioe;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            disconnect();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package Utilities;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the stack traces printed recently so that a stack trace seen
+ * again can be printed as "same as trace #id (xN)" instead of in full. A stack
+ * trace is identified by a fingerprint of its throwable's class and frames,
+ * plus those of its causes and suppressed throwables, so the same failure with
+ * a different message still counts as a repeat. Only the most recently seen
+ * stack traces are remembered.
+ *
+ * Also renders stack traces, causes and suppressed throwables included, in
+ * time linear in the length of the text.
+ *
+ * @author johnmichaelreed2
+ */
+final class StackTraceCache {
+
+    /**
+     * What {@link #record(java.lang.Throwable) } found.
+     */
+    static final class Occurrence {
+
+        final int myId_;
+
+        /**
+         * How many times the stack trace has been seen, this time included.
+         */
+        final long myCount_;
+
+        Occurrence(int id, long count) {
+            myId_ = id;
+            myCount_ = count;
+        }
+
+        boolean isFirst() {
+            return myCount_ == 1;
+        }
+    }
+
+    private static final class Entry {
+
+        final int myId_;
+        final Class<?> myType_;
+        final StackTraceElement[] myFrames_;
+        long myCount_ = 0;
+
+        Entry(int id, Class<?> type, StackTraceElement[] frames) {
+            myId_ = id;
+            myType_ = type;
+            myFrames_ = frames;
+        }
+    }
+
+    private int myCapacity_;
+    private int myLastId_ = 0;
+
+    /**
+     * Fingerprints in order from least to most recently seen.
+     */
+    private final LinkedHashMap<Long, Entry> myEntries_ = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > myCapacity_;
+        }
+    };
+
+    /**
+     * @param capacity how many stack traces to remember.
+     */
+    StackTraceCache(int capacity) {
+        myCapacity_ = capacity;
+    }
+
+    synchronized int getCapacity() {
+        return myCapacity_;
+    }
+
+    synchronized void setCapacity(int capacity) {
+        myCapacity_ = capacity;
+        while (myEntries_.size() > capacity) {
+            myEntries_.remove(myEntries_.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Counts one more sighting of a stack trace.
+     *
+     * @return the id of the stack trace and how many times it has been seen.
+     */
+    synchronized Occurrence record(Throwable t) {
+        final StackTraceElement[] frames = t.getStackTrace();
+        final Long fingerprint = fingerprint(t, frames);
+        Entry entry = myEntries_.get(fingerprint);
+        if (entry == null || entry.myType_ != t.getClass() || !Arrays.equals(entry.myFrames_, frames)) {
+            // New, or a fingerprint collision, in which case the newer one wins.
+            entry = new Entry(++myLastId_, t.getClass(), frames);
+            myEntries_.put(fingerprint, entry);
+        }
+        ++entry.myCount_;
+        return new Occurrence(entry.myId_, entry.myCount_);
+    }
+
+    private static long fingerprint(Throwable t, StackTraceElement[] frames) {
+        final Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        seen.add(t);
+        long hash = mix(0x9E3779B97F4A7C15L, t.getClass().getName().hashCode());
+        hash = mixFrames(hash, frames);
+        return mixEnclosed(hash, t, seen);
+    }
+
+    private static long mixEnclosed(long hash, Throwable t, Set<Throwable> seen) {
+        for (Throwable suppressed : t.getSuppressed()) {
+            hash = mixThrowable(mix(hash, 'S'), suppressed, seen);
+        }
+        final Throwable causeOrNull = t.getCause();
+        if (causeOrNull != null) {
+            hash = mixThrowable(mix(hash, 'C'), causeOrNull, seen);
+        }
+        return hash;
+    }
+
+    private static long mixThrowable(long hash, Throwable t, Set<Throwable> seen) {
+        if (!seen.add(t)) {
+            return mix(hash, 'R'); // circular reference
+        }
+        hash = mix(hash, t.getClass().getName().hashCode());
+        hash = mixFrames(hash, t.getStackTrace());
+        return mixEnclosed(hash, t, seen);
+    }
+
+    private static long mixFrames(long hash, StackTraceElement[] frames) {
+        hash = mix(hash, frames.length);
+        for (StackTraceElement frame : frames) {
+            hash = mix(hash, frame.hashCode());
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        hash = (hash ^ value) * 0x100000001B3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Appends a throwable and all of its frames, causes and suppressed
+     * throwables, one per line. Laid out like
+     * {@link Throwable#printStackTrace() }, but without the "at" in front of
+     * each frame, like the rest of AppTester's stack traces.
+     */
+    static void appendThrowable(StringBuilder text, Throwable t) {
+        text.append(t).append('\n');
+        final StackTraceElement[] frames = t.getStackTrace();
+        appendFrames(text, frames, 0, frames.length);
+        appendEnclosedThrowables(text, t, frames);
+    }
+
+    /**
+     * Appends frames from first (inclusive) to last (exclusive), one per line.
+     */
+    static void appendFrames(StringBuilder text, StackTraceElement[] frames, int first, int last) {
+        for (int i = first; i < last; ++i) {
+            text.append(frames[i]).append('\n');
+        }
+    }
+
+    /**
+     * Appends the suppressed throwables and causes of a throwable whose own
+     * frames have already been appended.
+     *
+     * @param frames the frames of the throwable.
+     */
+    static void appendEnclosedThrowables(StringBuilder text, Throwable t, StackTraceElement[] frames) {
+        final Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        seen.add(t);
+        appendEnclosedThrowables(text, t, frames, "", seen);
+    }
+
+    private static void appendEnclosedThrowables(StringBuilder text, Throwable t,
+            StackTraceElement[] frames, String indent, Set<Throwable> seen) {
+        for (Throwable suppressed : t.getSuppressed()) {
+            appendEnclosedThrowable(text, suppressed, frames, "Suppressed: ", indent + "\t", seen);
+        }
+        final Throwable causeOrNull = t.getCause();
+        if (causeOrNull != null) {
+            appendEnclosedThrowable(text, causeOrNull, frames, "Caused by: ", indent, seen);
+        }
+    }
+
+    /**
+     * Appends a cause or suppressed throwable, leaving out the frames it has
+     * in common with the throwable that encloses it.
+     */
+    private static void appendEnclosedThrowable(StringBuilder text, Throwable t,
+            StackTraceElement[] enclosingFrames, String caption, String indent, Set<Throwable> seen) {
+        if (!seen.add(t)) {
+            text.append(indent).append(caption).append("[CIRCULAR REFERENCE: ").append(t).append("]\n");
+            return;
+        }
+        final StackTraceElement[] frames = t.getStackTrace();
+        int m = frames.length - 1;
+        int n = enclosingFrames.length - 1;
+        while (m >= 0 && n >= 0 && frames[m].equals(enclosingFrames[n])) {
+            --m;
+            --n;
+        }
+        final int framesInCommon = frames.length - 1 - m;
+        text.append(indent).append(caption).append(t).append('\n');
+        for (int i = 0; i <= m; ++i) {
+            text.append(indent).append(frames[i]).append('\n');
+        }
+        if (framesInCommon != 0) {
+            text.append(indent).append("... ").append(framesInCommon).append(" more\n");
+        }
+        appendEnclosedThrowables(text, t, frames, indent, seen);
+    }
+}
@@ -0,0 +1,271 @@
+package Utilities;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks over and over with a fixed delay between the end of one run and
+ * the start of the next, like
+ * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit) },
+ * but from a hashed timing wheel instead of a heap. The wheel is a ring of
+ * buckets, one per tick, and a task goes in the bucket of the tick it is due
+ * on, together with how many times around the ring to wait first. Scheduling,
+ * rescheduling and cancelling a task are O(1) however many tasks there are,
+ * and each task keeps the same {@link Timeout} for all its runs, so running it
+ * allocates nothing. Tasks can also be run once, right away.
+ *
+ * Only the wheel thread touches the buckets. Other threads hand new tasks over
+ * through a queue that the wheel thread empties every tick, and a cancelled
+ * task is only marked, and taken out when the wheel next passes its bucket.
+ * The wheel thread sleeps until the next tick, then walks every bucket that
+ * came due while it slept and runs what expired in one batch. It sleeps
+ * without waking up while there is nothing scheduled.
+ *
+ * @author johnmichaelreed2
+ */
+final class TimingWheel {
+
+    /**
+     * A task and its place in the wheel.
+     */
+    static final class Timeout {
+
+        private final TimingWheel myWheel_;
+        private final Runnable myTask_;
+        private final long myDelayNanos_;
+        private final long myFirstDelayNanos_;
+        private long myRemainingRounds_;
+        private int myBucket_ = -1; // -1 while not in a bucket.
+        private Timeout myPreviousOrNull_ = null;
+        private Timeout myNextOrNull_ = null;
+        private volatile boolean isCancelled_ = false;
+
+        private Timeout(TimingWheel wheel, Runnable task, long firstDelayNanos, long delayNanos) {
+            myWheel_ = wheel;
+            myTask_ = task;
+            myFirstDelayNanos_ = firstDelayNanos;
+            myDelayNanos_ = delayNanos;
+        }
+
+        /**
+         * Stops the task from running again. A run already under way
+         * finishes.
+         */
+        void cancel() {
+            isCancelled_ = true; // taken out of its bucket when the wheel next passes it.
+        }
+    }
+
+    private final Timeout[] myBuckets_;
+    private final int myMask_;
+    private final long myTickNanos_;
+    private final long myStartNanos_ = System.nanoTime();
+    private final ConcurrentLinkedQueue<Timeout> myAdded_ = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Tasks to run once, as soon as possible.
+     */
+    private final ConcurrentLinkedQueue<Runnable> myReady_ = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Tasks that expired in the ticks being processed. Wheel thread only.
+     */
+    private final ArrayList<Timeout> myExpired_ = new ArrayList<>();
+    private final Thread myThread_;
+
+    /**
+     * The next tick to process. Wheel thread only.
+     */
+    private long myTick_ = 0;
+
+    /**
+     * The number of tasks in buckets. Wheel thread only.
+     */
+    private int myCount_ = 0;
+    private volatile boolean isStopped_ = false;
+
+    /**
+     * Starts the wheel thread.
+     *
+     * @param threadName the name of the wheel thread.
+     * @param tickMilliseconds how long one tick is. Tasks run up to a tick
+     * late.
+     * @param bucketCount the number of buckets, rounded up to a power of two.
+     */
+    TimingWheel(String threadName, long tickMilliseconds, int bucketCount) {
+        myBuckets_ = new Timeout[Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1];
+        myMask_ = myBuckets_.length - 1;
+        myTickNanos_ = TimeUnit.MILLISECONDS.toNanos(tickMilliseconds);
+        myThread_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWheel();
+            }
+        }, threadName);
+        myThread_.start();
+    }
+
+    /**
+     * @param initialDelayMilliseconds the time until the first run.
+     * @param delayMilliseconds the time between the end of one run and the
+     * start of the next.
+     * @return the scheduled task, or null if the wheel has been stopped.
+     */
+    Timeout scheduleWithFixedDelay(Runnable task, long initialDelayMilliseconds, long delayMilliseconds) {
+        if (isStopped_) {
+            return null;
+        }
+        final Timeout timeout = new Timeout(this, task, TimeUnit.MILLISECONDS.toNanos(initialDelayMilliseconds),
+                TimeUnit.MILLISECONDS.toNanos(delayMilliseconds));
+        myAdded_.add(timeout);
+        LockSupport.unpark(myThread_);
+        return timeout;
+    }
+
+    /**
+     * Runs a task once, as soon as the wheel thread is free.
+     *
+     * @return false if the wheel has been stopped.
+     */
+    boolean tryExecute(Runnable task) {
+        if (isStopped_) {
+            return false;
+        }
+        myReady_.add(task);
+        LockSupport.unpark(myThread_);
+        return true;
+    }
+
+    /**
+     * Stops running tasks. Does not wait for a run under way, so the wheel
+     * thread can stop itself.
+     */
+    void stop() {
+        isStopped_ = true;
+        LockSupport.unpark(myThread_);
+    }
+
+    boolean isStopped() {
+        return isStopped_;
+    }
+
+    private void runWheel() {
+        while (!isStopped_) {
+            runReady();
+            if (myCount_ == 0 && myAdded_.isEmpty() && myReady_.isEmpty()) {
+                LockSupport.park(this);
+                // Nothing was in the wheel, so no ticks are owed for the time spent asleep.
+                myTick_ = Math.max(myTick_, (System.nanoTime() - myStartNanos_) / myTickNanos_);
+                continue;
+            }
+            final long sleepNanos = myStartNanos_ + (myTick_ + 1) * myTickNanos_ - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                if (System.nanoTime() - myStartNanos_ < (myTick_ + 1) * myTickNanos_) {
+                    transferAdded(); // woken early by a new task or one to run right away.
+                    continue;
+                }
+            }
+            final long now = System.nanoTime();
+            while (myStartNanos_ + (myTick_ + 1) * myTickNanos_ <= now) {
+                transferAdded();
+                expireBucket((int) (myTick_ & myMask_));
+                ++myTick_;
+            }
+            for (int i = 0; i < myExpired_.size() && !isStopped_; ++i) {
+                final Timeout timeout = myExpired_.get(i);
+                if (timeout.isCancelled_) {
+                    continue;
+                }
+                try {
+                    timeout.myTask_.run();
+                } catch (Throwable t) {
+                    // Like a scheduled executor, a task that throws is not run again.
+                    timeout.isCancelled_ = true;
+                    continue;
+                }
+                if (!timeout.isCancelled_) {
+                    insert(timeout, System.nanoTime() + timeout.myDelayNanos_, myTick_);
+                }
+            }
+            myExpired_.clear();
+        }
+    }
+
+    private void runReady() {
+        Runnable task;
+        while (!isStopped_ && (task = myReady_.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // Like a scheduled executor, the exception goes no further.
+            }
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = myAdded_.poll()) != null) {
+            if (!timeout.isCancelled_) {
+                insert(timeout, System.nanoTime() + timeout.myFirstDelayNanos_, myTick_);
+            }
+        }
+    }
+
+    /**
+     * Puts a task in the bucket of the tick it is due on.
+     *
+     * @param earliestTick the first tick that may run it.
+     */
+    private void insert(Timeout timeout, long deadlineNanos, long earliestTick) {
+        // Due at the end of the tick the deadline falls in.
+        final long tick = Math.max(earliestTick, (deadlineNanos - myStartNanos_) / myTickNanos_);
+        final int bucket = (int) (tick & myMask_);
+        timeout.myRemainingRounds_ = (tick - earliestTick) / myBuckets_.length;
+        timeout.myBucket_ = bucket;
+        timeout.myPreviousOrNull_ = null;
+        timeout.myNextOrNull_ = myBuckets_[bucket];
+        if (myBuckets_[bucket] != null) {
+            myBuckets_[bucket].myPreviousOrNull_ = timeout;
+        }
+        myBuckets_[bucket] = timeout;
+        ++myCount_;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.myPreviousOrNull_ == null) {
+            myBuckets_[timeout.myBucket_] = timeout.myNextOrNull_;
+        } else {
+            timeout.myPreviousOrNull_.myNextOrNull_ = timeout.myNextOrNull_;
+        }
+        if (timeout.myNextOrNull_ != null) {
+            timeout.myNextOrNull_.myPreviousOrNull_ = timeout.myPreviousOrNull_;
+        }
+        timeout.myBucket_ = -1;
+        timeout.myPreviousOrNull_ = null;
+        timeout.myNextOrNull_ = null;
+        --myCount_;
+    }
+
+    /**
+     * Moves the tasks due this time around the ring to {@link #myExpired_ },
+     * drops cancelled tasks and counts down the rounds of the rest.
+     */
+    private void expireBucket(int bucket) {
+        Timeout timeout = myBuckets_[bucket];
+        while (timeout != null) {
+            final Timeout next = timeout.myNextOrNull_;
+            if (timeout.isCancelled_) {
+                unlink(timeout);
+            } else if (timeout.myRemainingRounds_ == 0) {
+                unlink(timeout);
+                myExpired_.add(timeout);
+            } else {
+                --timeout.myRemainingRounds_;
+            }
+            timeout = next;
+        }
+    }
+}